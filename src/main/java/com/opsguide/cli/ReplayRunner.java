@@ -0,0 +1,98 @@
+package com.opsguide.cli;
+
+import com.opsguide.service.NdjsonReplayService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Offline replay mode: pushes an NDJSON request log through the core pipeline and exits.
+ * <p>
+ * {@code java -jar ops-guide-java.jar --spring.main.web-application-type=none
+ * --opsguide.replay.input=requests.jsonl --opsguide.replay.output=responses.jsonl}
+ * <p>
+ * Use {@code -} for stdin/stdout. Paths ending in {@code .gz} are read and written gzip-compressed.
+ */
+@Component
+@ConditionalOnProperty(name = "opsguide.replay.input")
+@RequiredArgsConstructor
+@Slf4j
+public class ReplayRunner implements ApplicationRunner {
+    
+    private static final int BUFFER_BYTES = 256 * 1024;
+    
+    private final NdjsonReplayService replayService;
+    private final ConfigurableApplicationContext context;
+    
+    @Value("${opsguide.replay.input}")
+    private String input;
+    
+    @Value("${opsguide.replay.output}")
+    private String output;
+    
+    @Value("${opsguide.replay.user-id:replay}")
+    private String userId;
+    
+    @Value("${opsguide.replay.exit-when-done:true}")
+    private boolean exitWhenDone;
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        NdjsonReplayService.ReplaySummary summary;
+        try (InputStream in = openInput(input); OutputStream out = openOutput(output)) {
+            summary = replayService.replay(in, out, userId);
+        }
+        log.info("Replayed {} -> {}: {} lines, {} errors, {} ms, {} lines/s",
+            input, output, summary.getLines(), summary.getErrors(), summary.getElapsedMs(),
+            String.format("%.0f", summary.getLinesPerSecond()));
+        
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+    
+    private static InputStream openInput(String location) throws IOException {
+        InputStream in = "-".equals(location) ? System.in : Files.newInputStream(Path.of(location));
+        in = new BufferedInputStream(in, BUFFER_BYTES);
+        return location.endsWith(".gz") ? new GZIPInputStream(in, BUFFER_BYTES) : in;
+    }
+    
+    private static OutputStream openOutput(String location) throws IOException {
+        OutputStream out;
+        if ("-".equals(location)) {
+            // Leave stdout open for logging after the replay
+            out = new FilterOutputStream(System.out) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    this.out.write(bytes, offset, length);
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        } else {
+            out = Files.newOutputStream(Path.of(location));
+        }
+        out = location.endsWith(".gz") ? new GZIPOutputStream(out, BUFFER_BYTES) : out;
+        return new BufferedOutputStream(out, BUFFER_BYTES);
+    }
+}
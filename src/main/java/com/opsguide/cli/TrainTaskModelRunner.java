@@ -0,0 +1,78 @@
+package com.opsguide.cli;
+
+import com.opsguide.service.classifier.TaskModelTrainer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Offline training mode for the local task classifier: trains on labeled JSONL requests, writes
+ * the model file and exits.
+ * <p>
+ * {@code java -jar ops-guide-java.jar --spring.main.web-application-type=none
+ * --opsguide.classifier.train.output=models/task-model.bin}
+ * <p>
+ * Reads {@code opsguide.classifier.train.input}, defaulting to the bundled training data.
+ */
+@Component
+@ConditionalOnProperty(name = "opsguide.classifier.train.output")
+@RequiredArgsConstructor
+@Slf4j
+public class TrainTaskModelRunner implements ApplicationRunner {
+    
+    private final ResourceLoader resourceLoader;
+    private final ConfigurableApplicationContext context;
+    
+    @Value("${opsguide.classifier.train.input:${opsguide.classifier.training-data:classpath:classifier/training-data.jsonl}}")
+    private String input;
+    
+    @Value("${opsguide.classifier.train.output}")
+    private String output;
+    
+    @Value("${opsguide.classifier.train.bucket-bits:" + TaskModelTrainer.DEFAULT_BUCKET_BITS + "}")
+    private int bucketBits;
+    
+    @Value("${opsguide.classifier.train.seed:42}")
+    private long seed;
+    
+    @Value("${opsguide.classifier.train.exit-when-done:true}")
+    private boolean exitWhenDone;
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        TaskModelTrainer.TrainingResult result;
+        try (InputStream in = resourceLoader.getResource(input).getInputStream()) {
+            result = TaskModelTrainer.train(TaskModelTrainer.readTrainingData(in), bucketBits, seed);
+        }
+        
+        Path path = Path.of(output);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            result.getModel().write(out);
+        }
+        log.info("Trained task model from {} in {} ms: {} examples ({} held out), accuracy {}, ECE {}, temperature {}; wrote {}",
+            input, result.getTrainingTimeMs(), result.getExamples(), result.getHoldoutExamples(),
+            String.format("%.3f", result.getHoldoutAccuracy()),
+            String.format("%.3f", result.getExpectedCalibrationError()),
+            result.getTemperature(), path.toAbsolutePath());
+        
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
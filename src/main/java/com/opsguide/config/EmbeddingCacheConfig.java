@@ -0,0 +1,41 @@
+package com.opsguide.config;
+
+import com.opsguide.service.embedding.MappedEmbeddingCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+@Slf4j
+public class EmbeddingCacheConfig {
+    
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "opsguide.embedding-cache.enabled", havingValue = "true", matchIfMissing = true)
+    public MappedEmbeddingCache embeddingCache(
+            @Value("${opsguide.embedding-cache.path:cache/embeddings.bin}") String path,
+            @Value("${opsguide.embedding-cache.max-entries:16384}") int maxEntries,
+            @Value("${opensearch.vector-dimension:1536}") int dimension,
+            MeterRegistry meterRegistry) throws IOException {
+        
+        MappedEmbeddingCache cache = MappedEmbeddingCache.open(Path.of(path), dimension, maxEntries);
+        log.info("Opened embedding cache {} with {}/{} entries", cache.getPath(), cache.size(), cache.getCapacity());
+        
+        FunctionCounter.builder("opsguide.embedding.cache.hits", cache, MappedEmbeddingCache::getHits)
+            .register(meterRegistry);
+        FunctionCounter.builder("opsguide.embedding.cache.misses", cache, MappedEmbeddingCache::getMisses)
+            .register(meterRegistry);
+        FunctionCounter.builder("opsguide.embedding.cache.evictions", cache, MappedEmbeddingCache::getEvictions)
+            .register(meterRegistry);
+        Gauge.builder("opsguide.embedding.cache.size", cache, MappedEmbeddingCache::size)
+            .register(meterRegistry);
+        return cache;
+    }
+}
@@ -0,0 +1,55 @@
+package com.opsguide.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.Timeout;
+import org.opensearch.client.json.jackson.JacksonJsonpMapper;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.transport.OpenSearchTransport;
+import org.opensearch.client.transport.httpclient5.ApacheHttpClient5TransportBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URISyntaxException;
+
+/**
+ * OpenSearch client for {@code opsguide.vector-search.index: opensearch}: one async client on a
+ * pooled, non-blocking HttpClient 5 transport, so searches and bulk requests in flight hold a
+ * pooled connection rather than a thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "opsguide.vector-search.index", havingValue = "opensearch")
+@Slf4j
+public class OpenSearchConfig {
+
+    @Bean(destroyMethod = "close")
+    public OpenSearchTransport openSearchTransport(
+            @Value("${opensearch.endpoint:http://localhost:9200}") String endpoint,
+            @Value("${opensearch.http.max-connections:64}") int maxConnections,
+            @Value("${opensearch.http.connection-timeout-ms:2000}") long connectionTimeoutMs,
+            @Value("${opensearch.http.response-timeout-ms:30000}") long responseTimeoutMs) throws URISyntaxException {
+
+        HttpHost host = HttpHost.create(endpoint);
+        log.info("OpenSearch transport to {} with up to {} pooled connections", host, maxConnections);
+        return ApacheHttpClient5TransportBuilder.builder(host)
+            .setMapper(new JacksonJsonpMapper())
+            .setHttpClientConfigCallback(client -> client.setConnectionManager(
+                PoolingAsyncClientConnectionManagerBuilder.create()
+                    // A single host, so the whole pool may go to one route
+                    .setMaxConnTotal(maxConnections)
+                    .setMaxConnPerRoute(maxConnections)
+                    .build()))
+            .setRequestConfigCallback(request -> request
+                .setConnectTimeout(Timeout.ofMilliseconds(connectionTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs)))
+            .build();
+    }
+
+    @Bean
+    public OpenSearchAsyncClient openSearchAsyncClient(OpenSearchTransport openSearchTransport) {
+        return new OpenSearchAsyncClient(openSearchTransport);
+    }
+}
@@ -1,15 +1,27 @@
 package com.opsguide.controller;
 
 import com.opsguide.model.*;
+import com.opsguide.service.ClassificationRulesService;
+import com.opsguide.service.CoreResponseBuilder;
+import com.opsguide.service.KnowledgeIngestionService;
+import com.opsguide.service.ModeRouter;
+import com.opsguide.service.NdjsonReplayService;
 import com.opsguide.service.PatternClassifier;
 import com.opsguide.service.RAGOrchestrator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @RestController
 @RequestMapping("/v1")
@@ -20,6 +32,15 @@ public class OpsGuideController {
     private final PatternClassifier patternClassifier;
     private final RAGOrchestrator ragOrchestrator;
     private final com.opsguide.service.StepExecutionService stepExecutionService;
+    private final ClassificationRulesService classificationRulesService;
+    private final CoreResponseBuilder coreResponseBuilder;
+    private final NdjsonReplayService ndjsonReplayService;
+    private final ModeRouter modeRouter;
+    private final KnowledgeIngestionService knowledgeIngestionService;
+    private final com.fasterxml.jackson.databind.ObjectMapper objectMapper;
+    
+    @Value("${opsguide.batch.max-size:10000}")
+    private int maxBatchSize;
     
     @PostMapping("/request")
     public ResponseEntity<OperationalResponse> processRequest(
@@ -39,20 +60,75 @@ public class OpsGuideController {
             // Manual validation
             if (request.getQuery() == null || request.getQuery().trim().isEmpty()) {
                 return ResponseEntity.badRequest()
-                    .body(createErrorResponse("Query is required", request.getRequestId()));
+                    .body(coreResponseBuilder.createErrorResponse("Query is required", request.getRequestId()));
             }
             
             // Process based on mode
             if ("rag".equalsIgnoreCase(mode)) {
                 return processWithRAG(request);
+            } else if ("auto".equalsIgnoreCase(mode)) {
+                return processAuto(request);
             } else {
                 return processCore(request);
             }
             
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
-                .body(createErrorResponse(request.getRequestId(), e.getMessage()));
+                .body(coreResponseBuilder.createErrorResponse(request.getRequestId(), e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/request/batch")
+    public ResponseEntity<BatchOperationalResponse> processBatch(
+            @RequestBody List<OperationalRequest> requests,
+            @RequestHeader("X-User-ID") String userId) {
+        
+        long start = System.nanoTime();
+        String batchId = UUID.randomUUID().toString();
+        
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest()
+                .body(createBatchErrorResponse(batchId, 0, "At least one request is required"));
+        }
+        if (requests.size() > maxBatchSize) {
+            return ResponseEntity.badRequest()
+                .body(createBatchErrorResponse(batchId, requests.size(),
+                    "Batch size " + requests.size() + " exceeds the limit of " + maxBatchSize));
         }
+        
+        // Core mode only: items are independent and CPU-bound, so they are classified across
+        // cores; collecting an indexed stream keeps results in input order
+        List<BatchOperationalResponse.ItemResult> results = IntStream.range(0, requests.size())
+            .parallel()
+            .mapToObj(i -> processBatchItem(i, requests.get(i), userId))
+            .collect(Collectors.toList());
+        
+        int failed = (int) results.stream().filter(result -> result.getErrorMessage() != null).count();
+        return ResponseEntity.ok(BatchOperationalResponse.builder()
+            .batchId(batchId)
+            .status("processed")
+            .timestamp(LocalDateTime.now())
+            .total(results.size())
+            .succeeded(results.size() - failed)
+            .failed(failed)
+            .processingTimeMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+            .results(results)
+            .build());
+    }
+    
+    @PostMapping(value = "/request/stream", consumes = "application/x-ndjson", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> processStream(
+            InputStream requestBody,
+            @RequestHeader("X-User-ID") String userId) {
+        
+        // One response line per request line as it is read, then a final summary line
+        StreamingResponseBody body = out -> {
+            NdjsonReplayService.ReplaySummary summary = ndjsonReplayService.replay(requestBody, out, userId);
+            out.write(objectMapper.writeValueAsBytes(Map.of("summary", summary)));
+            out.write('\n');
+            out.flush();
+        };
+        return ResponseEntity.ok(body);
     }
     
     @GetMapping("/health")
@@ -80,6 +156,8 @@ public class OpsGuideController {
             "description", "RAG-powered operational intelligence with dual-mode architecture",
             "endpoints", Map.of(
                 "POST /v1/request", "Submit operational request",
+                "POST /v1/request/batch", "Classify an array of operational requests (core mode)",
+                "POST /v1/request/stream", "Classify NDJSON operational requests as they stream in (core mode)",
                 "GET /v1/health", "Health check"
             ),
             "supported_tasks", new String[]{
@@ -92,7 +170,8 @@ public class OpsGuideController {
             },
             "modes", Map.of(
                 "core", "Pattern matching only (zero AI costs)",
-                "rag", "Full RAG pipeline with AI reasoning"
+                "rag", "Full RAG pipeline with AI reasoning",
+                "auto", "Core first; RAG only when confidence or entity completeness is too low"
             ),
             "architecture", new String[]{
                 "1. HTTP Parsing & Validation",
@@ -108,299 +187,81 @@ public class OpsGuideController {
         // Core mode: Pattern matching only
         ClassificationResult classification = patternClassifier.classify(request);
         
-        OperationalResponse response = buildCoreResponse(request, classification);
+        OperationalResponse response = coreResponseBuilder.buildCoreResponse(request, classification);
         return ResponseEntity.ok(response);
     }
     
-    private ResponseEntity<OperationalResponse> processWithRAG(OperationalRequest request) {
-        // RAG mode: Full AI pipeline
-        try {
-            OperationalResponse response = ragOrchestrator.processWithRAG(request).get();
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            // Fallback to core mode if RAG fails
-            ClassificationResult classification = patternClassifier.classify(request);
-            OperationalResponse response = buildCoreResponse(request, classification);
-            response.setStatus("processed_with_fallback");
-            return ResponseEntity.ok(response);
-        }
-    }
-    
-    private OperationalResponse buildCoreResponse(OperationalRequest request, ClassificationResult classification) {
-        OperationalResponse.InputData input = new OperationalResponse.InputData(
-            request.getQuery(),
-            request.getEnvironment(),
-            request.getUserId()
-        );
-        
-        OperationalResponse.ClassificationData classificationData = new OperationalResponse.ClassificationData(
-            classification.getUseCase().getValue(),
-            classification.getTaskId() != null ? classification.getTaskId().getValue() : null,
-            classification.getConfidence(),
-            classification.getService(),
-            classification.getEnvironment()
-        );
-        
-        OperationalResponse.NextSteps nextSteps = null;
-        if (classification.getTaskId() != null) {
-            nextSteps = getNextSteps(classification.getTaskId());
-        }
-        
-        return new OperationalResponse(
-            request.getRequestId(),
-            "processed",
-            LocalDateTime.now(),
-            input,
-            classificationData,
-            classification.getExtractedEntities(),
-            nextSteps
-        );
-    }
-    
-    private OperationalResponse.NextSteps getNextSteps(TaskId taskId) {
-        switch (taskId) {
-            case CANCEL_ORDER:
-                return createNextStepsWithMetadata(
-                    "Order cancellation request identified",
-                    "knowledge/runbooks/cancel-order-runbook.md",
-                    "knowledge/api-specs/order-management-api.md",
-                    new String[]{
-                        "Validate order exists and is cancellable",
-                        "Check user permissions",
-                        "Execute cancellation via API",
-                        "Verify cancellation completed"
-                    }
-                );
-            case UPDATE_ORDER_STATUS:
-                return createNextStepsWithMetadata(
-                    "Order status update request identified",
-                    "knowledge/runbooks/update-order-status-runbook.md",
-                    "knowledge/api-specs/order-management-api.md",
-                    new String[]{
-                        "Validate order exists",
-                        "Check status transition is valid",
-                        "Update order status via API",
-                        "Verify status change completed"
-                    }
-                );
-            case CANCEL_CASE:
-                return createNextStepsWithMetadata(
-                    "Case cancellation request identified",
-                    "knowledge/runbooks/cancel-case-runbook.md",
-                    "knowledge/api-specs/case-management-api.md",
-                    new String[]{
-                        "Validate case exists and is cancellable",
-                        "Check user permissions",
-                        "Execute cancellation via API",
-                        "Verify cancellation completed"
-                    }
-                );
-            case UPDATE_CASE_STATUS:
-                return createNextStepsWithMetadata(
-                    "Case status update request identified",
-                    "knowledge/runbooks/update-case-status-runbook.md",
-                    "knowledge/api-specs/case-management-api.md",
-                    new String[]{
-                        "Validate case exists",
-                        "Check status transition is valid",
-                        "Update case status via API",
-                        "Verify status change completed"
-                    }
-                );
-            case UPDATE_SAMPLES:
-                return createNextStepsWithMetadata(
-                    "Sample update request identified",
-                    "knowledge/runbooks/update-samples-runbook.md",
-                    "knowledge/api-specs/sample-management-api.md",
-                    new String[]{
-                        "Validate case and samples exist",
-                        "Check sample update permissions",
-                        "Execute sample update via API",
-                        "Verify sample update completed"
-                    }
-                );
-            case UPDATE_STAIN:
-                return createNextStepsWithMetadata(
-                    "Stain update request identified",
-                    "knowledge/runbooks/update-stain-runbook.md",
-                    "knowledge/api-specs/slide-management-api.md",
-                    new String[]{
-                        "Validate slide and stain exist",
-                        "Check stain update permissions",
-                        "Execute stain update via API",
-                        "Verify stain update completed"
-                    }
-                );
-            default:
-                return createNextStepsWithMetadata(
-                    "Generic operational request identified",
-                    "knowledge/runbooks/generic-operation-runbook.md",
-                    "knowledge/api-specs/generic-api.md",
-                    new String[]{
-                        "Analyze request requirements",
-                        "Identify target system and API",
-                        "Execute operation via appropriate API",
-                        "Verify operation completed successfully"
-                    }
-                );
+    private BatchOperationalResponse.ItemResult processBatchItem(int index, OperationalRequest request, String userId) {
+        if (request == null) {
+            return new BatchOperationalResponse.ItemResult(index, null, "error", null, "Request is required");
         }
-    }
-    
-    private OperationalResponse.NextSteps createNextStepsWithMetadata(
-            String description, String runbook, String apiSpec, String[] typicalSteps) {
-        
-        OperationalResponse.NextSteps.StepExecutionMetadata[] metadata = 
-            new OperationalResponse.NextSteps.StepExecutionMetadata[typicalSteps.length];
-        
-        for (int i = 0; i < typicalSteps.length; i++) {
-            String stepName = typicalSteps[i];
-            boolean autoExecutable = isAutoExecutable(stepName);
-            boolean requiresApproval = requiresApproval(stepName);
-            String stepType = determineStepType(stepName);
-            String apiEndpoint = getApiEndpointForStep(stepName, stepType);
-            String httpMethod = getHttpMethodForStep(stepName, stepType);
-            Map<String, Object> apiParameters = getApiParametersForStep(stepName, stepType);
-            
-            metadata[i] = new OperationalResponse.NextSteps.StepExecutionMetadata(
-                stepName, autoExecutable, requiresApproval, stepType, apiEndpoint, httpMethod, apiParameters
-            );
-        }
-        
-        OperationalResponse.NextSteps nextSteps = new OperationalResponse.NextSteps(
-            description, runbook, apiSpec, typicalSteps, metadata
-        );
-        return nextSteps;
-    }
-    
-    private String getApiEndpointForStep(String stepName, String stepType) {
-        String lower = stepName.toLowerCase();
-        // Determine endpoint based on step type and name
-        if (stepType.equals("VALIDATION")) {
-            if (lower.contains("case")) {
-                return "/api/v2/cases/{case_id}/status";
-            } else if (lower.contains("order")) {
-                return "/api/v2/orders/{order_id}/status";
-            }
-        } else if (stepType.equals("PERMISSION_CHECK")) {
-            return "/api/v2/users/{user_id}/roles";
-        } else if (stepType.equals("API_EXECUTION")) {
-            if (lower.contains("cancel") && lower.contains("case")) {
-                return "/api/v2/cases/{case_id}/cancel";
-            } else if (lower.contains("update") && lower.contains("case")) {
-                return "/api/v2/cases/{case_id}/status";
-            } else if (lower.contains("cancel") && lower.contains("order")) {
-                return "/api/v2/orders/{order_id}/cancel";
+        try {
+            request.setUserId(userId);
+            if (request.getRequestId() == null) {
+                request.setRequestId(UUID.randomUUID().toString());
             }
-        } else if (stepType.equals("VERIFICATION")) {
-            if (lower.contains("case")) {
-                return "/api/v2/cases/{case_id}/status";
-            } else if (lower.contains("order")) {
-                return "/api/v2/orders/{order_id}/status";
+            if (request.getQuery() == null || request.getQuery().trim().isEmpty()) {
+                return new BatchOperationalResponse.ItemResult(
+                    index, request.getRequestId(), "error", null, "Query is required");
             }
+            
+            ClassificationResult classification = patternClassifier.classify(request);
+            return new BatchOperationalResponse.ItemResult(
+                index, request.getRequestId(), "processed", coreResponseBuilder.buildCoreResponse(request, classification), null);
+        } catch (Exception e) {
+            // One bad item must not fail the rest of the batch
+            return new BatchOperationalResponse.ItemResult(
+                index, request.getRequestId(), "error", null, e.getMessage());
         }
-        return null;
     }
     
-    private String getHttpMethodForStep(String stepName, String stepType) {
-        if (stepType.equals("API_EXECUTION")) {
-            String lower = stepName.toLowerCase();
-            if (lower.contains("cancel")) {
-                return "POST";
-            } else if (lower.contains("update")) {
-                return "PATCH";
-            }
-        }
-        return "GET"; // Default for validation, permission checks, verification
+    private BatchOperationalResponse createBatchErrorResponse(String batchId, int total, String message) {
+        return BatchOperationalResponse.builder()
+            .batchId(batchId)
+            .status("rejected")
+            .timestamp(LocalDateTime.now())
+            .total(total)
+            .errorMessage(message)
+            .build();
     }
     
-    private Map<String, Object> getApiParametersForStep(String stepName, String stepType) {
-        Map<String, Object> params = new java.util.HashMap<>();
-        String lower = stepName.toLowerCase();
+    private ResponseEntity<OperationalResponse> processAuto(OperationalRequest request) {
+        // Auto mode: classify cheaply first, escalate to RAG only when core is not enough
+        long start = System.nanoTime();
+        ClassificationResult classification = patternClassifier.classify(request);
+        ModeRouter.RoutingDecision decision = modeRouter.route(classification);
         
-        if (stepType.equals("API_EXECUTION")) {
-            if (lower.contains("cancel")) {
-                params.put("reason", "operational_request");
-                params.put("notify_stakeholders", true);
-            } else if (lower.contains("update") && lower.contains("status")) {
-                params.put("action", "update_status");
-            }
+        if (decision.isCore()) {
+            OperationalResponse response = coreResponseBuilder.buildCoreResponse(request, classification);
+            response.setRouting(modeRouter.routingData(decision, ModeRouter.CORE, elapsedMs(start)));
+            return ResponseEntity.ok(response);
         }
         
-        return params;
-    }
-    
-    private boolean isAutoExecutable(String stepName) {
-        String lower = stepName.toLowerCase();
-        // Auto-executable: validation, permission checks, verification
-        return lower.contains("validate") || 
-               lower.contains("check") && (lower.contains("permission") || lower.contains("exist")) ||
-               lower.contains("verify");
-    }
-    
-    private boolean requiresApproval(String stepName) {
-        String lower = stepName.toLowerCase();
-        // Requires approval: execution steps
-        return lower.contains("execute") || 
-               lower.contains("run") ||
-               (lower.contains("cancel") && lower.contains("via")) ||
-               (lower.contains("update") && lower.contains("via"));
+        OperationalResponse response = processWithRAG(request).getBody();
+        // RAG failures fall back to core, which the status reflects; the RAG attempt saved nothing
+        String selectedMode = "processed_with_rag".equals(response.getStatus()) ? ModeRouter.RAG : ModeRouter.RAG_FALLBACK;
+        response.setRouting(modeRouter.routingData(decision, selectedMode, elapsedMs(start)));
+        return ResponseEntity.ok(response);
     }
     
-    private String determineStepType(String stepName) {
-        String lower = stepName.toLowerCase();
-        if (lower.contains("validate") || (lower.contains("check") && lower.contains("exist"))) {
-            return "VALIDATION";
-        } else if (lower.contains("permission")) {
-            return "PERMISSION_CHECK";
-        } else if (lower.contains("execute") || lower.contains("via")) {
-            return "API_EXECUTION";
-        } else if (lower.contains("verify") || lower.contains("confirm")) {
-            return "VERIFICATION";
+    private ResponseEntity<OperationalResponse> processWithRAG(OperationalRequest request) {
+        // RAG mode: Full AI pipeline
+        try {
+            long start = System.nanoTime();
+            OperationalResponse response = ragOrchestrator.processWithRAG(request).get();
+            modeRouter.recordRagLatency(elapsedMs(start));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            // Fallback to core mode if RAG fails
+            ClassificationResult classification = patternClassifier.classify(request);
+            OperationalResponse response = coreResponseBuilder.buildCoreResponse(request, classification);
+            response.setStatus("processed_with_fallback");
+            return ResponseEntity.ok(response);
         }
-        return "VALIDATION";
     }
     
-    private OperationalResponse createErrorResponse(String message, String requestId) {
-        OperationalResponse response = new OperationalResponse();
-        response.setRequestId(requestId);
-        response.setStatus("error");
-        response.setTimestamp(LocalDateTime.now());
-        
-        // Create minimal input data
-        OperationalResponse.InputData inputData = new OperationalResponse.InputData();
-        inputData.setQuery("");
-        inputData.setEnvironment("dev");
-        inputData.setUserId("");
-        response.setInput(inputData);
-        
-        // Create error classification
-        OperationalResponse.ClassificationData classification = new OperationalResponse.ClassificationData();
-        classification.setUseCase("ERROR");
-        classification.setTaskId("ERROR");
-        classification.setConfidence(0.0);
-        classification.setService("System");
-        classification.setEnvironment("dev");
-        response.setClassification(classification);
-        
-        // Create error next steps
-        String[] errorSteps = new String[]{"Review error message", "Check request format", "Retry with corrected data"};
-        OperationalResponse.NextSteps.StepExecutionMetadata[] errorMetadata = 
-            new OperationalResponse.NextSteps.StepExecutionMetadata[errorSteps.length];
-        for (int i = 0; i < errorSteps.length; i++) {
-            errorMetadata[i] = new OperationalResponse.NextSteps.StepExecutionMetadata(
-                errorSteps[i], true, false, "VALIDATION", null, "GET", new java.util.HashMap<>()
-            );
-        }
-        OperationalResponse.NextSteps nextSteps = new OperationalResponse.NextSteps(
-            "Error: " + message,
-            "knowledge/runbooks/error-handling.md",
-            "knowledge/api-specs/error-api.md",
-            errorSteps,
-            errorMetadata
-        );
-        response.setNextSteps(nextSteps);
-        
-        return response;
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
     
     @PostMapping("/steps/execute")
@@ -422,4 +283,42 @@ public class OpsGuideController {
         }
     }
     
+    @GetMapping("/rules")
+    public ResponseEntity<ClassificationRulesService.RuleSetStats> getRules() {
+        return ResponseEntity.ok(classificationRulesService.getStats());
+    }
+    
+    @PostMapping("/rules/reload")
+    public ResponseEntity<Map<String, Object>> reloadRules() {
+        try {
+            return ResponseEntity.ok(Map.of("status", "RELOADED", "rules", classificationRulesService.reload()));
+        } catch (Exception e) {
+            // The previous rule set stays active
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "REJECTED",
+                "error", String.valueOf(e.getMessage()),
+                "rules", classificationRulesService.getStats()
+            ));
+        }
+    }
+    
+    @GetMapping("/knowledge")
+    public ResponseEntity<KnowledgeIngestionService.IngestionReport> getKnowledge() {
+        KnowledgeIngestionService.IngestionReport report = knowledgeIngestionService.getLastReport();
+        return report != null ? ResponseEntity.ok(report) : ResponseEntity.noContent().build();
+    }
+    
+    @PostMapping("/knowledge/reindex")
+    public ResponseEntity<Map<String, Object>> reindexKnowledge() {
+        try {
+            return ResponseEntity.ok(Map.of("status", "INDEXED", "knowledge", knowledgeIngestionService.ingest()));
+        } catch (Exception e) {
+            // The published index stays active
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "FAILED",
+                "error", String.valueOf(e.getMessage())
+            ));
+        }
+    }
+    
 }
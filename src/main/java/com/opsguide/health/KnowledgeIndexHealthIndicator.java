@@ -0,0 +1,57 @@
+package com.opsguide.health;
+
+import com.opsguide.service.KnowledgeIngestionService;
+import com.opsguide.service.VectorSearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Readiness of the knowledge index, in the {@code readiness} health group: OUT_OF_SERVICE until
+ * startup has restored an index snapshot or ingested the knowledge base, UP after. Details name
+ * the snapshot being served (its version and how long it took to restore or write) and the last
+ * ingestion run.
+ */
+@Component("knowledgeIndex")
+@RequiredArgsConstructor
+public class KnowledgeIndexHealthIndicator implements HealthIndicator {
+
+    private final KnowledgeIngestionService knowledgeIngestionService;
+    private final VectorSearchService vectorSearchService;
+
+    @Override
+    public Health health() {
+        Health.Builder health = knowledgeIngestionService.isIndexReady() ? Health.up() : Health.outOfService();
+        health.withDetail("indexType", vectorSearchService.getIndexType())
+            .withDetail("chunks", vectorSearchService.getIndexedChunkCount())
+            .withDetail("indexVersion", vectorSearchService.getIndexVersion())
+            .withDetail("heapBytesPerVector", Math.round(vectorSearchService.getHeapBytesPerVector()));
+
+        VectorSearchService.IndexSnapshot snapshot = vectorSearchService.getSnapshot();
+        if (snapshot != null) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("version", snapshot.getVersion());
+            details.put("createdAt", Instant.ofEpochMilli(snapshot.getCreatedAt()).toString());
+            details.put("restored", snapshot.isRestored());
+            details.put(snapshot.isRestored() ? "loadMillis" : "writeMillis", Math.round(snapshot.getDurationMillis()));
+            health.withDetail("snapshot", details);
+        }
+        KnowledgeIngestionService.IngestionReport report = knowledgeIngestionService.getLastReport();
+        if (report != null) {
+            health.withDetail("ingestion", Map.of(
+                "version", report.getVersion(),
+                "unchanged", report.isUnchanged(),
+                "durationMillis", Math.round(report.getDurationMillis())));
+        }
+        String error = knowledgeIngestionService.getStartupError();
+        if (error != null) {
+            health.withDetail("error", error);
+        }
+        return health.build();
+    }
+}
@@ -0,0 +1,37 @@
+package com.opsguide.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchOperationalResponse {
+    
+    private String batchId;
+    private String status; // processed, rejected
+    private LocalDateTime timestamp;
+    private int total;
+    private int succeeded;
+    private int failed;
+    private long processingTimeMs;
+    private String errorMessage;
+    private List<ItemResult> results; // same order as the submitted requests
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        private int index;
+        private String requestId;
+        private String status; // processed, error
+        private OperationalResponse response;
+        private String errorMessage;
+    }
+}
@@ -1,20 +1,45 @@
 package com.opsguide.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
+/**
+ * Immutable so a cached classification can be shared by concurrent requests;
+ * copy {@link #getExtractedEntities()} before adding to it. List values (the plural
+ * {@code *_ids} entities) are copied as unmodifiable lists too.
+ */
+@Value
 public class ClassificationResult {
     
-    private UseCase useCase;
-    private TaskId taskId;
-    private double confidence;
-    private Map<String, Object> extractedEntities;
-    private String environment;
-    private String service;
-}
\ No newline at end of file
+    UseCase useCase;
+    TaskId taskId;
+    double confidence;
+    Map<String, Object> extractedEntities;
+    String environment;
+    String service;
+    ClassificationTier tier;
+    
+    public ClassificationResult(UseCase useCase, TaskId taskId, double confidence,
+                                Map<String, Object> extractedEntities, String environment, String service,
+                                ClassificationTier tier) {
+        this.useCase = useCase;
+        this.taskId = taskId;
+        this.confidence = confidence;
+        this.extractedEntities = extractedEntities == null
+            ? Collections.emptyMap()
+            : Collections.unmodifiableMap(copyOf(extractedEntities));
+        this.environment = environment;
+        this.service = service;
+        this.tier = tier;
+    }
+    
+    private static Map<String, Object> copyOf(Map<String, Object> entities) {
+        Map<String, Object> copy = new HashMap<>(entities);
+        copy.replaceAll((key, value) -> value instanceof List ? List.copyOf((List<?>) value) : value);
+        return copy;
+    }
+}
@@ -0,0 +1,17 @@
+package com.opsguide.model;
+
+public enum ClassificationTier {
+    RULES("rules"),   // compiled classification rules
+    MODEL("model"),   // in-process statistical classifier
+    NONE("none");     // no task identified
+    
+    private final String value;
+    
+    ClassificationTier(String value) {
+        this.value = value;
+    }
+    
+    public String getValue() {
+        return value;
+    }
+}
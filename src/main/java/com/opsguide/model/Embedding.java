@@ -0,0 +1,112 @@
+package com.opsguide.model;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A dense embedding vector backed by a primitive {@code float[]}.
+ * <p>
+ * Replaces {@code List<Float>} on the embedding, vector search and RAG paths so a 1536-dimension
+ * query vector is one 6 KB array rather than 1536 boxed floats plus a list. Instances are
+ * immutable: {@link #wrap} takes ownership of the array and nothing hands it out again.
+ */
+public final class Embedding {
+    
+    private final float[] values;
+    
+    private Embedding(float[] values) {
+        this.values = values;
+    }
+    
+    /**
+     * Wraps {@code values} without copying; the caller must not modify the array afterwards.
+     */
+    public static Embedding wrap(float[] values) {
+        return new Embedding(values);
+    }
+    
+    public static Embedding copyOf(float[] values) {
+        return new Embedding(values.clone());
+    }
+    
+    public int dimension() {
+        return values.length;
+    }
+    
+    public float get(int index) {
+        return values[index];
+    }
+    
+    public float dot(Embedding other) {
+        return dot(other.values, 0);
+    }
+    
+    /**
+     * Dot product with {@code dimension()} floats of {@code other} starting at {@code offset},
+     * e.g. one row of a flat vector store.
+     */
+    public float dot(float[] other, int offset) {
+        if (offset < 0 || offset + values.length > other.length) {
+            throw new IllegalArgumentException("Vector of dimension " + values.length + " does not fit at offset " + offset);
+        }
+        float sum = 0f;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i] * other[offset + i];
+        }
+        return sum;
+    }
+    
+    public float norm() {
+        return (float) Math.sqrt(dot(this));
+    }
+    
+    public float cosineSimilarity(Embedding other) {
+        float denominator = norm() * other.norm();
+        return denominator == 0f ? 0f : dot(other) / denominator;
+    }
+    
+    /**
+     * Unit-length copy of this embedding (or this embedding when it is all zeros).
+     */
+    public Embedding normalize() {
+        float norm = norm();
+        if (norm == 0f) {
+            return this;
+        }
+        float[] normalized = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            normalized[i] = values[i] / norm;
+        }
+        return new Embedding(normalized);
+    }
+    
+    public void copyInto(float[] target, int offset) {
+        System.arraycopy(values, 0, target, offset, values.length);
+    }
+    
+    public float[] toArray() {
+        return values.clone();
+    }
+    
+    /**
+     * Read-only view over the backing array, for APIs that take buffers.
+     */
+    public FloatBuffer asBuffer() {
+        return FloatBuffer.wrap(values).asReadOnlyBuffer();
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Embedding && Arrays.equals(values, ((Embedding) o).values));
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+    
+    @Override
+    public String toString() {
+        return "Embedding[dimension=" + values.length + "]";
+    }
+}
@@ -19,6 +19,7 @@ public class OperationalResponse {
     private ClassificationData classification;
     private Map<String, Object> extractedEntities;
     private NextSteps nextSteps;
+    private RoutingData routing; // only set for mode=auto
     
     @Data
     @NoArgsConstructor
@@ -38,6 +39,7 @@ public class OperationalResponse {
         private double confidence;
         private String service;
         private String environment;
+        private String tier; // rules, model or none
     }
     
     @Data
@@ -63,4 +65,17 @@ public class OperationalResponse {
             private Map<String, Object> apiParameters; // Parameters for the API call
         }
     }
-}
\ No newline at end of file
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RoutingData {
+        private String requestedMode;
+        private String selectedMode; // core, rag, or rag_fallback (RAG failed, answered from core)
+        private String reason;
+        private double confidence;
+        private double entityCompleteness;
+        private long latencyMs;
+        private Long estimatedSavedMs; // estimated RAG latency avoided by answering from core
+    }
+}
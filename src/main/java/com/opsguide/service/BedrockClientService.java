@@ -0,0 +1,143 @@
+package com.opsguide.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one Bedrock runtime client shared by embeddings and LLM calls.
+ * <p>
+ * Calls go through {@link BedrockRuntimeAsyncClient} on a Netty connection pool, so a call in flight
+ * holds a pooled connection rather than a platform thread; concurrency is bounded by
+ * {@code aws.bedrock.http.max-concurrency} instead of a per-service thread pool. The client is built
+ * on first use, so profiles that never call Bedrock start no event loop.
+ */
+@Service
+@Slf4j
+public class BedrockClientService {
+    
+    private final String region;
+    private final int maxConcurrency;
+    private final int maxPendingAcquires;
+    private final Duration connectionTimeout;
+    private final Duration readTimeout;
+    private final Duration acquireTimeout;
+    private final Duration maxIdleTime;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final MeterRegistry meterRegistry;
+    
+    private volatile SdkAsyncHttpClient httpClient;
+    private volatile BedrockRuntimeAsyncClient bedrockClient;
+    
+    public BedrockClientService(
+            @Value("${aws.bedrock.region:us-east-1}") String region,
+            @Value("${aws.bedrock.http.max-concurrency:256}") int maxConcurrency,
+            @Value("${aws.bedrock.http.max-pending-acquires:10000}") int maxPendingAcquires,
+            @Value("${aws.bedrock.http.connection-timeout-ms:2000}") long connectionTimeoutMs,
+            @Value("${aws.bedrock.http.read-timeout-ms:120000}") long readTimeoutMs,
+            @Value("${aws.bedrock.http.acquire-timeout-ms:10000}") long acquireTimeoutMs,
+            @Value("${aws.bedrock.http.max-idle-ms:60000}") long maxIdleMs,
+            MeterRegistry meterRegistry) {
+        this.region = region;
+        this.maxConcurrency = maxConcurrency;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.connectionTimeout = Duration.ofMillis(connectionTimeoutMs);
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.acquireTimeout = Duration.ofMillis(acquireTimeoutMs);
+        this.maxIdleTime = Duration.ofMillis(maxIdleMs);
+        this.meterRegistry = meterRegistry;
+        
+        Gauge.builder("opsguide.bedrock.inflight", inFlight, AtomicInteger::get)
+            .description("Bedrock InvokeModel calls awaiting a response")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Serializes {@code requestBody} as JSON and invokes {@code modelId}. The returned future
+     * completes on the SDK's completion executor; keep dependent stages short and non-blocking.
+     */
+    public CompletableFuture<InvokeModelResponse> invokeModel(String modelId, Object requestBody) {
+        InvokeModelRequest request;
+        try {
+            request = InvokeModelRequest.builder()
+                .modelId(modelId)
+                .contentType("application/json")
+                .accept("application/json")
+                .body(SdkBytes.fromUtf8String(objectMapper.writeValueAsString(requestBody)))
+                .build();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        Timer timer = Timer.builder("opsguide.bedrock.invoke")
+            .tag("model", modelId)
+            .register(meterRegistry);
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        return getBedrockClient().invokeModel(request)
+            .whenComplete((response, error) -> {
+                inFlight.decrementAndGet();
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            });
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (bedrockClient != null) {
+            bedrockClient.close();
+            httpClient.close();
+        }
+    }
+    
+    private BedrockRuntimeAsyncClient getBedrockClient() {
+        BedrockRuntimeAsyncClient client = bedrockClient;
+        if (client == null) {
+            synchronized (this) {
+                client = bedrockClient;
+                if (client == null) {
+                    httpClient = NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConcurrency)
+                        .maxPendingConnectionAcquires(maxPendingAcquires)
+                        .connectionAcquisitionTimeout(acquireTimeout)
+                        .connectionTimeout(connectionTimeout)
+                        .readTimeout(readTimeout)
+                        .connectionMaxIdleTime(maxIdleTime)
+                        .tcpKeepAlive(true)
+                        .build();
+                    client = BedrockRuntimeAsyncClient.builder()
+                        .region(Region.of(region))
+                        .httpClient(httpClient)
+                        .build();
+                    bedrockClient = client;
+                    log.info("Created Bedrock async client for {} with up to {} concurrent connections",
+                        region, maxConcurrency);
+                }
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,158 @@
+package com.opsguide.service;
+
+import com.opsguide.service.matching.ClassificationRuleSet;
+import com.opsguide.service.matching.QueryMatcher;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the classification rule file, compiles it into a {@link QueryMatcher} and swaps the
+ * compiled matcher in atomically. Compilation never happens on a request thread: requests always
+ * read a fully built matcher, either the previous one or the new one.
+ */
+@Service
+@Slf4j
+public class ClassificationRulesService {
+    
+    private final ResourceLoader resourceLoader;
+    private final CacheManager cacheManager;
+    private final String rulesLocation;
+    
+    private volatile CompiledRules current;
+    private long lastModified;
+    
+    public ClassificationRulesService(
+            ResourceLoader resourceLoader,
+            CacheManager cacheManager,
+            MeterRegistry meterRegistry,
+            @org.springframework.beans.factory.annotation.Value(
+                "${opsguide.classification.rules-location:classpath:classification-rules.yml}") String rulesLocation) {
+        this.resourceLoader = resourceLoader;
+        this.cacheManager = cacheManager;
+        this.rulesLocation = rulesLocation;
+        
+        // Fail fast at startup; later reloads keep the last good rules instead
+        reload();
+        
+        Gauge.builder("classification.rules.compile.time", this, s -> s.current.getStats().getCompileTimeMillis())
+            .baseUnit("milliseconds")
+            .description("Time taken to compile the active classification rules")
+            .register(meterRegistry);
+        Gauge.builder("classification.rules.automaton.states", this, s -> s.current.getStats().getAutomatonStates())
+            .description("States in the active keyword automaton")
+            .register(meterRegistry);
+        Gauge.builder("classification.rules.count", this, s -> s.current.getStats().getRules())
+            .description("Rules in the active classification rule set")
+            .register(meterRegistry);
+        Gauge.builder("classification.rules.version", this, s -> s.current.getStats().getVersion())
+            .description("Reload counter of the active classification rule set")
+            .register(meterRegistry);
+    }
+    
+    public QueryMatcher getMatcher() {
+        return current.getMatcher();
+    }
+    
+    public long getVersion() {
+        return current.getStats().getVersion();
+    }
+    
+    public RuleSetStats getStats() {
+        return current.getStats();
+    }
+    
+    /**
+     * Compiles the rule file and swaps it in. Throws if the file cannot be read or compiled, in
+     * which case the active rules are left untouched.
+     */
+    public synchronized RuleSetStats reload() {
+        Resource resource = resourceLoader.getResource(rulesLocation);
+        long modified = lastModified(resource);
+        
+        long start = System.nanoTime();
+        QueryMatcher matcher = parse(resource).compile();
+        double compileMillis = (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        
+        long version = current == null ? 1 : current.getStats().getVersion() + 1;
+        RuleSetStats stats = new RuleSetStats(
+            version, rulesLocation, compileMillis, matcher.ruleCount(), matcher.keywordCount(), matcher.stateCount());
+        current = new CompiledRules(matcher, stats);
+        lastModified = modified;
+        
+        // Entries are keyed by rule version as well, this just frees the space early
+        Cache cache = cacheManager.getCache("classification");
+        if (cache != null) {
+            cache.clear();
+        }
+        
+        log.info("Loaded classification rules v{} from {}: {} rules, {} keywords, {} automaton states, compiled in {} ms",
+            version, rulesLocation, stats.getRules(), stats.getKeywords(), stats.getAutomatonStates(),
+            String.format("%.2f", compileMillis));
+        return stats;
+    }
+    
+    @Scheduled(fixedDelayString = "${opsguide.classification.rules-reload-interval-ms:10000}")
+    public void reloadIfChanged() {
+        Resource resource = resourceLoader.getResource(rulesLocation);
+        long modified = lastModified(resource);
+        if (modified <= 0 || modified == lastModified) {
+            return;
+        }
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            lastModified = modified;
+            log.error("Keeping classification rules v{}: failed to reload {}: {}",
+                getVersion(), rulesLocation, e.getMessage());
+        }
+    }
+    
+    private ClassificationRuleSet parse(Resource resource) {
+        try {
+            Binder binder = new Binder(ConfigurationPropertySources.from(
+                new YamlPropertySourceLoader().load("classification-rules", resource)));
+            return binder.bind("classification", ClassificationRuleSet.class)
+                .orElseThrow(() -> new IllegalStateException("No 'classification' section in " + rulesLocation));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read classification rules from " + rulesLocation, e);
+        }
+    }
+    
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.isFile() ? resource.lastModified() : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+    
+    @Value
+    private static class CompiledRules {
+        QueryMatcher matcher;
+        RuleSetStats stats;
+    }
+    
+    @Value
+    public static class RuleSetStats {
+        long version;
+        String location;
+        double compileTimeMillis;
+        int rules;
+        int keywords;
+        int automatonStates;
+    }
+}
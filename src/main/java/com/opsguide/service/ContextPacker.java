@@ -0,0 +1,240 @@
+package com.opsguide.service;
+
+import com.opsguide.service.ingestion.TokenEstimator;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs retrieved chunks into the knowledge base context of a RAG prompt, within a token budget.
+ * <p>
+ * Chunks are taken in score order. One whose word 3-grams mostly (by {@code duplicate-overlap})
+ * occur in a chunk already taken is dropped as a near-duplicate; one that would overrun the budget
+ * is skipped in favour of smaller ones further down. Token counts come from ingestion
+ * ({@link VectorSearchService.KnowledgeChunk#getTokens()}) and are only estimated here for chunks
+ * indexed without one. The chunks taken from one source are written under a single source line,
+ * in document order, with a heading path shared with the previous chunk written once and gaps
+ * between non-adjacent chunks marked.
+ */
+@Service
+public class ContextPacker {
+
+    private static final int SHINGLE_WORDS = 3;
+    private static final String GAP = "[...]";
+
+    private final int maxTokens;
+    private final int candidates;
+    private final double duplicateOverlap;
+    private final DistributionSummary packedTokens;
+
+    public ContextPacker(
+            MeterRegistry meterRegistry,
+            @Value("${opsguide.rag.context.max-tokens:1200}") int maxTokens,
+            @Value("${opsguide.rag.context.candidates:5}") int candidates,
+            @Value("${opsguide.rag.context.duplicate-overlap:0.8}") double duplicateOverlap) {
+        this.maxTokens = maxTokens;
+        this.candidates = candidates;
+        this.duplicateOverlap = duplicateOverlap;
+        this.packedTokens = DistributionSummary.builder("opsguide.rag.context.tokens")
+            .description("Estimated tokens of knowledge base context per RAG prompt")
+            .baseUnit("tokens")
+            .register(meterRegistry);
+    }
+
+    /**
+     * How many chunks to retrieve for packing; the budget decides how many of them are used.
+     */
+    public int getCandidates() {
+        return candidates;
+    }
+
+    public PackedContext pack(List<VectorSearchService.KnowledgeChunk> chunks) {
+        List<Packed> packed = new ArrayList<>();
+        int used = 0;
+        int candidateTokens = 0;
+        int duplicates = 0;
+        for (VectorSearchService.KnowledgeChunk chunk : chunks) {
+            String content = chunk.getContent();
+            if (content == null || content.isBlank()) {
+                continue;
+            }
+            int tokens = chunk.getTokens() > 0 ? chunk.getTokens() : TokenEstimator.estimate(content);
+            candidateTokens += tokens;
+            long[] shingles = shingles(content);
+            if (isDuplicate(shingles, packed)) {
+                duplicates++;
+                continue;
+            }
+            boolean newSource = packed.stream().noneMatch(p -> p.chunk.getSource().equals(chunk.getSource()));
+            int overhead = newSource ? TokenEstimator.estimate(sourceLine(chunk.getSource())) : TokenEstimator.estimate(GAP);
+            if (used + overhead + tokens > maxTokens) {
+                if (!packed.isEmpty()) {
+                    continue;
+                }
+                // The best chunk alone is over budget: keep as many of its lines as fit
+                content = truncate(content, maxTokens - overhead);
+                tokens = TokenEstimator.estimate(content);
+                if (content.isEmpty()) {
+                    continue;
+                }
+            }
+            packed.add(new Packed(chunk, content, shingles));
+            used += overhead + tokens;
+        }
+        packedTokens.record(used);
+        return new PackedContext(render(packed), packed.stream().map(p -> p.chunk).toList(), used, candidateTokens,
+            duplicates);
+    }
+
+    // Sources in the order of their best chunk, each source's chunks in document order
+    private static String render(List<Packed> packed) {
+        Map<String, List<Packed>> bySource = new LinkedHashMap<>();
+        for (Packed p : packed) {
+            bySource.computeIfAbsent(p.chunk.getSource(), source -> new ArrayList<>()).add(p);
+        }
+        StringBuilder context = new StringBuilder();
+        for (Map.Entry<String, List<Packed>> source : bySource.entrySet()) {
+            List<Packed> pieces = source.getValue();
+            // Stable, so chunks without a position stay in score order after the positioned ones
+            pieces.sort(Comparator.comparing(p -> p.chunk.getPosition(), Comparator.nullsLast(Comparator.naturalOrder())));
+            context.append(sourceLine(source.getKey())).append('\n');
+            Packed previous = null;
+            for (Packed piece : pieces) {
+                String content = piece.content.strip();
+                if (previous != null) {
+                    context.append(adjacent(previous, piece) ? "\n\n" : "\n\n" + GAP + "\n\n");
+                    content = withoutSharedHeading(previous.content, content);
+                }
+                context.append(content);
+                previous = piece;
+            }
+            context.append("\n\n");
+        }
+        return context.toString();
+    }
+
+    private static String sourceLine(String source) {
+        return "Source: " + source;
+    }
+
+    private static boolean adjacent(Packed previous, Packed next) {
+        Integer before = previous.chunk.getPosition();
+        Integer after = next.chunk.getPosition();
+        return before != null && after != null && after == before + 1;
+    }
+
+    // Chunks of one section both start with its heading path ("Runbook > Pre-checks") and a blank line
+    private static String withoutSharedHeading(String previous, String content) {
+        int end = content.indexOf("\n\n");
+        if (end <= 0 || !previous.strip().startsWith(content.substring(0, end) + "\n\n")) {
+            return content;
+        }
+        return content.substring(end + 2).strip();
+    }
+
+    private static String truncate(String content, int tokens) {
+        StringBuilder kept = new StringBuilder();
+        for (String line : content.split("\n", -1)) {
+            String next = kept.length() == 0 ? line : kept + "\n" + line;
+            if (TokenEstimator.estimate(next) > tokens) {
+                break;
+            }
+            kept.setLength(0);
+            kept.append(next);
+        }
+        return kept.toString().strip();
+    }
+
+    private boolean isDuplicate(long[] shingles, List<Packed> packed) {
+        for (Packed p : packed) {
+            if (overlap(shingles, p.shingles) >= duplicateOverlap * shingles.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Sorted distinct hashes of the lower-cased word 3-grams (the whole text if it has fewer words)
+    private static long[] shingles(String content) {
+        // Hash of each word, then of each run of SHINGLE_WORDS word hashes
+        long[] words = new long[content.length() / 2 + 1];
+        int count = 0;
+        for (int i = 0; i < content.length(); ) {
+            if (!Character.isLetterOrDigit(content.charAt(i))) {
+                i++;
+                continue;
+            }
+            long hash = 1125899906842597L;
+            while (i < content.length() && Character.isLetterOrDigit(content.charAt(i))) {
+                hash = 31 * hash + Character.toLowerCase(content.charAt(i++));
+            }
+            words[count++] = hash;
+        }
+        long[] shingles = new long[Math.max(1, count - SHINGLE_WORDS + 1)];
+        for (int i = 0; i < shingles.length; i++) {
+            long hash = 0;
+            for (int w = i; w < Math.min(i + SHINGLE_WORDS, count); w++) {
+                hash = hash * 0x9E3779B97F4A7C15L + words[w];
+            }
+            shingles[i] = hash;
+        }
+        Arrays.sort(shingles);
+        int distinct = 0;
+        for (int i = 0; i < shingles.length; i++) {
+            if (i == 0 || shingles[i] != shingles[i - 1]) {
+                shingles[distinct++] = shingles[i];
+            }
+        }
+        return Arrays.copyOf(shingles, distinct);
+    }
+
+    private static int overlap(long[] a, long[] b) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    private static final class Packed {
+        private final VectorSearchService.KnowledgeChunk chunk;
+        private final String content;
+        private final long[] shingles;
+
+        private Packed(VectorSearchService.KnowledgeChunk chunk, String content, long[] shingles) {
+            this.chunk = chunk;
+            this.content = content;
+            this.shingles = shingles;
+        }
+    }
+
+    /**
+     * Context ready to paste into a prompt. {@code chunks} are the chunks it includes, in score
+     * order; {@code tokens} is its estimated size and {@code candidateTokens} that of all the
+     * chunks it was packed from.
+     */
+    @lombok.Value
+    public static class PackedContext {
+        String text;
+        List<VectorSearchService.KnowledgeChunk> chunks;
+        int tokens;
+        int candidateTokens;
+        int duplicates;
+    }
+}
@@ -0,0 +1,294 @@
+package com.opsguide.service;
+
+import com.opsguide.model.*;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Builds core-mode (pattern matching only) responses: classification, extracted entities and
+ * the runbook-backed next steps for the identified task.
+ */
+@Component
+public class CoreResponseBuilder {
+    
+    public OperationalResponse buildCoreResponse(OperationalRequest request, ClassificationResult classification) {
+        OperationalResponse.InputData input = new OperationalResponse.InputData(
+            request.getQuery(),
+            request.getEnvironment(),
+            request.getUserId()
+        );
+        
+        OperationalResponse.ClassificationData classificationData = new OperationalResponse.ClassificationData(
+            classification.getUseCase().getValue(),
+            classification.getTaskId() != null ? classification.getTaskId().getValue() : null,
+            classification.getConfidence(),
+            classification.getService(),
+            classification.getEnvironment(),
+            classification.getTier() != null ? classification.getTier().getValue() : null
+        );
+        
+        OperationalResponse.NextSteps nextSteps = null;
+        if (classification.getTaskId() != null) {
+            nextSteps = getNextSteps(classification.getTaskId());
+        }
+        
+        return new OperationalResponse(
+            request.getRequestId(),
+            "processed",
+            LocalDateTime.now(),
+            input,
+            classificationData,
+            classification.getExtractedEntities(),
+            nextSteps,
+            null
+        );
+    }
+    
+    private OperationalResponse.NextSteps getNextSteps(TaskId taskId) {
+        switch (taskId) {
+            case CANCEL_ORDER:
+                return createNextStepsWithMetadata(
+                    "Order cancellation request identified",
+                    "knowledge/runbooks/cancel-order-runbook.md",
+                    "knowledge/api-specs/order-management-api.md",
+                    new String[]{
+                        "Validate order exists and is cancellable",
+                        "Check user permissions",
+                        "Execute cancellation via API",
+                        "Verify cancellation completed"
+                    }
+                );
+            case UPDATE_ORDER_STATUS:
+                return createNextStepsWithMetadata(
+                    "Order status update request identified",
+                    "knowledge/runbooks/update-order-status-runbook.md",
+                    "knowledge/api-specs/order-management-api.md",
+                    new String[]{
+                        "Validate order exists",
+                        "Check status transition is valid",
+                        "Update order status via API",
+                        "Verify status change completed"
+                    }
+                );
+            case CANCEL_CASE:
+                return createNextStepsWithMetadata(
+                    "Case cancellation request identified",
+                    "knowledge/runbooks/cancel-case-runbook.md",
+                    "knowledge/api-specs/case-management-api.md",
+                    new String[]{
+                        "Validate case exists and is cancellable",
+                        "Check user permissions",
+                        "Execute cancellation via API",
+                        "Verify cancellation completed"
+                    }
+                );
+            case UPDATE_CASE_STATUS:
+                return createNextStepsWithMetadata(
+                    "Case status update request identified",
+                    "knowledge/runbooks/update-case-status-runbook.md",
+                    "knowledge/api-specs/case-management-api.md",
+                    new String[]{
+                        "Validate case exists",
+                        "Check status transition is valid",
+                        "Update case status via API",
+                        "Verify status change completed"
+                    }
+                );
+            case UPDATE_SAMPLES:
+                return createNextStepsWithMetadata(
+                    "Sample update request identified",
+                    "knowledge/runbooks/update-samples-runbook.md",
+                    "knowledge/api-specs/sample-management-api.md",
+                    new String[]{
+                        "Validate case and samples exist",
+                        "Check sample update permissions",
+                        "Execute sample update via API",
+                        "Verify sample update completed"
+                    }
+                );
+            case UPDATE_STAIN:
+                return createNextStepsWithMetadata(
+                    "Stain update request identified",
+                    "knowledge/runbooks/update-stain-runbook.md",
+                    "knowledge/api-specs/slide-management-api.md",
+                    new String[]{
+                        "Validate slide and stain exist",
+                        "Check stain update permissions",
+                        "Execute stain update via API",
+                        "Verify stain update completed"
+                    }
+                );
+            default:
+                return createNextStepsWithMetadata(
+                    "Generic operational request identified",
+                    "knowledge/runbooks/generic-operation-runbook.md",
+                    "knowledge/api-specs/generic-api.md",
+                    new String[]{
+                        "Analyze request requirements",
+                        "Identify target system and API",
+                        "Execute operation via appropriate API",
+                        "Verify operation completed successfully"
+                    }
+                );
+        }
+    }
+    
+    private OperationalResponse.NextSteps createNextStepsWithMetadata(
+            String description, String runbook, String apiSpec, String[] typicalSteps) {
+        
+        OperationalResponse.NextSteps.StepExecutionMetadata[] metadata = 
+            new OperationalResponse.NextSteps.StepExecutionMetadata[typicalSteps.length];
+        
+        for (int i = 0; i < typicalSteps.length; i++) {
+            String stepName = typicalSteps[i];
+            boolean autoExecutable = isAutoExecutable(stepName);
+            boolean requiresApproval = requiresApproval(stepName);
+            String stepType = determineStepType(stepName);
+            String apiEndpoint = getApiEndpointForStep(stepName, stepType);
+            String httpMethod = getHttpMethodForStep(stepName, stepType);
+            Map<String, Object> apiParameters = getApiParametersForStep(stepName, stepType);
+            
+            metadata[i] = new OperationalResponse.NextSteps.StepExecutionMetadata(
+                stepName, autoExecutable, requiresApproval, stepType, apiEndpoint, httpMethod, apiParameters
+            );
+        }
+        
+        OperationalResponse.NextSteps nextSteps = new OperationalResponse.NextSteps(
+            description, runbook, apiSpec, typicalSteps, metadata
+        );
+        return nextSteps;
+    }
+    
+    private String getApiEndpointForStep(String stepName, String stepType) {
+        String lower = stepName.toLowerCase();
+        // Determine endpoint based on step type and name
+        if (stepType.equals("VALIDATION")) {
+            if (lower.contains("case")) {
+                return "/api/v2/cases/{case_id}/status";
+            } else if (lower.contains("order")) {
+                return "/api/v2/orders/{order_id}/status";
+            }
+        } else if (stepType.equals("PERMISSION_CHECK")) {
+            return "/api/v2/users/{user_id}/roles";
+        } else if (stepType.equals("API_EXECUTION")) {
+            if (lower.contains("cancel") && lower.contains("case")) {
+                return "/api/v2/cases/{case_id}/cancel";
+            } else if (lower.contains("update") && lower.contains("case")) {
+                return "/api/v2/cases/{case_id}/status";
+            } else if (lower.contains("cancel") && lower.contains("order")) {
+                return "/api/v2/orders/{order_id}/cancel";
+            }
+        } else if (stepType.equals("VERIFICATION")) {
+            if (lower.contains("case")) {
+                return "/api/v2/cases/{case_id}/status";
+            } else if (lower.contains("order")) {
+                return "/api/v2/orders/{order_id}/status";
+            }
+        }
+        return null;
+    }
+    
+    private String getHttpMethodForStep(String stepName, String stepType) {
+        if (stepType.equals("API_EXECUTION")) {
+            String lower = stepName.toLowerCase();
+            if (lower.contains("cancel")) {
+                return "POST";
+            } else if (lower.contains("update")) {
+                return "PATCH";
+            }
+        }
+        return "GET"; // Default for validation, permission checks, verification
+    }
+    
+    private Map<String, Object> getApiParametersForStep(String stepName, String stepType) {
+        Map<String, Object> params = new java.util.HashMap<>();
+        String lower = stepName.toLowerCase();
+        
+        if (stepType.equals("API_EXECUTION")) {
+            if (lower.contains("cancel")) {
+                params.put("reason", "operational_request");
+                params.put("notify_stakeholders", true);
+            } else if (lower.contains("update") && lower.contains("status")) {
+                params.put("action", "update_status");
+            }
+        }
+        
+        return params;
+    }
+    
+    private boolean isAutoExecutable(String stepName) {
+        String lower = stepName.toLowerCase();
+        // Auto-executable: validation, permission checks, verification
+        return lower.contains("validate") || 
+               lower.contains("check") && (lower.contains("permission") || lower.contains("exist")) ||
+               lower.contains("verify");
+    }
+    
+    private boolean requiresApproval(String stepName) {
+        String lower = stepName.toLowerCase();
+        // Requires approval: execution steps
+        return lower.contains("execute") || 
+               lower.contains("run") ||
+               (lower.contains("cancel") && lower.contains("via")) ||
+               (lower.contains("update") && lower.contains("via"));
+    }
+    
+    private String determineStepType(String stepName) {
+        String lower = stepName.toLowerCase();
+        if (lower.contains("validate") || (lower.contains("check") && lower.contains("exist"))) {
+            return "VALIDATION";
+        } else if (lower.contains("permission")) {
+            return "PERMISSION_CHECK";
+        } else if (lower.contains("execute") || lower.contains("via")) {
+            return "API_EXECUTION";
+        } else if (lower.contains("verify") || lower.contains("confirm")) {
+            return "VERIFICATION";
+        }
+        return "VALIDATION";
+    }
+    
+    public OperationalResponse createErrorResponse(String message, String requestId) {
+        OperationalResponse response = new OperationalResponse();
+        response.setRequestId(requestId);
+        response.setStatus("error");
+        response.setTimestamp(LocalDateTime.now());
+        
+        // Create minimal input data
+        OperationalResponse.InputData inputData = new OperationalResponse.InputData();
+        inputData.setQuery("");
+        inputData.setEnvironment("dev");
+        inputData.setUserId("");
+        response.setInput(inputData);
+        
+        // Create error classification
+        OperationalResponse.ClassificationData classification = new OperationalResponse.ClassificationData();
+        classification.setUseCase("ERROR");
+        classification.setTaskId("ERROR");
+        classification.setConfidence(0.0);
+        classification.setService("System");
+        classification.setEnvironment("dev");
+        response.setClassification(classification);
+        
+        // Create error next steps
+        String[] errorSteps = new String[]{"Review error message", "Check request format", "Retry with corrected data"};
+        OperationalResponse.NextSteps.StepExecutionMetadata[] errorMetadata = 
+            new OperationalResponse.NextSteps.StepExecutionMetadata[errorSteps.length];
+        for (int i = 0; i < errorSteps.length; i++) {
+            errorMetadata[i] = new OperationalResponse.NextSteps.StepExecutionMetadata(
+                errorSteps[i], true, false, "VALIDATION", null, "GET", new java.util.HashMap<>()
+            );
+        }
+        OperationalResponse.NextSteps nextSteps = new OperationalResponse.NextSteps(
+            "Error: " + message,
+            "knowledge/runbooks/error-handling.md",
+            "knowledge/api-specs/error-api.md",
+            errorSteps,
+            errorMetadata
+        );
+        response.setNextSteps(nextSteps);
+        
+        return response;
+    }
+}
@@ -1,108 +1,153 @@
 package com.opsguide.service;
 
+import com.opsguide.model.Embedding;
+import com.opsguide.service.embedding.EmbeddingBatcher;
+import com.opsguide.service.embedding.EmbeddingProvider;
+import com.opsguide.service.embedding.MappedEmbeddingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
-import software.amazon.awssdk.core.SdkBytes;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 @Service
 public class EmbeddingsService {
     
-    @Value("${aws.bedrock.region:us-east-1}")
-    private String region;
+    // Bedrock Titan or the local hashed n-gram model, per opsguide.embedding.provider
+    private final EmbeddingProvider provider;
+    private final String modelId;
+    // Shared by query-time and ingestion-time embedding; null when opsguide.embedding-cache.enabled=false
+    private final MappedEmbeddingCache embeddingCache;
+    // Merges concurrent async requests into batch calls; null when opsguide.embedding-batch.enabled=false
+    // or the provider cannot batch (Titan), so no request waits out a window for nothing
+    private final EmbeddingBatcher batcher;
     
-    @Value("${aws.bedrock.embeddings-model:amazon.titan-embed-text-v1}")
-    private String modelId;
+    public EmbeddingsService(
+            EmbeddingProvider provider,
+            ObjectProvider<MappedEmbeddingCache> embeddingCache,
+            MeterRegistry meterRegistry,
+            @Value("${opsguide.embedding-batch.enabled:true}") boolean batchingEnabled,
+            @Value("${opsguide.embedding-batch.max-size:16}") int maxBatchSize,
+            @Value("${opsguide.embedding-batch.max-wait-ms:1}") long maxBatchWaitMs) {
+        this.provider = provider;
+        this.modelId = provider.modelId();
+        this.embeddingCache = embeddingCache.getIfAvailable();
+        this.batcher = batchingEnabled && provider.supportsNativeBatch()
+            ? new EmbeddingBatcher(this::embedBatchAsync, maxBatchSize, maxBatchWaitMs, meterRegistry)
+            : null;
+    }
     
-    private BedrockRuntimeClient bedrockClient;
-    private final ObjectMapper objectMapper;
-    private final Executor asyncExecutor;
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
     
-    public EmbeddingsService() {
-        this.objectMapper = new ObjectMapper();
-        this.asyncExecutor = Executors.newFixedThreadPool(10);
+    public String getModelId() {
+        return modelId;
     }
     
-    private BedrockRuntimeClient getBedrockClient() {
-        if (bedrockClient == null) {
-            this.bedrockClient = BedrockRuntimeClient.builder()
-                .region(software.amazon.awssdk.regions.Region.of(region))
-                .build();
+    public Embedding generateEmbedding(String text) {
+        Embedding cached = cachedEmbedding(text);
+        if (cached != null) {
+            return cached;
+        }
+        
+        Embedding embedding = provider.embed(text);
+        if (embeddingCache != null) {
+            embeddingCache.put(modelId, text, embedding);
         }
-        return bedrockClient;
+        return embedding;
     }
     
-    public List<Float> generateEmbedding(String text) {
-        try {
-            // For now, return mock embedding for development
-            return generateMockEmbedding(text);
-            
-            // TODO: Implement actual Bedrock Titan call
-            /*
-            String requestBody = objectMapper.writeValueAsString(Map.of(
-                "inputText", text,
-                "dimensions", 1536,
-                "normalize", true
-            ));
-            
-            InvokeModelRequest request = InvokeModelRequest.builder()
-                .modelId(modelId)
-                .contentType("application/json")
-                .accept("application/json")
-                .body(SdkBytes.fromUtf8String(requestBody))
-                .build();
-                
-            InvokeModelResponse response = bedrockClient.invokeModel(request);
-            String responseBody = response.body().asUtf8String();
-            
-            JsonNode jsonNode = objectMapper.readTree(responseBody);
-            JsonNode embeddingNode = jsonNode.get("embedding");
-            
-            List<Float> embedding = new ArrayList<>();
-            for (JsonNode value : embeddingNode) {
-                embedding.add(value.floatValue());
+    public CompletableFuture<Embedding> generateEmbeddingAsync(String text) {
+        Embedding cached = cachedEmbedding(text);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (batcher != null) {
+            return batcher.submit(text);
+        }
+        return provider.embedAsync(text).thenApply(embedding -> {
+            if (embeddingCache != null) {
+                embeddingCache.put(modelId, text, embedding);
             }
-            
             return embedding;
-            */
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to generate embedding: " + e.getMessage(), e);
-        }
+        });
     }
     
-    public CompletableFuture<List<Float>> generateEmbeddingAsync(String text) {
-        return CompletableFuture.supplyAsync(() -> generateEmbedding(text), asyncExecutor);
+    public List<Embedding> generateBatchEmbeddings(List<String> texts) {
+        Embedding[] embeddings = new Embedding[texts.size()];
+        List<String> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (int i = 0; i < embeddings.length; i++) {
+            embeddings[i] = cachedEmbedding(texts.get(i));
+            if (embeddings[i] == null) {
+                misses.add(texts.get(i));
+                missIndexes.add(i);
+            }
+        }
+        
+        if (!misses.isEmpty()) {
+            List<Embedding> generated = embedBatch(misses);
+            for (int i = 0; i < generated.size(); i++) {
+                embeddings[missIndexes.get(i)] = generated.get(i);
+            }
+        }
+        return Arrays.asList(embeddings);
     }
     
-    public List<List<Float>> generateBatchEmbeddings(List<String> texts) {
-        List<List<Float>> embeddings = new ArrayList<>();
-        for (String text : texts) {
-            embeddings.add(generateEmbedding(text));
+    /**
+     * Async form of {@link #generateBatchEmbeddings}: cache hits resolve immediately and the misses
+     * go to the provider as one batch.
+     */
+    public CompletableFuture<List<Embedding>> generateBatchEmbeddingsAsync(List<String> texts) {
+        Embedding[] embeddings = new Embedding[texts.size()];
+        List<String> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (int i = 0; i < embeddings.length; i++) {
+            embeddings[i] = cachedEmbedding(texts.get(i));
+            if (embeddings[i] == null) {
+                misses.add(texts.get(i));
+                missIndexes.add(i);
+            }
         }
-        return embeddings;
+        
+        if (misses.isEmpty()) {
+            return CompletableFuture.completedFuture(Arrays.asList(embeddings));
+        }
+        return embedBatchAsync(misses).thenApply(generated -> {
+            for (int i = 0; i < generated.size(); i++) {
+                embeddings[missIndexes.get(i)] = generated.get(i);
+            }
+            return Arrays.asList(embeddings);
+        });
     }
     
-    private List<Float> generateMockEmbedding(String text) {
-        // Generate mock 1536-dimensional embedding using text hash
-        List<Float> embedding = new ArrayList<>();
-        int hash = text.hashCode();
-        
-        for (int i = 0; i < 1536; i++) {
-            // Use hash with different multipliers to generate pseudo-random values
-            float value = (float) Math.sin(hash * (i + 1) * 0.001) * 0.5f;
-            embedding.add(value);
+    private Embedding cachedEmbedding(String text) {
+        return embeddingCache != null ? embeddingCache.get(modelId, text) : null;
+    }
+    
+    private List<Embedding> embedBatch(List<String> texts) {
+        return cacheAll(texts, provider.embedBatch(texts));
+    }
+    
+    private CompletableFuture<List<Embedding>> embedBatchAsync(List<String> texts) {
+        return provider.embedBatchAsync(texts).thenApply(embeddings -> cacheAll(texts, embeddings));
+    }
+    
+    private List<Embedding> cacheAll(List<String> texts, List<Embedding> embeddings) {
+        if (embeddingCache != null) {
+            for (int i = 0; i < texts.size(); i++) {
+                embeddingCache.put(modelId, texts.get(i), embeddings.get(i));
+            }
         }
-        
-        return embedding;
+        return embeddings;
     }
 }
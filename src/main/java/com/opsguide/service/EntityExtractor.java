@@ -1,36 +1,24 @@
 package com.opsguide.service;
 
+import com.opsguide.service.matching.IdMatches;
+import com.opsguide.service.matching.IdScanner;
+import com.opsguide.service.matching.KeywordSet;
+import com.opsguide.service.matching.QueryTokenizer;
+import com.opsguide.service.matching.TokenizedQuery;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 public class EntityExtractor {
     
-    // Generic ID patterns for various entities
-    private static final Pattern ORDER_ID_PATTERN = Pattern.compile(
-        "ORDER[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE
-    );
-    
-    private static final Pattern CASE_ID_PATTERN = Pattern.compile(
-        "CASE[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE
-    );
-    
-    private static final Pattern SAMPLE_ID_PATTERN = Pattern.compile(
-        "SAMPLE[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE
-    );
-    
-    private static final Pattern SLIDE_ID_PATTERN = Pattern.compile(
-        "SLIDE[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE
-    );
-    
-    // Generic ID patterns
-    private static final Pattern GENERIC_ID_PATTERN = Pattern.compile(
-        "\\b(\\w+)[\\s_-]?(\\d+)\\b", Pattern.CASE_INSENSITIVE
-    );
+    // Entity keys for each IdScanner.IdType, by ordinal; repeated IDs of a type also get the plural key
+    private static final String[] ID_KEYS = {"order_id", "case_id", "sample_id", "slide_id"};
+    private static final String[] ID_LIST_KEYS = {"order_ids", "case_ids", "sample_ids", "slide_ids"};
     
     // Common status keywords (no validation - just extraction)
     private static final String[] STATUS_KEYWORDS = {
@@ -39,112 +27,113 @@ public class EntityExtractor {
         "ready", "waiting", "approved", "rejected", "draft", "published"
     };
     
+    private static final String[] ENTITY_TYPES = {"order", "case", "sample", "slide", "stain"};
+    
+    // Status keywords and entity types are found in one substring scan; declaration order is
+    // the priority within each group, matching the old contains() loops
+    private static final KeywordSet KEYWORDS = new KeywordSet(concat(STATUS_KEYWORDS, ENTITY_TYPES));
+    private static final long STATUS_GROUP = KeywordSet.range(0, STATUS_KEYWORDS.length);
+    private static final long ENTITY_TYPE_GROUP =
+        KeywordSet.range(STATUS_KEYWORDS.length, STATUS_KEYWORDS.length + ENTITY_TYPES.length);
+    
+    // Scan state is per thread and reused, so scanning allocates nothing; only emitted IDs become strings
+    private static final ThreadLocal<IdMatches> ID_MATCHES = ThreadLocal.withInitial(IdMatches::new);
+    
     public String extractOrderId(String query) {
-        Matcher matcher = ORDER_ID_PATTERN.matcher(query);
-        if (matcher.find()) {
-            return matcher.group(1) + "-" + matcher.group(2);
-        }
-        return null;
+        return extractFirstId(query, IdScanner.IdType.ORDER);
     }
     
     public String extractCaseId(String query) {
-        Matcher matcher = CASE_ID_PATTERN.matcher(query);
-        if (matcher.find()) {
-            return matcher.group(1) + "-" + matcher.group(2);
-        }
-        return null;
+        return extractFirstId(query, IdScanner.IdType.CASE);
     }
     
     public String extractSampleId(String query) {
-        Matcher matcher = SAMPLE_ID_PATTERN.matcher(query);
-        if (matcher.find()) {
-            return matcher.group(1) + "-" + matcher.group(2);
-        }
-        return null;
+        return extractFirstId(query, IdScanner.IdType.SAMPLE);
     }
     
     public String extractSlideId(String query) {
-        Matcher matcher = SLIDE_ID_PATTERN.matcher(query);
-        if (matcher.find()) {
-            return matcher.group(1) + "-" + matcher.group(2);
-        }
-        return null;
+        return extractFirstId(query, IdScanner.IdType.SLIDE);
     }
     
     public String extractGenericId(String query) {
-        Matcher matcher = GENERIC_ID_PATTERN.matcher(query);
-        if (matcher.find()) {
-            return matcher.group(1) + "-" + matcher.group(2);
-        }
-        return null;
+        IdMatches ids = ID_MATCHES.get();
+        return IdScanner.scanGeneric(query, ids) ? ids.formatGeneric(query) : null;
     }
     
     public String extractTargetStatus(String query) {
-        String queryLower = query.toLowerCase();
-        
-        for (String status : STATUS_KEYWORDS) {
-            if (queryLower.contains(status)) {
-                return status;
-            }
-        }
-        
-        return null;
+        TokenizedQuery tokenized = QueryTokenizer.tokenize(query);
+        return KEYWORDS.first(KEYWORDS.scan(tokenized), STATUS_GROUP);
     }
     
     public String extractEntityType(String query) {
-        String queryLower = query.toLowerCase();
-        
-        if (queryLower.contains("order")) return "order";
-        if (queryLower.contains("case")) return "case";
-        if (queryLower.contains("sample")) return "sample";
-        if (queryLower.contains("slide")) return "slide";
-        if (queryLower.contains("stain")) return "stain";
-        
-        return "unknown";
+        TokenizedQuery tokenized = QueryTokenizer.tokenize(query);
+        String entityType = KEYWORDS.first(KEYWORDS.scan(tokenized), ENTITY_TYPE_GROUP);
+        return entityType != null ? entityType : "unknown";
     }
     
     public Map<String, Object> extractAllEntities(String query) {
+        return extractAllEntities(QueryTokenizer.tokenize(query));
+    }
+    
+    public Map<String, Object> extractAllEntities(TokenizedQuery tokenized) {
         Map<String, Object> entities = new HashMap<>();
+        String query = tokenized.getOriginal();
+        long keywords = KEYWORDS.scan(tokenized);
         
-        // Extract various ID types
-        String orderId = extractOrderId(query);
-        if (orderId != null) {
-            entities.put("order_id", orderId);
-        }
-        
-        String caseId = extractCaseId(query);
-        if (caseId != null) {
-            entities.put("case_id", caseId);
+        // Every order, case, sample and slide ID in one pass, emitted in query order
+        IdMatches ids = ID_MATCHES.get();
+        IdScanner.scan(query, ids);
+        for (int i = 0; i < ids.size(); i++) {
+            int type = ids.type(i).ordinal();
+            String id = ids.format(query, i);
+            Object first = entities.putIfAbsent(ID_KEYS[type], id);
+            if (first != null) {
+                idList(entities, type, (String) first).add(id);
+            }
         }
-        
-        String sampleId = extractSampleId(query);
-        if (sampleId != null) {
-            entities.put("sample_id", sampleId);
+        // Results are cached and shared, so the lists must not be changed by whoever reads them
+        for (String key : ID_LIST_KEYS) {
+            entities.computeIfPresent(key, (k, list) -> List.copyOf((List<?>) list));
         }
         
-        String slideId = extractSlideId(query);
-        if (slideId != null) {
-            entities.put("slide_id", slideId);
-        }
-        
-        // Extract generic ID if no specific ID found
-        if (entities.isEmpty()) {
-            String genericId = extractGenericId(query);
-            if (genericId != null) {
-                entities.put("entity_id", genericId);
-            }
+        // Extract generic ID if no specific ID found (it needs at least one digit)
+        if (ids.isEmpty() && tokenized.hasDigit() && IdScanner.scanGeneric(query, ids)) {
+            entities.put("entity_id", ids.formatGeneric(query));
         }
         
         // Extract status
-        String targetStatus = extractTargetStatus(query);
+        String targetStatus = KEYWORDS.first(keywords, STATUS_GROUP);
         if (targetStatus != null) {
             entities.put("target_status", targetStatus);
         }
         
         // Extract entity type
-        String entityType = extractEntityType(query);
-        entities.put("entity_type", entityType);
+        String entityType = KEYWORDS.first(keywords, ENTITY_TYPE_GROUP);
+        entities.put("entity_type", entityType != null ? entityType : "unknown");
         
         return entities;
     }
+    
+    private static String extractFirstId(String query, IdScanner.IdType type) {
+        IdMatches ids = ID_MATCHES.get();
+        return IdScanner.scanFirst(query, type, ids) ? ids.format(query, 0) : null;
+    }
+    
+    // The plural list of a repeated ID type, started with the type's first ID
+    @SuppressWarnings("unchecked")
+    private static List<String> idList(Map<String, Object> entities, int type, String first) {
+        List<String> ids = (List<String>) entities.get(ID_LIST_KEYS[type]);
+        if (ids == null) {
+            ids = new ArrayList<>(4);
+            ids.add(first);
+            entities.put(ID_LIST_KEYS[type], ids);
+        }
+        return ids;
+    }
+    
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
 }
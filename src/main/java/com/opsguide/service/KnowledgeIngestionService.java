@@ -0,0 +1,441 @@
+package com.opsguide.service;
+
+import com.opsguide.model.Embedding;
+import com.opsguide.service.ingestion.DocumentChunk;
+import com.opsguide.service.ingestion.MarkdownChunker;
+import com.opsguide.service.ingestion.TokenEstimator;
+import com.opsguide.service.vector.FlatSegment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovers the markdown knowledge documents, chunks them by heading, embeds the chunks and
+ * publishes them to {@link VectorSearchService}.
+ * <p>
+ * Every run rewrites a {@link FlatSegment} keyed by chunk content hash under the snapshot
+ * directory. The next run maps the previous segment and reuses the vector of every chunk whose
+ * hash it already holds, so a one-line runbook edit re-embeds only the sections it touched. New
+ * chunks are embedded in batches, several batches in flight at a time. Reused and new vectors are
+ * written straight to their rows of the next segment, so the heap holds one batch of them at a
+ * time rather than the whole corpus. The published index is
+ * built off to the side and swapped in whole; searches never see a half-ingested corpus.
+ * <p>
+ * Each document is attributed to the service its file name and title name under the
+ * classification rules (the service a query about it classifies to), so the index can be
+ * partitioned by service; chunks are published grouped by service and type.
+ * <p>
+ * After publishing, the index is written to a {@link VectorSearchService#writeSnapshot snapshot}
+ * tagged with a digest of the chunks it holds. On startup the newest snapshot is restored before
+ * anything is read or embedded, and a run whose chunks hash to the restored digest keeps the
+ * restored index instead of rebuilding it. With OpenSearch the digest is stored with the published
+ * index instead, so a node that boots onto the current corpus embeds and publishes nothing.
+ */
+@Service
+@Slf4j
+public class KnowledgeIngestionService {
+
+    private final EmbeddingsService embeddingsService;
+    private final VectorSearchService vectorSearchService;
+    private final ClassificationRulesService classificationRules;
+    private final ResourcePatternResolver resourceResolver;
+    private final String[] locations;
+    private final Path snapshotDir;
+    private final MarkdownChunker chunker;
+    private final int batchSize;
+    private final int parallelBatches;
+    private final boolean ingestOnStartup;
+    private final Counter embeddedChunks;
+    private final Counter reusedChunks;
+
+    private volatile IngestionReport lastReport;
+    private long version;
+    // Set once a restored or ingested index is being served, or right away when startup loads nothing
+    private volatile boolean indexReady;
+    private volatile String startupError;
+
+    public KnowledgeIngestionService(
+            EmbeddingsService embeddingsService,
+            VectorSearchService vectorSearchService,
+            ClassificationRulesService classificationRules,
+            ResourceLoader resourceLoader,
+            MeterRegistry meterRegistry,
+            @org.springframework.beans.factory.annotation.Value(
+                "${opsguide.ingestion.locations:classpath*:knowledge/**/*.md}") String[] locations,
+            @org.springframework.beans.factory.annotation.Value(
+                "${opsguide.ingestion.snapshot-dir:cache/knowledge}") String snapshotDir,
+            @org.springframework.beans.factory.annotation.Value(
+                "${opsguide.ingestion.max-chunk-chars:1500}") int maxChunkChars,
+            @org.springframework.beans.factory.annotation.Value(
+                "${opsguide.ingestion.batch-size:32}") int batchSize,
+            @org.springframework.beans.factory.annotation.Value(
+                "${opsguide.ingestion.parallel-batches:4}") int parallelBatches,
+            @org.springframework.beans.factory.annotation.Value(
+                "${opsguide.ingestion.on-startup:true}") boolean ingestOnStartup) {
+        this.embeddingsService = embeddingsService;
+        this.vectorSearchService = vectorSearchService;
+        this.classificationRules = classificationRules;
+        this.resourceResolver = ResourcePatternUtils.getResourcePatternResolver(resourceLoader);
+        this.locations = locations;
+        this.snapshotDir = Path.of(snapshotDir);
+        this.chunker = new MarkdownChunker(maxChunkChars);
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelBatches = Math.max(1, parallelBatches);
+        this.ingestOnStartup = ingestOnStartup;
+
+        this.embeddedChunks = Counter.builder("opsguide.knowledge.chunks.embedded")
+            .description("Knowledge chunks sent to the embedding model by ingestion")
+            .register(meterRegistry);
+        this.reusedChunks = Counter.builder("opsguide.knowledge.chunks.reused")
+            .description("Knowledge chunks whose vector was reused from the previous ingestion snapshot")
+            .register(meterRegistry);
+        Gauge.builder("opsguide.knowledge.chunks", this, s -> s.lastReport == null ? 0 : s.lastReport.getChunks())
+            .description("Chunks in the published knowledge index")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ingestOnStartup() {
+        // Off the startup thread: the mock chunks are served until a snapshot is restored or the
+        // first run publishes, and readiness reports the index as not loaded until then
+        Thread thread = new Thread(() -> {
+            try {
+                if (vectorSearchService.restoreSnapshot(embeddingsService.getModelId()) != null || !ingestOnStartup) {
+                    indexReady = true;
+                }
+                if (ingestOnStartup) {
+                    ingest();
+                }
+            } catch (RuntimeException e) {
+                startupError = e.getMessage();
+                log.error("Knowledge ingestion failed: {}", e.getMessage(), e);
+            }
+        }, "OpsGuide-KnowledgeIngestion");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public IngestionReport getLastReport() {
+        return lastReport;
+    }
+
+    public boolean isIndexReady() {
+        return indexReady;
+    }
+
+    /**
+     * Why startup left no index loaded, or null.
+     */
+    public String getStartupError() {
+        return indexReady ? null : startupError;
+    }
+
+    /**
+     * Runs one ingestion pass and publishes the result. On failure the published index and the
+     * previous snapshot are left untouched.
+     */
+    public synchronized IngestionReport ingest() {
+        long start = System.nanoTime();
+
+        List<DocumentChunk> chunks = new ArrayList<>();
+        Map<String, String> serviceBySource = new HashMap<>();
+        int documents = 0;
+        for (Resource resource : discover()) {
+            String source = sourceName(resource);
+            String markdown = read(resource);
+            serviceBySource.put(source, documentService(source, markdown));
+            chunks.addAll(chunker.chunk(source, documentType(source), markdown));
+            documents++;
+        }
+        // Grouped by partition, so each partition is one contiguous range of the snapshot
+        chunks.sort(Comparator.comparing((DocumentChunk chunk) -> serviceBySource.get(chunk.getSource()))
+            .thenComparing(DocumentChunk::getType));
+
+        String corpusDigest = corpusDigest(chunks, serviceBySource);
+        VectorSearchService.IndexSnapshot snapshot = vectorSearchService.getSnapshot();
+        if (snapshot != null && corpusDigest.equals(snapshot.getCorpusDigest())) {
+            return unchanged(start, documents, chunks, snapshot);
+        }
+
+        // One segment row per distinct content, in first-seen order
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        Map<String, String> textByHash = new HashMap<>();
+        for (DocumentChunk chunk : chunks) {
+            if (rows.putIfAbsent(chunk.getContentHash(), rows.size()) == null) {
+                textByHash.put(chunk.getContentHash(), chunk.getText());
+            }
+        }
+
+        // Vectors go straight to their rows of the new segment, reused or embedded
+        Path segmentPath = segmentPath();
+        int reused;
+        List<String> pending = new ArrayList<>();
+        try (FlatSegment.Writer writer = FlatSegment.writer(segmentPath, vectorSearchService.getVectorDimension(),
+                new ArrayList<>(rows.keySet()))) {
+            BitSet written = new BitSet(rows.size());
+            reused = reusePreviousVectors(rows, writer, written);
+            for (Map.Entry<String, Integer> row : rows.entrySet()) {
+                if (!written.get(row.getValue())) {
+                    pending.add(row.getKey());
+                }
+            }
+            embed(pending, textByHash, rows, writer);
+            writer.commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write knowledge snapshot " + segmentPath, e);
+        }
+        publish(chunks, serviceBySource, rows, segmentPath, corpusDigest);
+        indexReady = true;
+        VectorSearchService.IndexSnapshot written = writeSnapshot(corpusDigest);
+
+        embeddedChunks.increment(pending.size());
+        reusedChunks.increment(reused);
+        double millis = (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        IngestionReport report = new IngestionReport(++version, documents, chunks.size(), rows.size(),
+            pending.size(), reused, millis, segmentPath.toString(), written != null ? written.getVersion() : 0, false);
+        lastReport = report;
+        log.info("Ingested knowledge v{}: {} documents, {} chunks, {} embedded, {} reused, in {} ms",
+            report.getVersion(), documents, chunks.size(), pending.size(), reused, String.format("%.1f", millis));
+        return report;
+    }
+
+    private IngestionReport unchanged(long start, int documents, List<DocumentChunk> chunks,
+                                      VectorSearchService.IndexSnapshot snapshot) {
+        double millis = (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        int uniqueChunks = (int) chunks.stream().map(DocumentChunk::getContentHash).distinct().count();
+        IngestionReport report = new IngestionReport(++version, documents, chunks.size(), uniqueChunks, 0, 0,
+            millis, segmentPath().toString(), snapshot.getVersion(), true);
+        lastReport = report;
+        indexReady = true;
+        log.info("Knowledge v{} unchanged since index snapshot v{} ({}); keeping the published index ({} ms)",
+            report.getVersion(), snapshot.getVersion(), snapshot.getPath(), String.format("%.1f", millis));
+        return report;
+    }
+
+    // The index is already published, so a snapshot that fails to write only costs the next startup
+    private VectorSearchService.IndexSnapshot writeSnapshot(String corpusDigest) {
+        try {
+            return vectorSearchService.writeSnapshot(embeddingsService.getModelId(), corpusDigest);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write index snapshot: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Changes when any chunk's text, source, type, service or order does
+    private static String corpusDigest(List<DocumentChunk> chunks, Map<String, String> serviceBySource) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (DocumentChunk chunk : chunks) {
+                String key = chunk.getContentHash() + '\n' + chunk.getSource() + '\n' + chunk.getType() + '\n'
+                    + serviceBySource.get(chunk.getSource()) + '\n';
+                digest.update(key.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private List<Resource> discover() {
+        List<Resource> resources = new ArrayList<>();
+        for (String location : locations) {
+            try {
+                for (Resource resource : resourceResolver.getResources(location.trim())) {
+                    if (resource.isReadable()) {
+                        resources.add(resource);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list knowledge documents in " + location, e);
+            }
+        }
+        // Stable chunk ids and segment order regardless of classpath scan order
+        resources.sort(Comparator.comparing(KnowledgeIngestionService::sourceName));
+        return resources;
+    }
+
+    // Copies the vectors the previous snapshot already holds into their new rows, marking them in
+    // written, and returns how many were reused
+    private int reusePreviousVectors(Map<String, Integer> rows, FlatSegment.Writer writer, BitSet written)
+            throws IOException {
+        Path segmentPath = segmentPath();
+        if (!Files.exists(segmentPath)) {
+            return 0;
+        }
+        FlatSegment previous;
+        try {
+            previous = FlatSegment.open(segmentPath);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable knowledge snapshot {}: {}", segmentPath, e.getMessage());
+            return 0;
+        }
+        if (previous.dimension() != vectorSearchService.getVectorDimension()) {
+            return 0;
+        }
+        int reused = 0;
+        for (int ordinal = 0; ordinal < previous.size(); ordinal++) {
+            Integer row = rows.get(previous.id(ordinal));
+            if (row != null && !written.get(row)) {
+                writer.set(row, previous.vector(ordinal));
+                written.set(row);
+                reused++;
+            }
+        }
+        return reused;
+    }
+
+    private void embed(List<String> hashes, Map<String, String> textByHash, Map<String, Integer> rows,
+                       FlatSegment.Writer writer) {
+        Semaphore inFlight = new Semaphore(parallelBatches);
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < hashes.size(); from += batchSize) {
+            List<String> batch = hashes.subList(from, Math.min(from + batchSize, hashes.size()));
+            List<String> texts = new ArrayList<>(batch.size());
+            for (String hash : batch) {
+                texts.add(textByHash.get(hash));
+            }
+            inFlight.acquireUninterruptibly();
+            batches.add(embeddingsService.generateBatchEmbeddingsAsync(texts)
+                .whenComplete((embeddings, error) -> inFlight.release())
+                .thenAccept(embeddings -> {
+                    try {
+                        for (int i = 0; i < batch.size(); i++) {
+                            writer.set(rows.get(batch.get(i)), embeddings.get(i));
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+        }
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void publish(List<DocumentChunk> chunks, Map<String, String> serviceBySource,
+                         Map<String, Integer> rows, Path segmentPath, String corpusDigest) {
+        // Served from the snapshot itself: segment scans it, ivfpq and quantized scans rescore against it
+        if (vectorSearchService.servesSegments()) {
+            Map<String, VectorSearchService.KnowledgeChunk> byHash = new HashMap<>();
+            for (DocumentChunk chunk : chunks) {
+                byHash.putIfAbsent(chunk.getContentHash(), toKnowledgeChunk(chunk, serviceBySource));
+            }
+            try {
+                vectorSearchService.loadSegment(segmentPath, byHash);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load knowledge snapshot " + segmentPath, e);
+            }
+            return;
+        }
+        // In-memory indexes copy the vectors in anyway; read them back from the segment just written
+        FlatSegment segment;
+        try {
+            segment = FlatSegment.open(segmentPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read knowledge snapshot " + segmentPath, e);
+        }
+        List<VectorSearchService.KnowledgeChunk> knowledgeChunks = new ArrayList<>(chunks.size());
+        List<Embedding> embeddings = new ArrayList<>(chunks.size());
+        for (DocumentChunk chunk : chunks) {
+            knowledgeChunks.add(toKnowledgeChunk(chunk, serviceBySource));
+            embeddings.add(segment.vector(rows.get(chunk.getContentHash())));
+        }
+        vectorSearchService.replaceIndex(knowledgeChunks, embeddings, embeddingsService.getModelId(), corpusDigest);
+    }
+
+    private Path segmentPath() {
+        // Vectors from a different embedding model are never reused
+        String model = embeddingsService.getModelId().replaceAll("[^A-Za-z0-9._-]", "_");
+        return snapshotDir.resolve("knowledge-" + model + ".seg");
+    }
+
+    private static VectorSearchService.KnowledgeChunk toKnowledgeChunk(DocumentChunk chunk, Map<String, String> serviceBySource) {
+        return new VectorSearchService.KnowledgeChunk(chunk.getText(), chunk.getSource(), chunk.getType(),
+            serviceBySource.get(chunk.getSource()), 0.0, chunk.getPosition(), TokenEstimator.estimate(chunk.getText()));
+    }
+
+    // Service the classification rules find in the file name and title: "cancel-case-runbook" and
+    // "# Cancel Case Runbook" give Case; documents naming none are generic
+    private String documentService(String source, String markdown) {
+        String name = source.substring(source.lastIndexOf('/') + 1);
+        String title = markdown.lines()
+            .filter(line -> line.startsWith("# "))
+            .findFirst()
+            .orElse("");
+        String service = classificationRules.getMatcher().match(name + " " + title).getService();
+        return service != null ? service : VectorSearchService.GENERIC_SERVICE;
+    }
+
+    private static String read(Resource resource) {
+        try (InputStream in = resource.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read knowledge document " + resource.getDescription(), e);
+        }
+    }
+
+    // "knowledge/runbooks/cancel-case-runbook.md", matching the citations in responses
+    private static String sourceName(Resource resource) {
+        try {
+            String url = resource.getURL().toString();
+            int at = url.lastIndexOf("/knowledge/");
+            return at >= 0 ? url.substring(at + 1) : resource.getFilename();
+        } catch (IOException e) {
+            return resource.getDescription();
+        }
+    }
+
+    // Directory name in the singular: runbooks -> runbook, api-specs -> api_spec
+    private static String documentType(String source) {
+        String[] parts = source.split("/");
+        if (parts.length < 2) {
+            return "document";
+        }
+        String directory = parts[parts.length - 2].toLowerCase(Locale.ROOT).replace('-', '_');
+        return directory.endsWith("s") ? directory.substring(0, directory.length() - 1) : directory;
+    }
+
+    @Value
+    public static class IngestionReport {
+        long version;
+        int documents;
+        int chunks;
+        int uniqueChunks;
+        int embedded;
+        int reused;
+        double durationMillis;
+        String snapshot;
+        // Index snapshot written by this run, or kept when the knowledge is unchanged; 0 for none
+        long indexSnapshot;
+        boolean unchanged;
+    }
+}
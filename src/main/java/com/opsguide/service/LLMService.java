@@ -2,25 +2,18 @@ package com.opsguide.service;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
-import software.amazon.awssdk.core.SdkBytes;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 @Service
 public class LLMService {
     
-    @Value("${aws.bedrock.region:us-east-1}")
-    private String region;
-    
     @Value("${aws.bedrock.claude-model:anthropic.claude-3-sonnet-20240229-v1:0}")
     private String modelId;
     
@@ -30,64 +23,53 @@ public class LLMService {
     @Value("${aws.bedrock.temperature:0.1}")
     private double temperature;
     
-    private BedrockRuntimeClient bedrockClient;
+    // Canned responses unless a profile turns this off (the prod profile does)
+    @Value("${aws.bedrock.mock-mode:true}")
+    private boolean mockMode;
+    
+    private final BedrockClientService bedrockClient;
     private final ObjectMapper objectMapper;
-    private final Executor asyncExecutor;
     
-    public LLMService() {
+    public LLMService(BedrockClientService bedrockClient) {
+        this.bedrockClient = bedrockClient;
         this.objectMapper = new ObjectMapper();
-        this.asyncExecutor = Executors.newFixedThreadPool(10);
-    }
-    
-    private BedrockRuntimeClient getBedrockClient() {
-        if (bedrockClient == null) {
-            this.bedrockClient = BedrockRuntimeClient.builder()
-                .region(software.amazon.awssdk.regions.Region.of(region))
-                .build();
-        }
-        return bedrockClient;
     }
     
     public String generateResponse(String prompt) {
         try {
-            // For now, return mock response for development
-            return generateMockResponse(prompt);
-            
-            // TODO: Implement actual Bedrock Claude call
-            /*
-            Map<String, Object> requestBody = Map.of(
-                "anthropic_version", "bedrock-2023-05-31",
-                "max_tokens", maxTokens,
-                "messages", List.of(
-                    Map.of(
-                        "role", "user",
-                        "content", prompt
-                    )
-                ),
-                "temperature", temperature,
-                "top_p", 0.9
-            );
-            
-            InvokeModelRequest request = InvokeModelRequest.builder()
-                .modelId(modelId)
-                .contentType("application/json")
-                .accept("application/json")
-                .body(SdkBytes.fromUtf8String(objectMapper.writeValueAsString(requestBody)))
-                .build();
-                
-            InvokeModelResponse response = bedrockClient.invokeModel(request);
-            String responseBody = response.body().asUtf8String();
-            
-            JsonNode jsonNode = objectMapper.readTree(responseBody);
-            return jsonNode.get("content").get(0).get("text").asText();
-            */
+            return generateResponseAsync(prompt).join();
         } catch (Exception e) {
             throw new RuntimeException("Failed to generate LLM response: " + e.getMessage(), e);
         }
     }
     
     public CompletableFuture<String> generateResponseAsync(String prompt) {
-        return CompletableFuture.supplyAsync(() -> generateResponse(prompt), asyncExecutor);
+        if (mockMode) {
+            return CompletableFuture.completedFuture(generateMockResponse(prompt));
+        }
+        
+        Map<String, Object> requestBody = Map.of(
+            "anthropic_version", "bedrock-2023-05-31",
+            "max_tokens", maxTokens,
+            "messages", List.of(
+                Map.of(
+                    "role", "user",
+                    "content", prompt
+                )
+            ),
+            "temperature", temperature,
+            "top_p", 0.9
+        );
+        
+        return bedrockClient.invokeModel(modelId, requestBody)
+            .thenApply(response -> {
+                try {
+                    JsonNode jsonNode = objectMapper.readTree(response.body().asInputStream());
+                    return jsonNode.get("content").get(0).get("text").asText();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read LLM response from " + modelId, e);
+                }
+            });
     }
     
     public String generateResponseWithContext(String prompt, List<VectorSearchService.KnowledgeChunk> knowledgeChunks) {
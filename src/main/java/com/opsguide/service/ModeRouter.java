@@ -0,0 +1,153 @@
+package com.opsguide.service;
+
+import com.opsguide.model.ClassificationResult;
+import com.opsguide.model.ClassificationTier;
+import com.opsguide.model.OperationalResponse;
+import com.opsguide.model.TaskId;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides per request whether the cheap core classification is good enough or the query needs
+ * the RAG pipeline ({@code mode=auto}), and tracks how much latency staying on core saved.
+ * <p>
+ * Rule matches stay on core from {@code min-confidence}. Model-tier classifications have their own
+ * threshold, {@code model-min-confidence}, since their confidence is capped by
+ * {@code opsguide.classifier.max-confidence}.
+ * <p>
+ * Saved latency is estimated against an exponentially weighted moving average of observed RAG
+ * latencies, seeded from configuration until the first RAG request completes.
+ */
+@Service
+public class ModeRouter {
+    
+    public static final String CORE = "core";
+    public static final String RAG = "rag";
+    // Routed to RAG, which failed, and answered from core
+    public static final String RAG_FALLBACK = "rag_fallback";
+    
+    private static final double EWMA_WEIGHT = 0.1;
+    
+    // Entities an operator needs before a task can run without further context
+    private static final Map<TaskId, String[][]> REQUIRED_ENTITIES = Map.of(
+        TaskId.CANCEL_ORDER, new String[][]{{"order_id", "entity_id"}},
+        TaskId.UPDATE_ORDER_STATUS, new String[][]{{"order_id", "entity_id"}, {"target_status"}},
+        TaskId.CANCEL_CASE, new String[][]{{"case_id", "entity_id"}},
+        TaskId.UPDATE_CASE_STATUS, new String[][]{{"case_id", "entity_id"}, {"target_status"}},
+        TaskId.UPDATE_SAMPLES, new String[][]{{"sample_id", "case_id", "entity_id"}},
+        TaskId.UPDATE_STAIN, new String[][]{{"slide_id", "entity_id"}}
+    );
+    
+    private final double minConfidence;
+    private final double modelMinConfidence;
+    private final double minEntityCompleteness;
+    private final AtomicLong ragLatencyEwmaBits;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary savedLatency;
+    
+    public ModeRouter(
+            MeterRegistry meterRegistry,
+            @Value("${opsguide.routing.min-confidence:0.8}") double minConfidence,
+            @Value("${opsguide.routing.model-min-confidence:0.7}") double modelMinConfidence,
+            @Value("${opsguide.routing.min-entity-completeness:1.0}") double minEntityCompleteness,
+            @Value("${opsguide.routing.initial-rag-latency-ms:3000}") double initialRagLatencyMs) {
+        this.meterRegistry = meterRegistry;
+        this.minConfidence = minConfidence;
+        this.modelMinConfidence = modelMinConfidence;
+        this.minEntityCompleteness = minEntityCompleteness;
+        this.ragLatencyEwmaBits = new AtomicLong(Double.doubleToLongBits(initialRagLatencyMs));
+        this.savedLatency = DistributionSummary.builder("opsguide.routing.saved.latency")
+            .baseUnit("milliseconds")
+            .description("Estimated latency saved by answering mode=auto requests from core")
+            .register(meterRegistry);
+    }
+    
+    public RoutingDecision route(ClassificationResult classification) {
+        double completeness = entityCompleteness(classification);
+        String reason;
+        if (classification.getTaskId() == null) {
+            reason = "no_task";
+        } else if (classification.getConfidence() < confidenceThreshold(classification)) {
+            reason = "low_confidence";
+        } else if (completeness < minEntityCompleteness) {
+            reason = "incomplete_entities";
+        } else {
+            reason = "confident_classification";
+        }
+        String mode = "confident_classification".equals(reason) ? CORE : RAG;
+        meterRegistry.counter("opsguide.routing.decisions", "mode", mode, "reason", reason).increment();
+        return new RoutingDecision(mode, reason, classification.getConfidence(), completeness);
+    }
+    
+    /**
+     * Feeds an observed RAG latency into the moving average used for saved-latency estimates.
+     */
+    public void recordRagLatency(long latencyMs) {
+        ragLatencyEwmaBits.updateAndGet(bits -> Double.doubleToLongBits(
+            Double.longBitsToDouble(bits) * (1 - EWMA_WEIGHT) + latencyMs * EWMA_WEIGHT));
+    }
+    
+    public OperationalResponse.RoutingData routingData(RoutingDecision decision, String selectedMode, long latencyMs) {
+        Long savedMs = null;
+        // Only a request routed to core skipped RAG; a RAG fallback is answered by core after trying it
+        if (decision.isCore() && CORE.equals(selectedMode)) {
+            savedMs = Math.max(0L, Math.round(getEstimatedRagLatencyMs()) - latencyMs);
+            savedLatency.record(savedMs);
+        }
+        return new OperationalResponse.RoutingData(
+            "auto",
+            selectedMode,
+            decision.getReason(),
+            decision.getConfidence(),
+            decision.getEntityCompleteness(),
+            latencyMs,
+            savedMs
+        );
+    }
+    
+    private double confidenceThreshold(ClassificationResult classification) {
+        return classification.getTier() == ClassificationTier.MODEL ? modelMinConfidence : minConfidence;
+    }
+    
+    public double getEstimatedRagLatencyMs() {
+        return Double.longBitsToDouble(ragLatencyEwmaBits.get());
+    }
+    
+    private static double entityCompleteness(ClassificationResult classification) {
+        if (classification.getTaskId() == null) {
+            return 0.0;
+        }
+        String[][] required = REQUIRED_ENTITIES.get(classification.getTaskId());
+        if (required == null) {
+            return 1.0;
+        }
+        Map<String, Object> entities = classification.getExtractedEntities();
+        int present = 0;
+        for (String[] anyOf : required) {
+            for (String key : anyOf) {
+                if (entities.get(key) != null) {
+                    present++;
+                    break;
+                }
+            }
+        }
+        return present / (double) required.length;
+    }
+    
+    @lombok.Value
+    public static class RoutingDecision {
+        String mode;
+        String reason; // confident_classification, no_task, low_confidence, incomplete_entities
+        double confidence;
+        double entityCompleteness;
+        
+        public boolean isCore() {
+            return CORE.equals(mode);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.opsguide.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.opsguide.model.ClassificationResult;
+import com.opsguide.model.OperationalRequest;
+import com.opsguide.model.OperationalResponse;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifies newline-delimited JSON {@link OperationalRequest}s as they are read and writes one
+ * {@link OperationalResponse} line per request. Only the current line is held in memory, so
+ * request logs of any size can be replayed through the core pipeline.
+ */
+@Service
+@Slf4j
+public class NdjsonReplayService {
+    
+    private static final int READ_BUFFER_CHARS = 64 * 1024;
+    private static final int FLUSH_EVERY_LINES = 256;
+    
+    private final PatternClassifier patternClassifier;
+    private final CoreResponseBuilder coreResponseBuilder;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader requestReader;
+    private final ObjectWriter responseWriter;
+    
+    public NdjsonReplayService(PatternClassifier patternClassifier,
+                               CoreResponseBuilder coreResponseBuilder,
+                               ObjectMapper objectMapper) {
+        this.patternClassifier = patternClassifier;
+        this.coreResponseBuilder = coreResponseBuilder;
+        this.objectMapper = objectMapper;
+        this.requestReader = objectMapper.readerFor(OperationalRequest.class);
+        // Flushing is batched below rather than after every response
+        this.responseWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+    
+    /**
+     * Replays every line of {@code in} into {@code out}. Blank lines are skipped; a line that
+     * cannot be parsed or classified produces an error response instead of stopping the replay.
+     * Requests without a user ID get {@code defaultUserId}. Neither stream is closed.
+     */
+    public ReplaySummary replay(InputStream in, OutputStream out, String defaultUserId) throws IOException {
+        long start = System.nanoTime();
+        long lines = 0;
+        long errors = 0;
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_CHARS);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            lines++;
+            OperationalResponse response = processLine(line, lines, defaultUserId);
+            if ("error".equals(response.getStatus())) {
+                errors++;
+            }
+            responseWriter.writeValue(generator, response);
+            generator.writeRaw('\n');
+            if (lines % FLUSH_EVERY_LINES == 0) {
+                generator.flush();
+            }
+        }
+        generator.close();
+        
+        ReplaySummary summary = ReplaySummary.of(lines, errors, System.nanoTime() - start);
+        log.info("NDJSON replay finished: {} lines, {} errors in {} ms ({} lines/s)",
+            summary.getLines(), summary.getErrors(), summary.getElapsedMs(),
+            String.format("%.0f", summary.getLinesPerSecond()));
+        return summary;
+    }
+    
+    private OperationalResponse processLine(String line, long lineNumber, String defaultUserId) {
+        OperationalRequest request;
+        try {
+            request = requestReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return coreResponseBuilder.createErrorResponse(
+                "Malformed request on line " + lineNumber + ": " + e.getOriginalMessage(), null);
+        } catch (IOException e) {
+            return coreResponseBuilder.createErrorResponse(
+                "Unreadable request on line " + lineNumber + ": " + e.getMessage(), null);
+        }
+        if (request == null) {
+            return coreResponseBuilder.createErrorResponse("Request is required on line " + lineNumber, null);
+        }
+        
+        if (request.getUserId() == null) {
+            request.setUserId(defaultUserId);
+        }
+        if (request.getRequestId() == null) {
+            request.setRequestId(UUID.randomUUID().toString());
+        }
+        if (request.getQuery() == null || request.getQuery().trim().isEmpty()) {
+            return coreResponseBuilder.createErrorResponse("Query is required", request.getRequestId());
+        }
+        
+        try {
+            ClassificationResult classification = patternClassifier.classify(request);
+            return coreResponseBuilder.buildCoreResponse(request, classification);
+        } catch (Exception e) {
+            return coreResponseBuilder.createErrorResponse(e.getMessage(), request.getRequestId());
+        }
+    }
+    
+    @Value
+    public static class ReplaySummary {
+        long lines;
+        long errors;
+        long elapsedMs;
+        double linesPerSecond;
+        
+        static ReplaySummary of(long lines, long errors, long elapsedNanos) {
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            return new ReplaySummary(lines, errors, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                seconds > 0 ? lines / seconds : 0.0);
+        }
+    }
+}
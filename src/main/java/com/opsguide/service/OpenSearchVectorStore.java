@@ -0,0 +1,403 @@
+package com.opsguide.service;
+
+import com.opsguide.model.Embedding;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.opensearch.client.json.JsonData;
+import org.opensearch.client.opensearch._types.FieldValue;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.client.opensearch._types.query_dsl.Query;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.opensearch.core.BulkResponse;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+import org.opensearch.client.opensearch.core.search.Hit;
+import org.opensearch.client.opensearch.indices.GetAliasResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * k-NN vector store on OpenSearch, used by {@link VectorSearchService} when
+ * {@code opsguide.vector-search.index: opensearch}.
+ * <p>
+ * Searches ask for the chunk fields only, so the embedding never comes back over the wire. A
+ * search narrowed to a service is a k-NN query filtered on the {@code service} keyword (that
+ * service or {@value VectorSearchService#GENERIC_SERVICE}), which the Lucene engine applies while
+ * walking the graph. {@link #publish} bulk-loads a new physical index (several bulk
+ * requests in flight), refreshes it and moves the {@code opensearch.index-name} alias to it in
+ * one atomic alias update, so searches switch from the old corpus to the new one with nothing
+ * in between; the old indices are then deleted. A publish that fails before the alias moves
+ * deletes the index it created. {@link #loadPublished} picks up the index and document count
+ * already behind the alias, so a restarted service searches the published corpus. Only a missing
+ * alias means nothing is published: any other failure to read it is thrown, never taken for an
+ * empty store.
+ * <p>
+ * Each index records in its mapping {@code _meta} when it was published and the embedding model
+ * and corpus digest it was published with, so a restarted service can tell whether the corpus
+ * behind the alias is the one it would ingest.
+ */
+@Service
+@ConditionalOnProperty(name = "opsguide.vector-search.index", havingValue = "opensearch")
+@Slf4j
+public class OpenSearchVectorStore {
+
+    private static final String EMBEDDING_FIELD = "embedding";
+    private static final String PUBLISHED_AT = "published_at";
+    private static final String EMBEDDING_MODEL = "embedding_model";
+    private static final String CORPUS_DIGEST = "corpus_digest";
+    private static final List<String> SOURCE_FIELDS = List.of("content", "source", "type", "service", "position", "tokens");
+
+    private final OpenSearchAsyncClient client;
+    private final String alias;
+    private final int dimension;
+    private final int hnswM;
+    private final int hnswEfConstruction;
+    private final int efSearch;
+    private final int bulkSize;
+    private final int bulkConcurrency;
+    private final Timer searchTimer;
+    private final Timer bulkTimer;
+    private final AtomicLong documents = new AtomicLong();
+
+    // Index behind the alias, null before the first publish; written by publish, add and loadPublished only
+    private volatile PublishedIndex published;
+
+    public OpenSearchVectorStore(
+            OpenSearchAsyncClient client,
+            MeterRegistry meterRegistry,
+            @Value("${opensearch.index-name:knowledge-base}") String alias,
+            @Value("${opensearch.vector-dimension:1536}") int dimension,
+            @Value("${opsguide.vector-search.hnsw.m:16}") int hnswM,
+            @Value("${opsguide.vector-search.hnsw.ef-construction:200}") int hnswEfConstruction,
+            @Value("${opsguide.vector-search.hnsw.ef-search:64}") int efSearch,
+            @Value("${opensearch.bulk.batch-size:500}") int bulkSize,
+            @Value("${opensearch.bulk.concurrency:4}") int bulkConcurrency) {
+        this.client = client;
+        this.alias = alias;
+        this.dimension = dimension;
+        this.hnswM = hnswM;
+        this.hnswEfConstruction = hnswEfConstruction;
+        this.efSearch = efSearch;
+        this.bulkSize = Math.max(1, bulkSize);
+        this.bulkConcurrency = Math.max(1, bulkConcurrency);
+        this.searchTimer = Timer.builder("opsguide.opensearch.request")
+            .tag("operation", "search")
+            .register(meterRegistry);
+        this.bulkTimer = Timer.builder("opsguide.opensearch.request")
+            .tag("operation", "bulk")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Reads the index behind the alias, its document count and what it was published from, left by
+     * an earlier run. Nothing is published yet when the alias does not exist; any other failure is
+     * thrown.
+     */
+    public synchronized void loadPublished() {
+        List<String> indices = aliasedIndices();
+        if (indices.isEmpty()) {
+            return;
+        }
+        String index = indices.get(0);
+        try {
+            long count = client.count(c -> c.index(alias)).join().count();
+            Map<String, JsonData> meta = client.indices().getMapping(g -> g.index(index)).join()
+                .result().get(index).mappings().meta();
+            JsonData publishedAt = meta.get(PUBLISHED_AT);
+            published = new PublishedIndex(index, publishedAt != null ? publishedAt.to(Long.class) : 0L,
+                metaString(meta, EMBEDDING_MODEL), metaString(meta, CORPUS_DIGEST));
+            documents.set(count);
+            log.info("OpenSearch alias {} serves {} chunks from index {} (corpus {})", alias, count, index,
+                published.getCorpusDigest());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the index behind OpenSearch alias " + alias, e);
+        }
+    }
+
+    /**
+     * The index behind the alias, or null if nothing is published.
+     */
+    public PublishedIndex getPublished() {
+        return published;
+    }
+
+    /**
+     * k-NN search over the whole index, or over the chunks of {@code service} and the generic ones
+     * when it is not null.
+     */
+    public CompletableFuture<List<VectorSearchService.KnowledgeChunk>> search(Embedding query, int topK, String service) {
+        float[] vector = query.toArray();
+        Timer.Sample sample = Timer.start();
+        try {
+            return client.search(s -> s
+                    .index(alias)
+                    .size(topK)
+                    .source(source -> source.filter(filter -> filter.includes(SOURCE_FIELDS)))
+                    .query(q -> q.knn(knn -> {
+                        knn.field(EMBEDDING_FIELD).vector(vector).k(topK);
+                        if (service != null) {
+                            knn.filter(Query.of(f -> f.terms(t -> t
+                                .field("service")
+                                .terms(values -> values.value(List.of(
+                                    FieldValue.of(service), FieldValue.of(VectorSearchService.GENERIC_SERVICE)))))));
+                        }
+                        return knn;
+                    })),
+                    VectorSearchService.KnowledgeChunk.class)
+                .whenComplete((response, error) -> sample.stop(searchTimer))
+                .thenApply(response -> {
+                    List<VectorSearchService.KnowledgeChunk> chunks = new ArrayList<>(response.hits().hits().size());
+                    for (Hit<VectorSearchService.KnowledgeChunk> hit : response.hits().hits()) {
+                        VectorSearchService.KnowledgeChunk chunk = hit.source();
+                        // cosinesimil scores are (1 + cosine) / 2; report the cosine like the local indexes
+                        chunk.setScore(hit.score() == null ? 0.0 : 2 * hit.score() - 1);
+                        chunks.add(chunk);
+                    }
+                    return chunks;
+                });
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException("OpenSearch k-NN search failed", e));
+        }
+    }
+
+    /**
+     * {@link #publish(List, List, String, String) Publishes} {@code chunks} with no corpus digest,
+     * so no restart takes the index for a corpus it would ingest.
+     */
+    public void publish(List<VectorSearchService.KnowledgeChunk> chunks, List<Embedding> embeddings) {
+        publish(chunks, embeddings, null, null);
+    }
+
+    /**
+     * Loads {@code chunks} into a new index, tagged with {@code embeddingModel} and
+     * {@code corpusDigest} (either may be null), and points the alias at it. Blocks until the alias
+     * has moved; on failure the alias keeps serving the previous index and the new one is deleted.
+     */
+    public synchronized void publish(List<VectorSearchService.KnowledgeChunk> chunks, List<Embedding> embeddings,
+                                     String embeddingModel, String corpusDigest) {
+        // Unique per call, across nodes too, so the cleanup below can only ever delete this call's index
+        String index = alias + "-" + UUID.randomUUID();
+        long start = System.nanoTime();
+        long publishedAt = System.currentTimeMillis();
+        Map<String, JsonData> meta = new LinkedHashMap<>();
+        meta.put(PUBLISHED_AT, JsonData.of(publishedAt));
+        if (embeddingModel != null) {
+            meta.put(EMBEDDING_MODEL, JsonData.of(embeddingModel));
+        }
+        if (corpusDigest != null) {
+            meta.put(CORPUS_DIGEST, JsonData.of(corpusDigest));
+        }
+        List<String> previous;
+        try {
+            previous = loadAndSwap(index, meta, chunks, embeddings);
+        } catch (IOException e) {
+            deleteQuietly(index);
+            throw new UncheckedIOException("Failed to publish " + chunks.size() + " chunks to OpenSearch", e);
+        } catch (RuntimeException e) {
+            deleteQuietly(index);
+            throw e;
+        }
+        try {
+            if (!previous.isEmpty()) {
+                client.indices().delete(d -> d.index(previous)).join();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Published {} but failed to delete the previous indices {}: {}", index, previous, e.toString());
+        }
+        published = new PublishedIndex(index, publishedAt, embeddingModel, corpusDigest);
+        documents.set(chunks.size());
+        log.info("Published {} chunks to OpenSearch index {} (alias {}) in {} ms", chunks.size(), index, alias,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Adds one chunk to the index behind the alias, creating a first index if none is published.
+     * The index then no longer holds the corpus it was published from, so its digest is dropped
+     * first.
+     */
+    public synchronized void add(VectorSearchService.KnowledgeChunk chunk, Embedding embedding) {
+        if (published == null) {
+            publish(List.of(), List.of());
+        }
+        PublishedIndex current = published;
+        if (current.getCorpusDigest() != null) {
+            Map<String, JsonData> meta = new LinkedHashMap<>();
+            meta.put(PUBLISHED_AT, JsonData.of(current.getPublishedAt()));
+            if (current.getEmbeddingModel() != null) {
+                meta.put(EMBEDDING_MODEL, JsonData.of(current.getEmbeddingModel()));
+            }
+            try {
+                client.indices().putMapping(m -> m.index(current.getIndex()).meta(meta)).join();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to update OpenSearch index " + current.getIndex(), e);
+            }
+            published = new PublishedIndex(current.getIndex(), current.getPublishedAt(), current.getEmbeddingModel(), null);
+        }
+        bulkIndex(current.getIndex(), documents.get(), List.of(chunk), List.of(embedding));
+        documents.incrementAndGet();
+    }
+
+    public long getDocumentCount() {
+        return documents.get();
+    }
+
+    // Fills and refreshes the new index, then swaps the alias onto it; returns the indices it left
+    private List<String> loadAndSwap(String index, Map<String, JsonData> meta,
+                                     List<VectorSearchService.KnowledgeChunk> chunks, List<Embedding> embeddings)
+            throws IOException {
+        createIndex(index, meta);
+        bulkIndex(index, 0, chunks, embeddings);
+        client.indices().refresh(r -> r.index(index)).join();
+
+        List<String> previous = aliasedIndices();
+        client.indices().updateAliases(u -> {
+            u.actions(a -> a.add(add -> add.index(index).alias(alias)));
+            for (String old : previous) {
+                u.actions(a -> a.remove(remove -> remove.index(old).alias(alias)));
+            }
+            return u;
+        }).join();
+        return previous;
+    }
+
+    // Best effort: an index that was never created (the create call itself failed) is not an error here
+    private void deleteQuietly(String index) {
+        try {
+            client.indices().delete(d -> d.index(index).ignoreUnavailable(true)).join();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to delete unpublished OpenSearch index {}: {}", index, e.toString());
+        }
+    }
+
+    private void createIndex(String index, Map<String, JsonData> meta) throws IOException {
+        client.indices().create(c -> c
+            .index(index)
+            .settings(s -> s.knn(true).knnAlgoParamEfSearch(efSearch))
+            .mappings(m -> m
+                .meta(meta)
+                .properties("content", p -> p.text(t -> t.index(false)))
+                .properties("source", p -> p.keyword(k -> k))
+                .properties("type", p -> p.keyword(k -> k))
+                .properties("service", p -> p.keyword(k -> k))
+                .properties("position", p -> p.integer(i -> i.index(false)))
+                .properties("tokens", p -> p.integer(i -> i.index(false)))
+                .properties(EMBEDDING_FIELD, p -> p.knnVector(v -> v
+                    .dimension(dimension)
+                    .method(method -> method
+                        .name("hnsw")
+                        .engine("lucene")
+                        .spaceType("cosinesimil")
+                        .parameters("m", JsonData.of(hnswM))
+                        .parameters("ef_construction", JsonData.of(hnswEfConstruction))))))).join();
+    }
+
+    // Document ids are ordinals from firstId; up to bulkConcurrency bulk requests are in flight.
+    // Every request is waited for before a failure is thrown, so none is still writing afterwards.
+    private void bulkIndex(String index, long firstId, List<VectorSearchService.KnowledgeChunk> chunks, List<Embedding> embeddings) {
+        Semaphore inFlight = new Semaphore(bulkConcurrency);
+        List<CompletableFuture<BulkResponse>> requests = new ArrayList<>();
+        for (int from = 0; from < chunks.size(); from += bulkSize) {
+            List<BulkOperation> operations = new ArrayList<>(Math.min(bulkSize, chunks.size() - from));
+            for (int i = from; i < Math.min(from + bulkSize, chunks.size()); i++) {
+                VectorSearchService.KnowledgeChunk chunk = chunks.get(i);
+                ChunkDocument document = new ChunkDocument(chunk.getContent(), chunk.getSource(), chunk.getType(),
+                    chunk.getService() != null ? chunk.getService() : VectorSearchService.GENERIC_SERVICE,
+                    chunk.getPosition(), chunk.getTokens(), embeddings.get(i).toArray());
+                String id = String.valueOf(firstId + i);
+                operations.add(BulkOperation.of(op -> op.index(idx -> idx.index(index).id(id).document(document))));
+            }
+            inFlight.acquireUninterruptibly();
+            Timer.Sample sample = Timer.start();
+            try {
+                requests.add(client.bulk(b -> b.operations(operations))
+                    .whenComplete((response, error) -> {
+                        sample.stop(bulkTimer);
+                        inFlight.release();
+                    }));
+            } catch (IOException e) {
+                inFlight.release();
+                throw new UncheckedIOException("OpenSearch bulk request failed", e);
+            }
+        }
+        RuntimeException failure = null;
+        for (CompletableFuture<BulkResponse> request : requests) {
+            try {
+                BulkResponse response = request.join();
+                if (response.errors() && failure == null) {
+                    BulkResponseItem failed = response.items().stream()
+                        .filter(item -> item.error() != null)
+                        .findFirst()
+                        .orElseThrow();
+                    failure = new IllegalStateException("OpenSearch rejected bulk item " + failed.id() + ": "
+                        + failed.error().reason());
+                }
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Empty only when the alias does not exist yet (a 404); a timeout or 5xx must not read as "nothing
+    // published", or a publish would leave the alias on two corpora and the store would start empty
+    private List<String> aliasedIndices() {
+        try {
+            GetAliasResponse response = client.indices().getAlias(g -> g.name(alias)).join();
+            return new ArrayList<>(response.result().keySet());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof OpenSearchException && ((OpenSearchException) e.getCause()).status() == 404) {
+                return List.of();
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read OpenSearch alias " + alias, e);
+        }
+    }
+
+    private static String metaString(Map<String, JsonData> meta, String key) {
+        JsonData value = meta.get(key);
+        return value != null ? value.to(String.class) : null;
+    }
+
+    /**
+     * An index published behind the alias. The embedding model and corpus digest are null when it
+     * was published without them; the digest also once {@link #add} has changed the index.
+     */
+    @lombok.Value
+    public static class PublishedIndex {
+        String index;
+        long publishedAt;
+        String embeddingModel;
+        String corpusDigest;
+    }
+
+    @lombok.Value
+    private static class ChunkDocument {
+        String content;
+        String source;
+        String type;
+        String service;
+        Integer position;
+        int tokens;
+        float[] embedding;
+    }
+}
@@ -5,6 +5,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -15,41 +16,47 @@ public class RAGOrchestrator {
     
     private final EmbeddingsService embeddingsService;
     private final VectorSearchService vectorSearchService;
+    private final RetrievalCache retrievalCache;
     private final LLMService llmService;
     private final PatternClassifier patternClassifier;
+    private final ContextPacker contextPacker;
     
     @Async
     public CompletableFuture<OperationalResponse> processWithRAG(OperationalRequest request) {
         try {
-            // Step 1: Generate embedding for the query
-            CompletableFuture<List<Float>> embeddingFuture = 
-                embeddingsService.generateEmbeddingAsync(request.getQuery());
+            // Step 1: Pattern classification; its service narrows the search to that service's partitions
+            CompletableFuture<ClassificationResult> classificationFuture = 
+                CompletableFuture.supplyAsync(() -> patternClassifier.classify(request));
             
-            // Step 2: Vector search (depends on embedding)
+            // Steps 2-3: Embed the query and run hybrid search (the lexical part runs while the
+            // embedding is computed); a repeated query at the same index version skips both
             CompletableFuture<List<VectorSearchService.KnowledgeChunk>> searchFuture = 
-                embeddingFuture.thenCompose(embedding -> 
-                    vectorSearchService.searchAsync(embedding, 5));
+                classificationFuture.thenCompose(classification -> retrievalCache.get(
+                    request.getQuery(), classification.getService(), contextPacker.getCandidates(),
+                    () -> vectorSearchService.hybridSearchAsync(
+                        request.getQuery(), embeddingsService.generateEmbeddingAsync(request.getQuery()),
+                        contextPacker.getCandidates(), classification.getService())));
             
-            // Step 3: Pattern classification (parallel to search)
-            CompletableFuture<ClassificationResult> classificationFuture = 
-                CompletableFuture.supplyAsync(() -> patternClassifier.classify(request));
+            // Step 4: Pack the results into the context token budget, without near-duplicates
+            CompletableFuture<ContextPacker.PackedContext> contextFuture = searchFuture.thenApply(contextPacker::pack);
             
-            // Step 4: LLM reasoning (depends on search results)
+            // Step 5: LLM reasoning (depends on the packed context)
             CompletableFuture<String> llmResponseFuture = 
-                searchFuture.thenCompose(knowledgeChunks -> 
+                contextFuture.thenCompose(context -> 
                     llmService.generateResponseAsync(
-                        buildPromptWithContext(request.getQuery(), knowledgeChunks)));
+                        buildPromptWithContext(request.getQuery(), context)));
             
-            // Step 5: Wait for all components to complete
+            // Step 6: Wait for all components to complete
             CompletableFuture<Void> allFutures = CompletableFuture.allOf(
                 classificationFuture, llmResponseFuture);
             
-            // Step 6: Build final response
+            // Step 7: Build final response
             return allFutures.thenApply(v -> {
                 try {
                     ClassificationResult classification = classificationFuture.get();
                     String llmResponse = llmResponseFuture.get();
-                    List<VectorSearchService.KnowledgeChunk> knowledgeChunks = searchFuture.get();
+                    // Cite what the model was shown
+                    List<VectorSearchService.KnowledgeChunk> knowledgeChunks = contextFuture.get().getChunks();
                     
                     return buildRAGResponse(request, classification, llmResponse, knowledgeChunks);
                 } catch (Exception e) {
@@ -64,16 +71,11 @@ public class RAGOrchestrator {
         }
     }
     
-    private String buildPromptWithContext(String query, List<VectorSearchService.KnowledgeChunk> knowledgeChunks) {
+    private String buildPromptWithContext(String query, ContextPacker.PackedContext context) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("You are an operational intelligence assistant. Use the following knowledge base context to provide accurate, citation-backed responses.\n\n");
         prompt.append("Knowledge Base Context:\n");
-        
-        for (VectorSearchService.KnowledgeChunk chunk : knowledgeChunks) {
-            prompt.append("Source: ").append(chunk.getSource()).append("\n");
-            prompt.append("Content: ").append(chunk.getContent()).append("\n");
-            prompt.append("Relevance Score: ").append(chunk.getScore()).append("\n\n");
-        }
+        prompt.append(context.getText());
         
         prompt.append("User Query: ").append(query).append("\n\n");
         prompt.append("Provide a detailed response with specific API endpoints, procedures, and safety considerations. Include citations to the knowledge base sources.");
@@ -97,14 +99,15 @@ public class RAGOrchestrator {
             classification.getTaskId() != null ? classification.getTaskId().getValue() : null,
             classification.getConfidence(),
             classification.getService(),
-            classification.getEnvironment()
+            classification.getEnvironment(),
+            classification.getTier() != null ? classification.getTier().getValue() : null
         );
         
         // Enhanced next steps with RAG insights
         OperationalResponse.NextSteps nextSteps = buildRAGNextSteps(classification.getTaskId(), llmResponse, knowledgeChunks);
         
-        // Add RAG-specific metadata
-        Map<String, Object> extractedEntities = classification.getExtractedEntities();
+        // Add RAG-specific metadata (classification results are shared, so work on a copy)
+        Map<String, Object> extractedEntities = new HashMap<>(classification.getExtractedEntities());
         extractedEntities.put("rag_response", llmResponse);
         extractedEntities.put("knowledge_sources", knowledgeChunks.stream()
             .map(chunk -> Map.of(
@@ -119,7 +122,8 @@ public class RAGOrchestrator {
             input,
             classificationData,
             extractedEntities,
-            nextSteps
+            nextSteps,
+            null
         );
     }
     
@@ -135,7 +139,8 @@ public class RAGOrchestrator {
             classification.getTaskId() != null ? classification.getTaskId().getValue() : null,
             classification.getConfidence(),
             classification.getService(),
-            classification.getEnvironment()
+            classification.getEnvironment(),
+            classification.getTier() != null ? classification.getTier().getValue() : null
         );
         
         OperationalResponse.NextSteps nextSteps = getNextSteps(classification.getTaskId());
@@ -147,7 +152,8 @@ public class RAGOrchestrator {
             input,
             classificationData,
             classification.getExtractedEntities(),
-            nextSteps
+            nextSteps,
+            null
         );
     }
     
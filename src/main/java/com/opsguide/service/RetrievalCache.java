@@ -0,0 +1,91 @@
+package com.opsguide.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Caches retrieval results per query text, service and {@code topK}, so a repeated question skips
+ * both the query embedding and the search.
+ * <p>
+ * Every entry is tagged with the {@link VectorSearchService#getIndexVersion() index version} it
+ * was computed against, and a lookup only matches entries of the current version: reindexing
+ * invalidates the cache without any coordination, and the first lookup after a version change
+ * clears out the stale entries. Concurrent misses for the same query share one search.
+ */
+@Service
+public class RetrievalCache {
+
+    private final VectorSearchService vectorSearchService;
+    private final boolean enabled;
+    // Results are shared between callers and must not be modified
+    private final AsyncCache<Key, List<VectorSearchService.KnowledgeChunk>> cache;
+    private volatile long cachedVersion;
+
+    public RetrievalCache(
+            VectorSearchService vectorSearchService,
+            MeterRegistry meterRegistry,
+            @org.springframework.beans.factory.annotation.Value("${opsguide.retrieval-cache.enabled:true}") boolean enabled,
+            @org.springframework.beans.factory.annotation.Value("${opsguide.retrieval-cache.max-entries:10000}") long maxEntries,
+            @org.springframework.beans.factory.annotation.Value("${opsguide.retrieval-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.vectorSearchService = vectorSearchService;
+        this.enabled = enabled;
+        this.cachedVersion = vectorSearchService.getIndexVersion();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .buildAsync();
+
+        // cache.gets{result=hit|miss}, cache.size, cache.evictions, ... tagged cache=retrieval
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "retrieval");
+        Gauge.builder("opsguide.retrieval.cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+            .description("Share of retrievals served from the retrieval cache since startup")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached results for {@code query} narrowed to {@code service} (may be null) and
+     * {@code topK} at the current index version, or runs {@code search} and caches what it returns.
+     * Failed searches are not cached.
+     */
+    public CompletableFuture<List<VectorSearchService.KnowledgeChunk>> get(String query, String service, int topK,
+            Supplier<CompletableFuture<List<VectorSearchService.KnowledgeChunk>>> search) {
+        if (!enabled) {
+            return search.get();
+        }
+        long version = vectorSearchService.getIndexVersion();
+        if (version != cachedVersion) {
+            cachedVersion = version;
+            cache.synchronous().invalidateAll();
+        }
+        return cache.get(new Key(normalize(query), service, topK, version),
+            (key, executor) -> search.get().thenApply(List::copyOf));
+    }
+
+    public void clear() {
+        cache.synchronous().invalidateAll();
+    }
+
+    // Same question modulo surrounding and repeated whitespace
+    private static String normalize(String query) {
+        return String.join(" ", query.trim().split("\\s+"));
+    }
+
+    @Value
+    private static class Key {
+        String query;
+        String service;
+        int topK;
+        long indexVersion;
+    }
+}
@@ -0,0 +1,96 @@
+package com.opsguide.service;
+
+import com.opsguide.model.TaskId;
+import com.opsguide.service.classifier.TaskModel;
+import com.opsguide.service.classifier.TaskModelTrainer;
+import com.opsguide.service.matching.TokenizedQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * In-process statistical task classifier, consulted when no classification rule matches.
+ * <p>
+ * Loads the offline-trained model from {@code opsguide.classifier.model-location}; when no model
+ * file exists it trains one from the bundled labeled requests at startup instead. The bundled
+ * requests are generated from templates, so the model's confidence is not calibrated against real
+ * traffic: the classifier is off unless {@code opsguide.classifier.enabled} is set, confidence is
+ * capped at {@code max-confidence}, and {@code excluded-tasks} (the destructive ones by default)
+ * are never predicted at all. {@link ModeRouter} routes model-tier results by their own threshold.
+ */
+@Service
+@Slf4j
+public class TaskClassifierService {
+    
+    private final TaskModel model;
+    private final double minConfidence;
+    private final double maxConfidence;
+    private final Set<TaskId> excludedTasks;
+    
+    public TaskClassifierService(
+            ResourceLoader resourceLoader,
+            @Value("${opsguide.classifier.enabled:false}") boolean enabled,
+            @Value("${opsguide.classifier.model-location:file:models/task-model.bin}") String modelLocation,
+            @Value("${opsguide.classifier.training-data:classpath:classifier/training-data.jsonl}") String trainingData,
+            @Value("${opsguide.classifier.min-confidence:0.6}") double minConfidence,
+            @Value("${opsguide.classifier.max-confidence:0.75}") double maxConfidence,
+            @Value("${opsguide.classifier.excluded-tasks:CANCEL_ORDER,CANCEL_CASE}") Set<TaskId> excludedTasks)
+            throws IOException {
+        this.minConfidence = minConfidence;
+        this.maxConfidence = maxConfidence;
+        this.excludedTasks = excludedTasks.isEmpty() ? EnumSet.noneOf(TaskId.class) : EnumSet.copyOf(excludedTasks);
+        this.model = enabled ? loadModel(resourceLoader, modelLocation, trainingData) : null;
+    }
+    
+    /**
+     * The model's prediction with its confidence capped at {@code max-confidence}, or null when the
+     * classifier is disabled or predicts an excluded task.
+     */
+    public TaskModel.Prediction classify(TokenizedQuery query) {
+        if (model == null) {
+            return null;
+        }
+        TaskModel.Prediction prediction = model.predict(query);
+        if (prediction.getTask() != null && excludedTasks.contains(prediction.getTask())) {
+            return null;
+        }
+        return prediction.getConfidence() > maxConfidence
+            ? new TaskModel.Prediction(prediction.getTask(), maxConfidence)
+            : prediction;
+    }
+    
+    public double getMinConfidence() {
+        return minConfidence;
+    }
+    
+    private static TaskModel loadModel(ResourceLoader resourceLoader, String modelLocation, String trainingData)
+            throws IOException {
+        Resource modelResource = resourceLoader.getResource(modelLocation);
+        if (modelResource.exists()) {
+            try (InputStream in = new BufferedInputStream(modelResource.getInputStream())) {
+                TaskModel model = TaskModel.read(in);
+                log.info("Loaded task model from {}: {} classes, {} buckets, temperature {}",
+                    modelLocation, model.getClassCount(), model.getBucketCount(), model.getTemperature());
+                return model;
+            }
+        }
+        
+        try (InputStream in = resourceLoader.getResource(trainingData).getInputStream()) {
+            TaskModelTrainer.TrainingResult result = TaskModelTrainer.train(
+                TaskModelTrainer.readTrainingData(in), TaskModelTrainer.DEFAULT_BUCKET_BITS, 42L);
+            log.info("No task model at {}; trained from {} in {} ms: {} examples, holdout accuracy {}, ECE {}",
+                modelLocation, trainingData, result.getTrainingTimeMs(), result.getExamples(),
+                String.format("%.3f", result.getHoldoutAccuracy()),
+                String.format("%.3f", result.getExpectedCalibrationError()));
+            return result.getModel();
+        }
+    }
+}
@@ -1,86 +1,792 @@
 package com.opsguide.service;
 
+import com.opsguide.model.Embedding;
+import com.opsguide.service.lexical.Bm25Index;
+import com.opsguide.service.vector.FlatSegment;
+import com.opsguide.service.vector.FlatVectorIndex;
+import com.opsguide.service.vector.HnswVectorIndex;
+import com.opsguide.service.vector.IvfPqIndex;
+import com.opsguide.service.vector.QuantizedVectorIndex;
+import com.opsguide.service.vector.ReciprocalRankFusion;
+import com.opsguide.service.vector.SnapshotInput;
+import com.opsguide.service.vector.SnapshotOutput;
+import com.opsguide.service.vector.TopKHeap;
+import com.opsguide.service.vector.VectorHit;
+import com.opsguide.service.vector.VectorIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.opensearch.client.opensearch.OpenSearchClient;
-import org.opensearch.client.opensearch.core.SearchRequest;
-import org.opensearch.client.opensearch.core.SearchResponse;
-import org.opensearch.client.opensearch.core.search.Hit;
-// OpenSearch imports commented out - using mock implementation
-// import org.opensearch.client.opensearch.core.search.Query;
-// import org.opensearch.client.opensearch.core.search.KnnQuery;
-// import org.opensearch.client.opensearch.core.search.FieldValue;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+/**
+ * Vector and hybrid retrieval over the configured index.
+ * <p>
+ * The local index is partitioned by chunk service and document type, each partition with its own
+ * vector and BM25 index. A search narrowed to a service reads that service's partitions plus the
+ * {@value #GENERIC_SERVICE} ones, so its cost follows the service's share of the corpus; when it
+ * finds fewer than {@code min-results} chunks it is rerun over every partition. The fallback looks
+ * at the result count alone, not at how well the chunks match. Unnarrowed
+ * searches read every partition and merge the per-partition top hits.
+ * <p>
+ * The local index can be written to a versioned snapshot ({@link #writeSnapshot}) and restored
+ * from it on startup ({@link #restoreSnapshot}): chunks, partitions, BM25 postings and each
+ * vector index as built, HNSW links and trained IVF-PQ codes included, read back through memory
+ * mappings with no embedding, graph linking or training. Segment rows stay mapped from a hard link
+ * of the segment next to the snapshot.
+ */
+@Slf4j
 @Service
 public class VectorSearchService {
     
-    @Value("${opensearch.endpoint:http://localhost:9200}")
-    private String opensearchEndpoint;
+    // Service of chunks no service could be attributed to; searched together with every service
+    public static final String GENERIC_SERVICE = "Generic";
     
-    @Value("${opensearch.index-name:knowledge-base}")
-    private String indexName;
+    private static final int SNAPSHOT_MAGIC = 0x4F474958; // "OGIX"
+    private static final int SNAPSHOT_FORMAT = 3;
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("index-(\\d+)\\.snap");
     
-    @Value("${opensearch.vector-dimension:1536}")
-    private int vectorDimension;
+    private final int vectorDimension;
     
-    private final OpenSearchClient openSearchClient;
-    private final Executor asyncExecutor;
+    // Set only for index=opensearch, which keeps vectors and chunks in OpenSearch instead of locally
+    private final OpenSearchVectorStore openSearchStore;
     
-    public VectorSearchService() {
-        // For now, create a mock client
-        this.openSearchClient = null; // TODO: Initialize actual OpenSearch client
-        this.asyncExecutor = Executors.newFixedThreadPool(10);
+    // scan, hnsw, ivfpq, segment (a memory-mapped FlatSegment written by ingestion) or opensearch
+    private final String indexType;
+    // Builds an empty index of the configured kind; segments are loaded rather than built
+    private final Supplier<VectorIndex> indexFactory;
+    // Index served for one partition (a slice) of a loaded segment
+    private final Function<FlatSegment, VectorIndex> segmentIndexFactory;
+    // Whether ingestion hands over its segment (loadSegment) rather than the vectors (replaceIndex)
+    private final boolean servesSegments;
+    
+    // BM25 over chunk content, fused with vector hits by reciprocal rank in hybridSearch
+    private final boolean hybridEnabled;
+    private final int rrfK;
+    private final int hybridCandidates;
+    
+    // One partition per (service, type) when enabled, otherwise a single partition
+    private final boolean partitioned;
+    // A narrowed search returning fewer chunks than this is rerun over all partitions
+    private final int partitionMinResults;
+    
+    // Query-time settings, applied to restored indexes as configured rather than as snapshotted
+    private final int hnswEfSearch;
+    private final int ivfProbes;
+    // Settings that shape a built index; snapshots written under other settings are not restored
+    private final String indexSettings;
+    // Null when snapshots are disabled
+    private final Path snapshotDir;
+    private final int retainedSnapshots;
+    // Snapshot the local index was last written to or restored from; cleared when the index changes
+    private volatile IndexSnapshot snapshot;
+    
+    // Partitions and their chunk table, swapped as a unit so a search never pairs one index's
+    // ordinals with another's chunks
+    private volatile LocalIndex local;
+    // Bumped on every change to the searchable content; retrieval results are cached per version
+    private volatile long indexVersion;
+    
+    public VectorSearchService(
+            @Value("${opensearch.vector-dimension:1536}") int vectorDimension,
+            @Value("${opsguide.vector-search.index:scan}") String indexType,
+            @Value("${opsguide.vector-search.quantization:int8}") String quantization,
+            @Value("${opsguide.vector-search.oversample:4}") int oversample,
+            @Value("${opsguide.vector-search.hnsw.m:16}") int hnswM,
+            @Value("${opsguide.vector-search.hnsw.ef-construction:200}") int hnswEfConstruction,
+            @Value("${opsguide.vector-search.hnsw.ef-search:64}") int hnswEfSearch,
+            @Value("${opsguide.vector-search.ivfpq.nlist:1024}") int ivfLists,
+            @Value("${opsguide.vector-search.ivfpq.nprobe:16}") int ivfProbes,
+            @Value("${opsguide.vector-search.ivfpq.m:192}") int pqSlices,
+            @Value("${opsguide.vector-search.ivfpq.train-size:40000}") int ivfTrainSize,
+            @Value("${opsguide.vector-search.ivfpq.refine:10}") int ivfRefine,
+            @Value("${opsguide.vector-search.hybrid.enabled:true}") boolean hybridEnabled,
+            @Value("${opsguide.vector-search.hybrid.rrf-k:60}") int rrfK,
+            @Value("${opsguide.vector-search.hybrid.candidates:20}") int hybridCandidates,
+            @Value("${opsguide.vector-search.partitioning.enabled:true}") boolean partitioned,
+            @Value("${opsguide.vector-search.partitioning.min-results:3}") int partitionMinResults,
+            @Value("${opsguide.vector-search.snapshot.enabled:true}") boolean snapshotEnabled,
+            @Value("${opsguide.vector-search.snapshot.dir:cache/index}") String snapshotDir,
+            @Value("${opsguide.vector-search.snapshot.retain:2}") int retainedSnapshots,
+            ObjectProvider<OpenSearchVectorStore> openSearchStore) {
+        this.openSearchStore = openSearchStore.getIfAvailable();
+        this.vectorDimension = vectorDimension;
+        this.indexType = indexType.toLowerCase(Locale.ROOT);
+        if ("hnsw".equals(this.indexType)) {
+            this.indexFactory = () -> new HnswVectorIndex(vectorDimension, hnswM, hnswEfConstruction, hnswEfSearch);
+        } else if ("ivfpq".equals(this.indexType)) {
+            this.indexFactory = () -> new IvfPqIndex(vectorDimension, ivfLists, ivfProbes, pqSlices, ivfTrainSize);
+        } else if ("segment".equals(this.indexType) || "opensearch".equals(this.indexType)) {
+            // Serves chunks added with indexChunk until ingestion loads a segment
+            this.indexFactory = () -> new FlatVectorIndex(vectorDimension);
+        } else {
+            this.indexFactory = () -> createScanIndex(vectorDimension, quantization, oversample);
+        }
+        // IVF-PQ and quantized scans keep their codes in memory and read the mapped rows only to
+        // rescore candidates
+        if ("ivfpq".equals(this.indexType)) {
+            this.segmentIndexFactory = slice -> trainIfUntrained(
+                IvfPqIndex.over(slice, ivfLists, ivfProbes, pqSlices, ivfTrainSize, ivfRefine));
+            this.servesSegments = true;
+        } else if ("scan".equals(this.indexType) && !"none".equalsIgnoreCase(quantization)) {
+            QuantizedVectorIndex.Quantization codes =
+                QuantizedVectorIndex.Quantization.valueOf(quantization.toUpperCase(Locale.ROOT));
+            this.segmentIndexFactory = slice -> QuantizedVectorIndex.over(slice, codes, oversample);
+            this.servesSegments = true;
+        } else {
+            this.segmentIndexFactory = slice -> slice;
+            this.servesSegments = "segment".equals(this.indexType);
+        }
+        this.hybridEnabled = hybridEnabled;
+        this.rrfK = rrfK;
+        this.hybridCandidates = hybridCandidates;
+        this.partitioned = partitioned;
+        this.partitionMinResults = Math.max(1, partitionMinResults);
+        this.hnswEfSearch = hnswEfSearch;
+        this.ivfProbes = ivfProbes;
+        String built = "hnsw".equals(this.indexType) ? " m=" + hnswM + " ef-construction=" + hnswEfConstruction
+            : "ivfpq".equals(this.indexType) ? " nlist=" + ivfLists + " m=" + pqSlices + " train-size=" + ivfTrainSize
+                + " refine=" + ivfRefine
+            : "segment".equals(this.indexType) ? ""
+            : " quantization=" + quantization.toLowerCase(Locale.ROOT) + " oversample=" + oversample;
+        this.indexSettings = this.indexType + built + " dimension=" + vectorDimension
+            + " partitioned=" + partitioned + " hybrid=" + hybridEnabled;
+        this.snapshotDir = snapshotEnabled ? Path.of(snapshotDir) : null;
+        this.retainedSnapshots = Math.max(1, retainedSnapshots);
+        this.local = new LocalIndex(new Partition[0], new KnowledgeChunk[64], 0, null);
+    }
+    
+    public int getVectorDimension() {
+        return vectorDimension;
+    }
+    
+    public String getIndexType() {
+        return indexType;
+    }
+    
+    /**
+     * True when the configured index is served from a {@link FlatSegment} through
+     * {@link #loadSegment}: segment, ivfpq, and scan with int8 or binary quantization, which rescore
+     * against the mapped rows. The others copy their vectors in through {@link #replaceIndex}.
+     */
+    public boolean servesSegments() {
+        return servesSegments;
+    }
+    
+    private static VectorIndex createScanIndex(int dimension, String quantization, int oversample) {
+        if ("none".equalsIgnoreCase(quantization)) {
+            return new FlatVectorIndex(dimension);
+        }
+        return new QuantizedVectorIndex(dimension,
+            QuantizedVectorIndex.Quantization.valueOf(quantization.toUpperCase(Locale.ROOT)), oversample);
+    }
+    
+    /**
+     * Adds a chunk to its partition of the local index. Single writer: callers must not index
+     * concurrently. With hybrid search on, the partition's BM25 index is rebuilt over its chunks,
+     * which costs a pass over the partition: this is for adding a few chunks, bulk loads go through
+     * {@link #replaceIndex}.
+     */
+    public synchronized void indexChunk(KnowledgeChunk chunk, Embedding embedding) {
+        if (openSearchStore != null) {
+            openSearchStore.add(chunk, embedding);
+            indexVersion++;
+            snapshot = null;
+            return;
+        }
+        LocalIndex current = local;
+        Partition partition = current.find(partitionService(chunk), partitionType(chunk));
+        if (partition == null) {
+            partition = new Partition(partitionService(chunk), partitionType(chunk), indexFactory.get(), new int[16], null);
+            Partition[] grown = Arrays.copyOf(current.partitions, current.partitions.length + 1);
+            grown[grown.length - 1] = partition;
+            current.partitions = grown;
+        }
+        int id = current.size;
+        if (id == current.chunks.length) {
+            current.chunks = Arrays.copyOf(current.chunks, id + (id >> 1));
+        }
+        int ordinal = partition.index.size();
+        if (ordinal == partition.ordinals.length) {
+            partition.ordinals = Arrays.copyOf(partition.ordinals, ordinal * 2);
+        }
+        // Stored before the index publishes the ordinal, so a search that returns it finds the chunk
+        current.chunks[id] = chunk;
+        partition.ordinals[ordinal] = id;
+        partition.index.add(embedding);
+        if (hybridEnabled) {
+            // Bm25Index is immutable; published after the ordinal so a lexical hit always resolves
+            partition.lexical = buildLexicalIndex(current, partition);
+        }
+        current.size = id + 1;
+        indexVersion++;
+        snapshot = null;
+    }
+    
+    /**
+     * Builds new partitions of the configured kind over {@code chunks} and swaps them in; searches
+     * in flight finish on the previous index.
+     */
+    public void replaceIndex(List<KnowledgeChunk> chunks, List<Embedding> embeddings) {
+        replaceIndex(chunks, embeddings, null, null);
+    }
+    
+    /**
+     * {@link #replaceIndex(List, List)}, naming the embedding model and the digest of the corpus the
+     * chunks come from. OpenSearch stores them with the published index, where the next
+     * {@link #restoreSnapshot} finds them; the local index records them when its snapshot is written.
+     */
+    public synchronized void replaceIndex(List<KnowledgeChunk> chunks, List<Embedding> embeddings,
+                                          String embeddingModel, String corpusDigest) {
+        if (chunks.size() != embeddings.size()) {
+            throw new IllegalArgumentException(chunks.size() + " chunks for " + embeddings.size() + " embeddings");
+        }
+        if (openSearchStore != null) {
+            long start = System.nanoTime();
+            openSearchStore.publish(chunks, embeddings, embeddingModel, corpusDigest);
+            indexVersion++;
+            snapshot = corpusDigest != null
+                ? publishedSnapshot(openSearchStore.getPublished(), false, (System.nanoTime() - start) / 1e6)
+                : null;
+            return;
+        }
+        Map<String, List<Integer>> members = new LinkedHashMap<>();
+        for (int id = 0; id < chunks.size(); id++) {
+            members.computeIfAbsent(partitionKey(chunks.get(id)), key -> new ArrayList<>()).add(id);
+        }
+        List<Partition> partitions = new ArrayList<>(members.size());
+        for (List<Integer> ids : members.values()) {
+            VectorIndex index = indexFactory.get();
+            int[] ordinals = new int[ids.size()];
+            List<KnowledgeChunk> partitionChunks = new ArrayList<>(ids.size());
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = ids.get(i);
+                index.add(embeddings.get(ordinals[i]));
+                partitionChunks.add(chunks.get(ordinals[i]));
+            }
+            if (index instanceof IvfPqIndex) {
+                trainIfUntrained((IvfPqIndex) index);
+            }
+            KnowledgeChunk first = partitionChunks.get(0);
+            partitions.add(new Partition(partitionService(first), partitionType(first), index, ordinals,
+                buildLexicalIndex(partitionChunks)));
+        }
+        KnowledgeChunk[] stored = chunks.toArray(new KnowledgeChunk[Math.max(64, chunks.size())]);
+        local = new LocalIndex(partitions.toArray(new Partition[0]), stored, chunks.size(), null);
+        indexVersion++;
+        snapshot = null;
+        log.info("Indexed {} chunks in {} partitions, {} heap bytes per vector", chunks.size(), partitions.size(),
+            Math.round(getHeapBytesPerVector()));
+    }
+    
+    /**
+     * Replaces the local index with a memory-mapped {@link FlatSegment}, resolving each segment id
+     * through {@code chunksById}. Each partition is a {@link FlatSegment#slice slice} of the segment,
+     * which takes rows grouped by service and type; a segment that is not grouped is served as a
+     * single partition. Searches in flight finish on the previous index. The segment is read-only,
+     * so {@link #indexChunk} fails until a writable index is loaded again.
+     */
+    public synchronized void loadSegment(Path segmentPath, Map<String, KnowledgeChunk> chunksById) throws IOException {
+        FlatSegment segment = FlatSegment.open(segmentPath);
+        if (segment.dimension() != vectorDimension) {
+            throw new IllegalArgumentException("Segment " + segmentPath + " has dimension " + segment.dimension()
+                + ", expected " + vectorDimension);
+        }
+        KnowledgeChunk[] resolved = new KnowledgeChunk[segment.size()];
+        for (int i = 0; i < resolved.length; i++) {
+            String id = segment.id(i);
+            resolved[i] = chunksById.get(id);
+            if (resolved[i] == null) {
+                throw new IllegalArgumentException("Segment " + segmentPath + " references unknown chunk " + id);
+            }
+        }
+        
+        // Runs of rows with the same partition key; a key that comes back after another means ungrouped rows
+        List<int[]> runs = new ArrayList<>();
+        Map<String, Boolean> seen = new LinkedHashMap<>();
+        boolean grouped = true;
+        for (int i = 0; i < resolved.length; i++) {
+            if (i == 0 || !partitionKey(resolved[i]).equals(partitionKey(resolved[i - 1]))) {
+                grouped &= seen.put(partitionKey(resolved[i]), Boolean.TRUE) == null;
+                runs.add(new int[]{i, i + 1});
+            } else {
+                runs.get(runs.size() - 1)[1] = i + 1;
+            }
+        }
+        if (!grouped) {
+            log.warn("Segment {} is not grouped by partition; serving it as one partition", segmentPath);
+            runs = resolved.length == 0 ? List.of() : List.<int[]>of(new int[]{0, resolved.length});
+        }
+        
+        Partition[] partitions = new Partition[runs.size()];
+        for (int p = 0; p < partitions.length; p++) {
+            int from = runs.get(p)[0];
+            int to = runs.get(p)[1];
+            int[] ordinals = new int[to - from];
+            Arrays.setAll(ordinals, i -> from + i);
+            List<KnowledgeChunk> partitionChunks = Arrays.asList(resolved).subList(from, to);
+            partitions[p] = new Partition(
+                grouped ? partitionService(resolved[from]) : null,
+                grouped ? partitionType(resolved[from]) : null,
+                segmentIndexFactory.apply(segment.slice(from, to)), ordinals, buildLexicalIndex(partitionChunks));
+        }
+        local = new LocalIndex(partitions, resolved, resolved.length, segment);
+        indexVersion++;
+        snapshot = null;
+        log.info("Loaded vector segment {}: {} chunks in {} partitions, {} MB mapped, {} heap bytes per vector, {} kernel",
+            segmentPath, resolved.length, partitions.length, segment.mappedBytes() >> 20,
+            Math.round(getHeapBytesPerVector()), segment.kernelName());
+    }
+    
+    // IVF-PQ trains itself after train-size vectors; a smaller partition trains on what it has,
+    // and one too small to train is searched exactly
+    private static IvfPqIndex trainIfUntrained(IvfPqIndex index) {
+        if (!index.isTrained() && index.size() >= IvfPqIndex.MIN_TRAINING_SIZE) {
+            index.train();
+        }
+        return index;
     }
     
-    public List<KnowledgeChunk> search(List<Float> queryEmbedding, int topK) {
+    /**
+     * Writes the local index to the next snapshot version under the snapshot directory and returns
+     * it; null when snapshots are disabled, vectors live in OpenSearch or nothing is indexed.
+     * {@code embeddingModel} must match on restore; {@code corpusDigest} identifies what the index
+     * was built from and is handed back with the restored snapshot. The file is written beside its
+     * final name and moved into place, then all but the newest {@code retain} snapshots are deleted.
+     */
+    public synchronized IndexSnapshot writeSnapshot(String embeddingModel, String corpusDigest) throws IOException {
+        LocalIndex current = local;
+        if (snapshotDir == null || openSearchStore != null || current.size == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(snapshotDir);
+        List<Long> versions = snapshotVersions();
+        long version = versions.isEmpty() ? 1 : versions.get(0) + 1;
+        Path path = snapshotPath(version);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        long createdAt = System.currentTimeMillis();
+        int count = current.size;
+        Partition[] partitions = current.partitions;
         try {
-            // For now, return mock knowledge chunks
-            return generateMockKnowledgeChunks();
-            
-            // TODO: Implement actual OpenSearch vector search
-            /*
-            KnnQuery knnQuery = KnnQuery.of(k -> k
-                .field("embedding")
-                .vector(queryEmbedding.stream().mapToDouble(Float::doubleValue).toArray())
-                .k(topK)
-            );
-            
-            SearchRequest searchRequest = SearchRequest.of(s -> s
-                .index(indexName)
-                .query(Query.of(q -> q.knn(knnQuery)))
-                .size(topK)
-            );
-            
-            SearchResponse<Map> response = openSearchClient.search(searchRequest, Map.class);
-            
-            List<KnowledgeChunk> chunks = new ArrayList<>();
-            for (Hit<Map> hit : response.hits().hits()) {
-                Map<String, Object> source = hit.source();
-                KnowledgeChunk chunk = new KnowledgeChunk(
-                    (String) source.get("content"),
-                    (String) source.get("source"),
-                    (String) source.get("type"),
-                    hit.score()
-                );
-                chunks.add(chunk);
+            if (current.segment != null) {
+                linkOrCopy(current.segment.getPath(), segmentPath(version));
+            }
+            try (SnapshotOutput out = SnapshotOutput.create(temp)) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_FORMAT);
+                out.writeLong(createdAt);
+                out.writeString(indexSettings);
+                out.writeString(embeddingModel);
+                out.writeString(corpusDigest);
+                out.writeBoolean(current.segment != null);
+                KnowledgeChunk[] chunks = current.chunks;
+                out.writeInt(count);
+                for (int id = 0; id < count; id++) {
+                    out.writeString(chunks[id].getContent());
+                    out.writeString(chunks[id].getSource());
+                    out.writeString(chunks[id].getType());
+                    out.writeString(chunks[id].getService());
+                    out.writeInt(chunks[id].getPosition() != null ? chunks[id].getPosition() : -1);
+                    out.writeInt(chunks[id].getTokens());
+                }
+                out.writeInt(partitions.length);
+                for (Partition partition : partitions) {
+                    out.writeString(partition.service);
+                    out.writeString(partition.type);
+                    out.writeInts(partition.ordinals, 0, partition.index.size());
+                    partition.index.writeTo(out);
+                    out.writeBoolean(partition.lexical != null);
+                    if (partition.lexical != null) {
+                        partition.lexical.writeTo(out);
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(segmentPath(version));
+            throw e;
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        IndexSnapshot written = new IndexSnapshot(version, path.toString(), createdAt, count, partitions.length,
+            corpusDigest, false, millis);
+        snapshot = written;
+        log.info("Wrote index snapshot v{} to {}: {} chunks in {} partitions, {} MB, in {} ms", version, path, count,
+            partitions.length, Files.size(path) >> 20, String.format("%.1f", millis));
+        deleteOldSnapshots(versions, version);
+        return written;
+    }
+    
+    /**
+     * Replaces the local index with the newest snapshot written under the current index settings
+     * and {@code embeddingModel}, skipping any that fail to load. Returns it, or null if there is
+     * none (or snapshots are disabled), in which case the local index is left as it was. With
+     * OpenSearch, this loads the corpus already behind its alias instead, and throws if OpenSearch
+     * cannot say whether there is one.
+     */
+    public synchronized IndexSnapshot restoreSnapshot(String embeddingModel) {
+        if (openSearchStore != null) {
+            return loadPublished(embeddingModel);
+        }
+        if (snapshotDir == null) {
+            return null;
+        }
+        List<Long> versions;
+        try {
+            versions = snapshotVersions();
+        } catch (IOException e) {
+            log.warn("Cannot list index snapshots in {}: {}", snapshotDir, e.getMessage());
+            return null;
+        }
+        for (long version : versions) {
+            try {
+                IndexSnapshot restored = restoreSnapshot(version, embeddingModel);
+                if (restored != null) {
+                    return restored;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Skipping unreadable index snapshot {}: {}", snapshotPath(version), e.getMessage());
+            }
+        }
+        return null;
+    }
+    
+    private IndexSnapshot restoreSnapshot(long version, String embeddingModel) throws IOException {
+        long start = System.nanoTime();
+        Path path = snapshotPath(version);
+        try (SnapshotInput in = SnapshotInput.open(path)) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                throw new IOException("Not a version " + SNAPSHOT_FORMAT + " index snapshot");
+            }
+            long createdAt = in.readLong();
+            String settings = in.readString();
+            String model = in.readString();
+            if (!indexSettings.equals(settings) || !Objects.equals(embeddingModel, model)) {
+                log.info("Not restoring index snapshot {}: written for {} with {}, not {} with {}", path, settings, model,
+                    indexSettings, embeddingModel);
+                return null;
+            }
+            String corpusDigest = in.readString();
+            FlatSegment segment = in.readBoolean() ? FlatSegment.open(segmentPath(version)) : null;
+            int count = in.readInt();
+            KnowledgeChunk[] chunks = new KnowledgeChunk[Math.max(64, count)];
+            for (int id = 0; id < count; id++) {
+                chunks[id] = new KnowledgeChunk(in.readString(), in.readString(), in.readString(), in.readString(), 0.0);
+                int position = in.readInt();
+                chunks[id].setPosition(position >= 0 ? position : null);
+                chunks[id].setTokens(in.readInt());
+            }
+            Partition[] partitions = new Partition[in.readInt()];
+            for (int p = 0; p < partitions.length; p++) {
+                String service = in.readString();
+                String type = in.readString();
+                int[] ordinals = in.readInts();
+                VectorIndex index = in.readIndex(segment);
+                if (index instanceof HnswVectorIndex) {
+                    ((HnswVectorIndex) index).setEfSearch(hnswEfSearch);
+                } else if (index instanceof IvfPqIndex) {
+                    ((IvfPqIndex) index).setNprobe(ivfProbes);
+                }
+                Bm25Index lexical = in.readBoolean() ? Bm25Index.read(in) : null;
+                // indexChunk grows ordinals by doubling, which an empty array would never do
+                partitions[p] = new Partition(service, type, index, ordinals.length == 0 ? new int[16] : ordinals, lexical);
+            }
+            local = new LocalIndex(partitions, chunks, count, segment);
+            indexVersion++;
+            double millis = (System.nanoTime() - start) / 1e6;
+            IndexSnapshot restored = new IndexSnapshot(version, path.toString(), createdAt, count, partitions.length,
+                corpusDigest, true, millis);
+            snapshot = restored;
+            log.info("Restored index snapshot v{} from {}: {} chunks in {} partitions in {} ms", version, path, count,
+                partitions.length, String.format("%.1f", millis));
+            return restored;
+        }
+    }
+    
+    public IndexSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    // OpenSearch keeps the index itself: the published corpus stands in for a snapshot (version 0,
+    // path the index name), unless another embedding model built it
+    private IndexSnapshot loadPublished(String embeddingModel) {
+        long start = System.nanoTime();
+        openSearchStore.loadPublished();
+        OpenSearchVectorStore.PublishedIndex published = openSearchStore.getPublished();
+        if (published == null
+                || published.getEmbeddingModel() != null && !published.getEmbeddingModel().equals(embeddingModel)) {
+            return null;
+        }
+        indexVersion++;
+        snapshot = publishedSnapshot(published, true, (System.nanoTime() - start) / 1e6);
+        return snapshot;
+    }
+    
+    private IndexSnapshot publishedSnapshot(OpenSearchVectorStore.PublishedIndex published, boolean restored,
+                                            double millis) {
+        return new IndexSnapshot(0, published.getIndex(), published.getPublishedAt(),
+            (int) openSearchStore.getDocumentCount(), 1, published.getCorpusDigest(), restored, millis);
+    }
+    
+    // Newest first
+    private List<Long> snapshotVersions() throws IOException {
+        if (!Files.isDirectory(snapshotDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(snapshotDir)) {
+            return files
+                .map(file -> SNAPSHOT_FILE.matcher(file.getFileName().toString()))
+                .filter(Matcher::matches)
+                .map(matcher -> Long.parseLong(matcher.group(1)))
+                .sorted(Comparator.reverseOrder())
+                .toList();
+        }
+    }
+    
+    private void deleteOldSnapshots(List<Long> previous, long written) {
+        // previous is newest first and excludes the snapshot just written
+        for (int i = retainedSnapshots - 1; i < previous.size(); i++) {
+            long version = previous.get(i);
+            try {
+                Files.deleteIfExists(snapshotPath(version));
+                Files.deleteIfExists(segmentPath(version));
+            } catch (IOException e) {
+                log.warn("Failed to delete index snapshot v{} after writing v{}: {}", version, written, e.getMessage());
+            }
+        }
+    }
+    
+    private Path snapshotPath(long version) {
+        return snapshotDir.resolve(String.format("index-%08d.snap", version));
+    }
+    
+    private Path segmentPath(long version) {
+        return snapshotDir.resolve(String.format("index-%08d.seg", version));
+    }
+    
+    // A hard link copies nothing and keeps these rows after ingestion replaces its segment file
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target);
+        }
+    }
+    
+    private String partitionKey(KnowledgeChunk chunk) {
+        return partitionService(chunk) + "/" + partitionType(chunk);
+    }
+    
+    // Null service and type (partitioning off) put every chunk in one partition
+    private String partitionService(KnowledgeChunk chunk) {
+        return !partitioned ? null : chunk.getService() != null ? chunk.getService() : GENERIC_SERVICE;
+    }
+    
+    private String partitionType(KnowledgeChunk chunk) {
+        return partitioned ? chunk.getType() : null;
+    }
+    
+    private Bm25Index buildLexicalIndex(LocalIndex current, Partition partition) {
+        List<KnowledgeChunk> chunks = new ArrayList<>(partition.index.size());
+        for (int i = 0; i < partition.index.size(); i++) {
+            chunks.add(current.chunks[partition.ordinals[i]]);
+        }
+        return buildLexicalIndex(chunks);
+    }
+    
+    private Bm25Index buildLexicalIndex(List<KnowledgeChunk> chunks) {
+        if (!hybridEnabled) {
+            return null;
+        }
+        List<String> contents = new ArrayList<>(chunks.size());
+        for (KnowledgeChunk chunk : chunks) {
+            contents.add(chunk.getContent());
+        }
+        return Bm25Index.build(contents);
+    }
+    
+    public long getIndexVersion() {
+        return indexVersion;
+    }
+    
+    public int getIndexedChunkCount() {
+        return openSearchStore != null ? (int) openSearchStore.getDocumentCount() : local.size;
+    }
+    
+    public long getIndexMemoryBytes() {
+        long bytes = 0;
+        for (Partition partition : local.partitions) {
+            bytes += partition.index.memoryBytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * Heap bytes of vector data per indexed chunk; mapped segment rows are not counted.
+     */
+    public double getHeapBytesPerVector() {
+        LocalIndex current = local;
+        return current.size == 0 ? 0 : (double) getIndexMemoryBytes() / current.size;
+    }
+    
+    public List<KnowledgeChunk> search(Embedding queryEmbedding, int topK) {
+        try {
+            if (openSearchStore != null && openSearchStore.getDocumentCount() > 0) {
+                return openSearchStore.search(queryEmbedding, topK, null).join();
+            }
+            LocalIndex current = local;
+            if (current.size > 0) {
+                return toKnowledgeChunks(current, searchVectors(current.partitions, queryEmbedding, topK));
             }
             
-            return chunks;
-            */
+            // For now, return mock knowledge chunks until something is indexed
+            return generateMockKnowledgeChunks();
         } catch (Exception e) {
             throw new RuntimeException("Failed to perform vector search: " + e.getMessage(), e);
         }
     }
     
-    public CompletableFuture<List<KnowledgeChunk>> searchAsync(List<Float> queryEmbedding, int topK) {
-        return CompletableFuture.supplyAsync(() -> search(queryEmbedding, topK), asyncExecutor);
+    public CompletableFuture<List<KnowledgeChunk>> searchAsync(Embedding queryEmbedding, int topK) {
+        if (openSearchStore != null && openSearchStore.getDocumentCount() > 0) {
+            // Already non-blocking: the future completes on the HTTP client's I/O threads
+            return openSearchStore.search(queryEmbedding, topK, null);
+        }
+        // Local index scans are CPU-bound, so they run on the common pool rather than a dedicated one
+        return CompletableFuture.supplyAsync(() -> search(queryEmbedding, topK));
+    }
+    
+    /**
+     * Hybrid search: BM25 over the query text and vector search over its embedding, fused by
+     * reciprocal rank. Returned scores are fused scores in (0, 1]. Falls back to {@link #search}
+     * when hybrid search is disabled or nothing has been ingested.
+     */
+    public List<KnowledgeChunk> hybridSearch(String queryText, Embedding queryEmbedding, int topK) {
+        return hybridSearchAsync(queryText, CompletableFuture.completedFuture(queryEmbedding), topK).join();
+    }
+    
+    public CompletableFuture<List<KnowledgeChunk>> hybridSearchAsync(
+            String queryText, CompletableFuture<Embedding> queryEmbedding, int topK) {
+        return hybridSearchAsync(queryText, queryEmbedding, topK, null);
+    }
+    
+    /**
+     * Async hybrid search narrowed to {@code service} (null or {@value #GENERIC_SERVICE} for the
+     * whole corpus). The lexical lookup starts immediately, so it overlaps with computing the query
+     * embedding and the vector search rather than adding to them.
+     */
+    public CompletableFuture<List<KnowledgeChunk>> hybridSearchAsync(
+            String queryText, CompletableFuture<Embedding> queryEmbedding, int topK, String service) {
+        String narrowTo = GENERIC_SERVICE.equalsIgnoreCase(service) ? null : service;
+        if (openSearchStore != null) {
+            if (openSearchStore.getDocumentCount() == 0) {
+                return queryEmbedding.thenCompose(embedding -> searchAsync(embedding, topK));
+            }
+            if (narrowTo == null) {
+                return queryEmbedding.thenCompose(embedding -> openSearchStore.search(embedding, topK, null));
+            }
+            return queryEmbedding.thenCompose(embedding -> openSearchStore.search(embedding, topK, narrowTo)
+                .thenCompose(narrowed -> enough(narrowed, topK)
+                    ? CompletableFuture.completedFuture(narrowed)
+                    : openSearchStore.search(embedding, topK, null)));
+        }
+        LocalIndex current = local;
+        if (current.size == 0) {
+            return queryEmbedding.thenCompose(embedding -> searchAsync(embedding, topK));
+        }
+        Partition[] scope = narrowTo == null ? current.partitions : current.scope(narrowTo);
+        if (scope.length == 0 || scope.length == current.partitions.length) {
+            return searchPartitions(current, current.partitions, queryText, queryEmbedding, topK);
+        }
+        return searchPartitions(current, scope, queryText, queryEmbedding, topK)
+            .thenCompose(narrowed -> {
+                if (enough(narrowed, topK)) {
+                    return CompletableFuture.completedFuture(narrowed);
+                }
+                log.debug("{} chunks found for service {}; searching all partitions", narrowed.size(), narrowTo);
+                return searchPartitions(current, current.partitions, queryText, queryEmbedding, topK);
+            });
+    }
+    
+    // Size only: a narrowed search that returns min-results weak matches is kept. Fused RRF scores
+    // rank within one result list and have no absolute scale, so there is no score to cut on.
+    private boolean enough(List<KnowledgeChunk> results, int topK) {
+        return results.size() >= Math.min(topK, partitionMinResults);
+    }
+    
+    private CompletableFuture<List<KnowledgeChunk>> searchPartitions(LocalIndex current, Partition[] scope,
+            String queryText, CompletableFuture<Embedding> queryEmbedding, int topK) {
+        if (!hybridEnabled || queryText == null) {
+            return queryEmbedding.thenApplyAsync(embedding ->
+                toKnowledgeChunks(current, searchVectors(scope, embedding, topK)));
+        }
+        int candidates = Math.max(topK, hybridCandidates);
+        CompletableFuture<List<VectorHit>> lexicalHits =
+            CompletableFuture.supplyAsync(() -> searchLexical(scope, queryText, candidates));
+        CompletableFuture<List<VectorHit>> vectorHits =
+            queryEmbedding.thenApplyAsync(embedding -> searchVectors(scope, embedding, candidates));
+        return vectorHits.thenCombine(lexicalHits, (vector, lexical) ->
+            toKnowledgeChunks(current, ReciprocalRankFusion.fuse(rrfK, topK, vector, lexical)));
+    }
+    
+    // Best topK over the partitions, by chunk ordinal; cosine scores compare across partitions
+    private static List<VectorHit> searchVectors(Partition[] scope, Embedding queryEmbedding, int topK) {
+        if (topK < 1) {
+            return List.of();
+        }
+        TopKHeap heap = new TopKHeap(topK);
+        for (Partition partition : scope) {
+            for (VectorHit hit : partition.index.search(queryEmbedding, topK)) {
+                heap.offer(partition.ordinals[hit.getId()], hit.getScore());
+            }
+        }
+        return heap.toSortedHits();
+    }
+    
+    // Each partition scores BM25 with its own term statistics, like shards of a distributed index
+    private static List<VectorHit> searchLexical(Partition[] scope, String queryText, int topK) {
+        if (topK < 1) {
+            return List.of();
+        }
+        TopKHeap heap = new TopKHeap(topK);
+        for (Partition partition : scope) {
+            if (partition.lexical != null) {
+                for (VectorHit hit : partition.lexical.search(queryText, topK)) {
+                    heap.offer(partition.ordinals[hit.getId()], hit.getScore());
+                }
+            }
+        }
+        return heap.toSortedHits();
+    }
+    
+    private static List<KnowledgeChunk> toKnowledgeChunks(LocalIndex current, List<VectorHit> hits) {
+        KnowledgeChunk[] stored = current.chunks;
+        List<KnowledgeChunk> results = new ArrayList<>(hits.size());
+        for (VectorHit hit : hits) {
+            KnowledgeChunk chunk = stored[hit.getId()];
+            results.add(new KnowledgeChunk(chunk.getContent(), chunk.getSource(), chunk.getType(), chunk.getService(),
+                hit.getScore(), chunk.getPosition(), chunk.getTokens()));
+        }
+        return results;
     }
     
     private List<KnowledgeChunk> generateMockKnowledgeChunks() {
@@ -113,6 +819,81 @@ public class VectorSearchService {
         return chunks;
     }
     
+    // chunks[id] is the chunk stored under ordinal id; indexChunk replaces the arrays as they grow
+    private static final class LocalIndex {
+        private volatile Partition[] partitions;
+        private volatile KnowledgeChunk[] chunks;
+        private volatile int size;
+        // Mapped segment the partitions are slices of (by chunk ordinal), or null
+        private final FlatSegment segment;
+        
+        private LocalIndex(Partition[] partitions, KnowledgeChunk[] chunks, int size, FlatSegment segment) {
+            this.partitions = partitions;
+            this.chunks = chunks;
+            this.size = size;
+            this.segment = segment;
+        }
+        
+        private Partition find(String service, String type) {
+            for (Partition partition : partitions) {
+                if (Objects.equals(partition.service, service) && Objects.equals(partition.type, type)) {
+                    return partition;
+                }
+            }
+            return null;
+        }
+        
+        // The service's partitions and the generic ones; none if the service has no partition of its own
+        private Partition[] scope(String service) {
+            List<Partition> scope = new ArrayList<>();
+            boolean found = false;
+            for (Partition partition : partitions) {
+                if (service.equalsIgnoreCase(partition.service)) {
+                    scope.add(partition);
+                    found = true;
+                } else if (GENERIC_SERVICE.equals(partition.service)) {
+                    scope.add(partition);
+                }
+            }
+            return found ? scope.toArray(new Partition[0]) : new Partition[0];
+        }
+    }
+    
+    // Chunks of one service and document type (both null for an unpartitioned index); ordinals maps
+    // the index's ordinals to chunk ordinals
+    private static final class Partition {
+        private final String service;
+        private final String type;
+        private final VectorIndex index;
+        private volatile int[] ordinals;
+        // Covers the partition's chunks, rebuilt by indexChunk; null when hybrid search is off
+        private volatile Bm25Index lexical;
+        
+        private Partition(String service, String type, VectorIndex index, int[] ordinals, Bm25Index lexical) {
+            this.service = service;
+            this.type = type;
+            this.index = index;
+            this.ordinals = ordinals;
+            this.lexical = lexical;
+        }
+    }
+    
+    /**
+     * An index snapshot on disk: written by this node ({@code restored} false) or restored from
+     * disk, with the time that took.
+     */
+    @lombok.Value
+    public static class IndexSnapshot {
+        long version;
+        String path;
+        long createdAt;
+        int chunks;
+        int partitions;
+        String corpusDigest;
+        boolean restored;
+        double durationMillis;
+    }
+    
     @lombok.Data
     @lombok.NoArgsConstructor
     @lombok.AllArgsConstructor
@@ -120,6 +901,20 @@ public class VectorSearchService {
         private String content;
         private String source;
         private String type;
+        // Service the source document is about, as named by the classification rules
+        private String service;
         private double score;
+        // Place of the chunk in its source document, or null if not known
+        private Integer position;
+        // Estimated prompt tokens of content, counted at ingestion; 0 if not counted
+        private int tokens;
+        
+        public KnowledgeChunk(String content, String source, String type, double score) {
+            this(content, source, type, null, score);
+        }
+        
+        public KnowledgeChunk(String content, String source, String type, String service, double score) {
+            this(content, source, type, service, score, null, 0);
+        }
     }
 }
@@ -0,0 +1,80 @@
+package com.opsguide.service.classifier;
+
+import com.opsguide.service.matching.TokenizedQuery;
+
+/**
+ * Hashes a query into feature buckets: character 2- to 4-grams of every token padded with
+ * {@code ^...$} boundary markers, plus one feature per whole token. Digits are folded to
+ * {@code 0} so entity IDs do not become features of their own.
+ */
+final class NgramFeaturizer {
+
+    static final int MIN_N = 2;
+    static final int MAX_N = 4;
+
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+    private static final int WORD_SEED = 0x5BD1E995;
+
+    private final int mask;
+
+    NgramFeaturizer(int bucketBits) {
+        this.mask = (1 << bucketBits) - 1;
+    }
+
+    /**
+     * Upper bound on the number of features {@link #featurize} writes for this query.
+     */
+    static int maxFeatures(TokenizedQuery query) {
+        return (query.length() + 2 * query.getTokenCount()) * (MAX_N - MIN_N + 1) + query.getTokenCount();
+    }
+
+    /**
+     * Writes bucket indices into {@code features} (repeats allowed) and returns how many were written.
+     */
+    int featurize(TokenizedQuery query, int[] features) {
+        int count = 0;
+        for (int token = 0; token < query.getTokenCount(); token++) {
+            int start = query.getTokenStart(token);
+            int end = query.getTokenEnd(token);
+            int padded = end - start + 2;
+            for (int i = 0; i < padded; i++) {
+                int hash = FNV_OFFSET;
+                for (int n = 1; n <= MAX_N && i + n <= padded; n++) {
+                    hash = (hash ^ paddedChar(query, start, padded, i + n - 1)) * FNV_PRIME;
+                    if (n >= MIN_N) {
+                        features[count++] = bucket(hash);
+                    }
+                }
+            }
+            int word = WORD_SEED;
+            for (int i = start; i < end; i++) {
+                word = (word ^ fold(query.charAt(i))) * FNV_PRIME;
+            }
+            features[count++] = bucket(word);
+        }
+        return count;
+    }
+
+    private static char paddedChar(TokenizedQuery query, int start, int padded, int index) {
+        if (index == 0) {
+            return '^';
+        }
+        if (index == padded - 1) {
+            return '$';
+        }
+        return fold(query.charAt(start + index - 1));
+    }
+
+    private static char fold(char c) {
+        return c >= '0' && c <= '9' ? '0' : c;
+    }
+
+    private int bucket(int hash) {
+        // FNV's low bits are weak, so finish with a murmur-style mix before masking
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash & mask;
+    }
+}
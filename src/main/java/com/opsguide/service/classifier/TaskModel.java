@@ -0,0 +1,176 @@
+package com.opsguide.service.classifier;
+
+import com.opsguide.model.TaskId;
+import com.opsguide.service.matching.TokenizedQuery;
+import lombok.Value;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Multinomial logistic regression over hashed character n-grams, held in primitive arrays.
+ * <p>
+ * Weights are laid out feature-major ({@code weights[bucket * classes + class]}) so scoring a
+ * feature touches one contiguous run. Scores are divided by a temperature fitted on held-out data,
+ * which makes the returned probability usable as a confidence. Class 0 is "no task".
+ */
+public final class TaskModel {
+
+    private static final int MAGIC = 0x4F47544D; // "OGTM"
+    private static final int FORMAT_VERSION = 1;
+    private static final String NO_TASK = "NONE";
+
+    private final int bucketBits;
+    private final TaskId[] classes;
+    private final float[] weights;
+    private final float[] bias;
+    private final NgramFeaturizer featurizer;
+    private float temperature;
+
+    TaskModel(int bucketBits, TaskId[] classes, float[] weights, float[] bias, float temperature) {
+        if (classes.length < 2 || classes[0] != null) {
+            throw new IllegalArgumentException("Class 0 must be the no-task class, followed by at least one task");
+        }
+        if (weights.length != (classes.length << bucketBits) || bias.length != classes.length) {
+            throw new IllegalArgumentException("Weight dimensions do not match " + classes.length + " classes");
+        }
+        this.bucketBits = bucketBits;
+        this.classes = classes;
+        this.weights = weights;
+        this.bias = bias;
+        this.temperature = temperature;
+        this.featurizer = new NgramFeaturizer(bucketBits);
+    }
+
+    public Prediction predict(TokenizedQuery query) {
+        int[] features = new int[NgramFeaturizer.maxFeatures(query)];
+        int count = featurizer.featurize(query, features);
+        double[] scores = new double[classes.length];
+        logits(features, count, scores);
+
+        int best = 0;
+        for (int c = 1; c < scores.length; c++) {
+            if (scores[c] > scores[best]) {
+                best = c;
+            }
+        }
+        double sum = 0;
+        for (double score : scores) {
+            sum += Math.exp((score - scores[best]) / temperature);
+        }
+        return new Prediction(classes[best], 1.0 / sum);
+    }
+
+    public int getClassCount() {
+        return classes.length;
+    }
+
+    public int getBucketCount() {
+        return 1 << bucketBits;
+    }
+
+    public float getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * Raw (untempered) class scores for hashed features.
+     */
+    void logits(int[] features, int count, double[] scores) {
+        int classCount = classes.length;
+        for (int c = 0; c < classCount; c++) {
+            scores[c] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int base = features[i] * classCount;
+            for (int c = 0; c < classCount; c++) {
+                scores[c] += weights[base + c];
+            }
+        }
+        // Length normalization keeps long and short queries on the same scale
+        double scale = count == 0 ? 0 : 1.0 / Math.sqrt(count);
+        for (int c = 0; c < classCount; c++) {
+            scores[c] = bias[c] + scale * scores[c];
+        }
+    }
+
+    NgramFeaturizer featurizer() {
+        return featurizer;
+    }
+
+    float[] weights() {
+        return weights;
+    }
+
+    float[] bias() {
+        return bias;
+    }
+
+    TaskId[] classes() {
+        return classes;
+    }
+
+    void setTemperature(float temperature) {
+        this.temperature = temperature;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(bucketBits);
+        data.writeInt(NgramFeaturizer.MIN_N);
+        data.writeInt(NgramFeaturizer.MAX_N);
+        data.writeInt(classes.length);
+        for (TaskId task : classes) {
+            data.writeUTF(task == null ? NO_TASK : task.name());
+        }
+        data.writeFloat(temperature);
+        for (float value : bias) {
+            data.writeFloat(value);
+        }
+        for (float value : weights) {
+            data.writeFloat(value);
+        }
+        data.flush();
+    }
+
+    public static TaskModel read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a task model file");
+        }
+        int version = data.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported task model version " + version);
+        }
+        int bucketBits = data.readInt();
+        if (data.readInt() != NgramFeaturizer.MIN_N || data.readInt() != NgramFeaturizer.MAX_N) {
+            throw new IOException("Task model was trained with different n-gram sizes");
+        }
+        TaskId[] classes = new TaskId[data.readInt()];
+        for (int c = 0; c < classes.length; c++) {
+            String label = data.readUTF();
+            classes[c] = NO_TASK.equals(label) ? null : TaskId.valueOf(label);
+        }
+        float temperature = data.readFloat();
+        float[] bias = new float[classes.length];
+        for (int c = 0; c < bias.length; c++) {
+            bias[c] = data.readFloat();
+        }
+        float[] weights = new float[classes.length << bucketBits];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = data.readFloat();
+        }
+        return new TaskModel(bucketBits, classes, weights, bias, temperature);
+    }
+
+    @Value
+    public static class Prediction {
+        TaskId task; // null when "no task" is the most likely class
+        double confidence;
+    }
+}
@@ -0,0 +1,253 @@
+package com.opsguide.service.classifier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opsguide.model.TaskId;
+import com.opsguide.service.matching.QueryTokenizer;
+import com.opsguide.service.matching.TokenizedQuery;
+import lombok.Value;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Offline trainer for {@link TaskModel}: SGD on softmax cross-entropy, then temperature scaling
+ * on a held-out split so the predicted probabilities are calibrated. The calibration only holds for
+ * requests drawn like the holdout, so train on labeled real requests rather than templated ones.
+ * <p>
+ * Training data is JSONL with one {@code {"query": "...", "task": "CANCEL_CASE"}} per line;
+ * {@code "task": "NONE"} (or a missing task) labels queries that are not operational tasks.
+ */
+public final class TaskModelTrainer {
+
+    public static final int DEFAULT_BUCKET_BITS = 16;
+
+    private static final int EPOCHS = 12;
+    private static final double LEARNING_RATE = 0.5;
+    private static final double L2 = 1e-6;
+    private static final double HOLDOUT_FRACTION = 0.2;
+    private static final int CALIBRATION_BINS = 10;
+
+    private TaskModelTrainer() {
+    }
+
+    public static List<LabeledQuery> readTrainingData(InputStream in) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<LabeledQuery> examples = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node = mapper.readTree(line);
+            String query = node.path("query").asText(null);
+            if (query == null) {
+                throw new IOException("Missing query on training line " + lineNumber);
+            }
+            String label = node.path("task").asText("NONE");
+            examples.add(new LabeledQuery(query, "NONE".equals(label) ? null : TaskId.valueOf(label)));
+        }
+        return examples;
+    }
+
+    public static TrainingResult train(List<LabeledQuery> examples, int bucketBits, long seed) {
+        long start = System.nanoTime();
+        TaskId[] classes = classesOf(examples);
+        TaskModel model = new TaskModel(bucketBits, classes,
+            new float[classes.length << bucketBits], new float[classes.length], 1.0f);
+
+        List<Example> shuffled = featurize(examples, model);
+        Random random = new Random(seed);
+        Collections.shuffle(shuffled, random);
+        int holdoutSize = Math.max(1, (int) (shuffled.size() * HOLDOUT_FRACTION));
+        List<Example> holdout = shuffled.subList(0, holdoutSize);
+        List<Example> training = new ArrayList<>(shuffled.subList(holdoutSize, shuffled.size()));
+
+        double[] scores = new double[classes.length];
+        for (int epoch = 0; epoch < EPOCHS; epoch++) {
+            Collections.shuffle(training, random);
+            double rate = LEARNING_RATE / (1 + epoch * 0.5);
+            for (Example example : training) {
+                sgdStep(model, example, scores, rate);
+            }
+        }
+
+        model.setTemperature((float) fitTemperature(model, holdout));
+        Evaluation evaluation = evaluate(model, holdout);
+        return new TrainingResult(model, examples.size(), holdout.size(), evaluation.accuracy,
+            evaluation.calibrationError, model.getTemperature(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void sgdStep(TaskModel model, Example example, double[] scores, double rate) {
+        model.logits(example.features, example.features.length, scores);
+        softmax(scores, 1.0);
+
+        int classCount = scores.length;
+        float[] weights = model.weights();
+        float[] bias = model.bias();
+        double scale = example.features.length == 0 ? 0 : 1.0 / Math.sqrt(example.features.length);
+        for (int c = 0; c < classCount; c++) {
+            double gradient = scores[c] - (c == example.label ? 1 : 0);
+            bias[c] -= (float) (rate * gradient);
+            double step = rate * gradient * scale;
+            for (int feature : example.features) {
+                int index = feature * classCount + c;
+                weights[index] -= (float) (step + rate * L2 * weights[index]);
+            }
+        }
+    }
+
+    // Golden-section search for the temperature minimizing held-out negative log-likelihood
+    private static double fitTemperature(TaskModel model, List<Example> holdout) {
+        double[][] logits = new double[holdout.size()][model.getClassCount()];
+        for (int i = 0; i < holdout.size(); i++) {
+            Example example = holdout.get(i);
+            model.logits(example.features, example.features.length, logits[i]);
+        }
+        double low = Math.log(0.05);
+        double high = Math.log(20);
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int iteration = 0; iteration < 60; iteration++) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            if (negativeLogLikelihood(logits, holdout, Math.exp(a)) < negativeLogLikelihood(logits, holdout, Math.exp(b))) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return Math.exp((low + high) / 2);
+    }
+
+    private static double negativeLogLikelihood(double[][] logits, List<Example> holdout, double temperature) {
+        double total = 0;
+        double[] probabilities = new double[logits[0].length];
+        for (int i = 0; i < logits.length; i++) {
+            System.arraycopy(logits[i], 0, probabilities, 0, probabilities.length);
+            softmax(probabilities, temperature);
+            total -= Math.log(Math.max(probabilities[holdout.get(i).label], 1e-12));
+        }
+        return total / logits.length;
+    }
+
+    private static Evaluation evaluate(TaskModel model, List<Example> holdout) {
+        double[] probabilities = new double[model.getClassCount()];
+        double[] binConfidence = new double[CALIBRATION_BINS];
+        double[] binCorrect = new double[CALIBRATION_BINS];
+        int correct = 0;
+        for (Example example : holdout) {
+            model.logits(example.features, example.features.length, probabilities);
+            softmax(probabilities, model.getTemperature());
+            int best = 0;
+            for (int c = 1; c < probabilities.length; c++) {
+                if (probabilities[c] > probabilities[best]) {
+                    best = c;
+                }
+            }
+            int bin = Math.min(CALIBRATION_BINS - 1, (int) (probabilities[best] * CALIBRATION_BINS));
+            binConfidence[bin] += probabilities[best];
+            if (best == example.label) {
+                correct++;
+                binCorrect[bin]++;
+            }
+        }
+        // Expected calibration error: confidence/accuracy gap per bin, weighted by bin size
+        double calibrationError = 0;
+        for (int bin = 0; bin < CALIBRATION_BINS; bin++) {
+            calibrationError += Math.abs(binConfidence[bin] - binCorrect[bin]);
+        }
+        return new Evaluation(correct / (double) holdout.size(), calibrationError / holdout.size());
+    }
+
+    private static void softmax(double[] scores, double temperature) {
+        double max = Arrays.stream(scores).max().orElse(0);
+        double sum = 0;
+        for (int c = 0; c < scores.length; c++) {
+            scores[c] = Math.exp((scores[c] - max) / temperature);
+            sum += scores[c];
+        }
+        for (int c = 0; c < scores.length; c++) {
+            scores[c] /= sum;
+        }
+    }
+
+    private static TaskId[] classesOf(List<LabeledQuery> examples) {
+        Set<TaskId> tasks = EnumSet.noneOf(TaskId.class);
+        for (LabeledQuery example : examples) {
+            if (example.getTask() != null) {
+                tasks.add(example.getTask());
+            }
+        }
+        if (tasks.isEmpty()) {
+            throw new IllegalArgumentException("Training data has no labeled tasks");
+        }
+        TaskId[] classes = new TaskId[tasks.size() + 1];
+        int c = 1;
+        for (TaskId task : tasks) {
+            classes[c++] = task;
+        }
+        return classes;
+    }
+
+    private static List<Example> featurize(List<LabeledQuery> examples, TaskModel model) {
+        List<TaskId> classes = Arrays.asList(model.classes());
+        List<Example> featurized = new ArrayList<>(examples.size());
+        for (LabeledQuery example : examples) {
+            TokenizedQuery query = QueryTokenizer.tokenize(example.getQuery());
+            int[] features = new int[NgramFeaturizer.maxFeatures(query)];
+            int count = model.featurizer().featurize(query, features);
+            featurized.add(new Example(Arrays.copyOf(features, count), classes.indexOf(example.getTask())));
+        }
+        return featurized;
+    }
+
+    @Value
+    public static class LabeledQuery {
+        String query;
+        TaskId task; // null for "no task"
+    }
+
+    @Value
+    public static class TrainingResult {
+        TaskModel model;
+        int examples;
+        int holdoutExamples;
+        double holdoutAccuracy;
+        double expectedCalibrationError;
+        float temperature;
+        long trainingTimeMs;
+    }
+
+    private static final class Example {
+        final int[] features;
+        final int label;
+
+        Example(int[] features, int label) {
+            this.features = features;
+            this.label = label;
+        }
+    }
+
+    private static final class Evaluation {
+        final double accuracy;
+        final double calibrationError;
+
+        Evaluation(double accuracy, double calibrationError) {
+            this.accuracy = accuracy;
+            this.calibrationError = calibrationError;
+        }
+    }
+}
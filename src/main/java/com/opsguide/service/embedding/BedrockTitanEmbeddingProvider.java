@@ -0,0 +1,113 @@
+package com.opsguide.service.embedding;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.opsguide.model.Embedding;
+import com.opsguide.service.BedrockClientService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Amazon Titan text embeddings through Bedrock InvokeModel, one text per call; a batch is sent as
+ * concurrent calls on the shared {@link BedrockClientService}.
+ * <p>
+ * The response is stream-parsed straight into a {@code float[]}; no JSON tree or boxed numbers
+ * are built for the 1536 values.
+ */
+@Component
+@ConditionalOnProperty(name = "opsguide.embedding.provider", havingValue = "bedrock")
+public class BedrockTitanEmbeddingProvider implements EmbeddingProvider {
+
+    private final BedrockClientService bedrockClient;
+    private final String modelId;
+    private final int dimension;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public BedrockTitanEmbeddingProvider(
+            BedrockClientService bedrockClient,
+            @Value("${aws.bedrock.embeddings-model:amazon.titan-embed-text-v1}") String modelId,
+            @Value("${opensearch.vector-dimension:1536}") int dimension) {
+        this.bedrockClient = bedrockClient;
+        this.modelId = modelId;
+        this.dimension = dimension;
+    }
+
+    @Override
+    public String modelId() {
+        return modelId;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public Embedding embed(String text) {
+        return embedAsync(text).join();
+    }
+
+    @Override
+    public List<Embedding> embedBatch(List<String> texts) {
+        return embedBatchAsync(texts).join();
+    }
+
+    @Override
+    public CompletableFuture<Embedding> embedAsync(String text) {
+        return bedrockClient.invokeModel(modelId, Map.of("inputText", text))
+            .thenApply(response -> {
+                try (InputStream body = response.body().asInputStream()) {
+                    return parseEmbedding(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read embedding from " + modelId, e);
+                }
+            });
+    }
+
+    @Override
+    public CompletableFuture<List<Embedding>> embedBatchAsync(List<String> texts) {
+        List<CompletableFuture<Embedding>> calls = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            calls.add(embedAsync(text));
+        }
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture[0]))
+            .thenApply(done -> calls.stream().map(CompletableFuture::join).toList());
+    }
+
+    // Reads {"embedding": [...], "inputTextTokenCount": n}, skipping every other field
+    Embedding parseEmbedding(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object from " + modelId);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("embedding".equals(field) && value == JsonToken.START_ARRAY) {
+                    float[] values = new float[dimension];
+                    int count = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (count == values.length) {
+                            values = Arrays.copyOf(values, values.length * 2);
+                        }
+                        values[count++] = parser.getFloatValue();
+                    }
+                    return Embedding.wrap(count == values.length ? values : Arrays.copyOf(values, count));
+                }
+                parser.skipChildren();
+            }
+            throw new IOException("No embedding in response from " + modelId);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.opsguide.service.embedding;
+
+import com.opsguide.model.Embedding;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Merges concurrent embedding requests into batch calls.
+ * <p>
+ * The first request of a batch opens a window of {@code maxWait}; the batch is sent when the
+ * window closes or as soon as it holds {@code maxBatchSize} requests, whichever comes first.
+ * Identical texts in one batch are embedded once. The batch call's results are handed back to the
+ * waiting futures in order; if the call fails, every future in the batch fails with it.
+ * <p>
+ * The batch call is asynchronous: sending a batch only starts it, so neither the caller nor the
+ * window timer thread waits on the network.
+ */
+public final class EmbeddingBatcher implements AutoCloseable {
+
+    private final Function<List<String>, CompletableFuture<List<Embedding>>> batchCall;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final ScheduledExecutorService scheduler;
+
+    private final DistributionSummary batchSizes;
+    private final Timer waitTimer;
+    private final Timer callTimer;
+
+    private final Object lock = new Object();
+    private List<Pending> pending = new ArrayList<>();
+    private ScheduledFuture<?> flushTask;
+
+    public EmbeddingBatcher(Function<List<String>, CompletableFuture<List<Embedding>>> batchCall,
+                            int maxBatchSize, long maxWaitMillis, MeterRegistry meterRegistry) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be at least 1");
+        }
+        this.batchCall = batchCall;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OpsGuide-EmbeddingBatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batchSizes = DistributionSummary.builder("opsguide.embedding.batch.size")
+            .description("Requests per embedding batch call")
+            .register(meterRegistry);
+        this.waitTimer = Timer.builder("opsguide.embedding.batch.wait")
+            .description("Time a request waits for its batch to be sent")
+            .register(meterRegistry);
+        this.callTimer = Timer.builder("opsguide.embedding.batch.call")
+            .description("Duration of one embedding batch call")
+            .register(meterRegistry);
+        Gauge.builder("opsguide.embedding.batch.max.size", () -> this.maxBatchSize).register(meterRegistry);
+        Gauge.builder("opsguide.embedding.batch.max.wait.ms", () -> maxWaitMillis).register(meterRegistry);
+    }
+
+    public CompletableFuture<Embedding> submit(String text) {
+        Pending request = new Pending(text, System.nanoTime());
+        List<Pending> full = null;
+        synchronized (lock) {
+            pending.add(request);
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                flushTask = scheduler.schedule(this::flushWindow, maxWaitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return request.future;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public void close() {
+        List<Pending> remaining;
+        synchronized (lock) {
+            remaining = takePending();
+        }
+        if (!remaining.isEmpty()) {
+            send(remaining);
+        }
+        scheduler.shutdown();
+    }
+
+    private void flushWindow() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    // Caller holds the lock
+    private List<Pending> takePending() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        long sentAt = System.nanoTime();
+        Map<String, Integer> distinct = new LinkedHashMap<>();
+        for (Pending request : batch) {
+            waitTimer.record(sentAt - request.enqueuedNanos, TimeUnit.NANOSECONDS);
+            distinct.putIfAbsent(request.text, distinct.size());
+        }
+        batchSizes.record(distinct.size());
+
+        CompletableFuture<List<Embedding>> call;
+        try {
+            call = batchCall.apply(new ArrayList<>(distinct.keySet()));
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((embeddings, error) -> {
+            callTimer.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+            if (error == null && embeddings.size() != distinct.size()) {
+                error = new IllegalStateException("Batch call returned " + embeddings.size()
+                    + " embeddings for " + distinct.size() + " texts");
+            }
+            if (error != null) {
+                for (Pending request : batch) {
+                    request.future.completeExceptionally(error);
+                }
+                return;
+            }
+            for (Pending request : batch) {
+                request.future.complete(embeddings.get(distinct.get(request.text)));
+            }
+        });
+    }
+
+    private static final class Pending {
+        final String text;
+        final long enqueuedNanos;
+        final CompletableFuture<Embedding> future = new CompletableFuture<>();
+
+        Pending(String text, long enqueuedNanos) {
+            this.text = text;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.opsguide.service.embedding;
+
+import com.opsguide.model.Embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of text embeddings. Exactly one provider is active, chosen by
+ * {@code opsguide.embedding.provider}; {@link com.opsguide.service.EmbeddingsService} adds caching
+ * and batching on top.
+ */
+public interface EmbeddingProvider {
+
+    /**
+     * Identifies the vector space; embeddings from different model ids must never be compared,
+     * so this is part of every cache key.
+     */
+    String modelId();
+
+    int dimension();
+
+    Embedding embed(String text);
+
+    /**
+     * Embeds several texts, returned in input order. Providers with a native batch call or spare
+     * cores override this.
+     */
+    default List<Embedding> embedBatch(List<String> texts) {
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            embeddings.add(embed(text));
+        }
+        return embeddings;
+    }
+
+    /**
+     * Asynchronous {@link #embed}. The default runs it on the common pool, which suits CPU-bound
+     * providers; network providers override it so no thread waits on the response.
+     */
+    default CompletableFuture<Embedding> embedAsync(String text) {
+        return CompletableFuture.supplyAsync(() -> embed(text));
+    }
+
+    /**
+     * Whether {@link #embedBatchAsync} handles a batch more cheaply than one call per text, with
+     * one request or across cores. Only then is it worth holding requests back to merge them;
+     * Titan embeds one text per request.
+     */
+    default boolean supportsNativeBatch() {
+        return false;
+    }
+
+    default CompletableFuture<List<Embedding>> embedBatchAsync(List<String> texts) {
+        return CompletableFuture.supplyAsync(() -> embedBatch(texts));
+    }
+}
@@ -0,0 +1,172 @@
+package com.opsguide.service.embedding;
+
+import com.opsguide.model.Embedding;
+import com.opsguide.service.matching.QueryTokenizer;
+import com.opsguide.service.matching.TokenizedQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-process embeddings for dev, CI and offline ingestion: words, word bigrams and character
+ * 3-5-grams are feature-hashed with a random sign into a fixed number of dimensions, then
+ * L2-normalized.
+ * <p>
+ * Texts that share words or word fragments ("cancel case" / "cancelling the case") get a high
+ * cosine similarity, which is enough to exercise retrieval cost and ranking without a network
+ * call. Digits are folded to {@code 0} so IDs differing only in their numbers look alike, and
+ * common function words are down-weighted in place of corpus IDF. The provider is stateless, so
+ * batches are embedded in parallel across cores, including the batches {@link EmbeddingBatcher}
+ * merges from concurrent queries.
+ */
+@Component
+@ConditionalOnProperty(name = "opsguide.embedding.provider", havingValue = "local", matchIfMissing = true)
+public class HashedNgramEmbeddingProvider implements EmbeddingProvider {
+
+    public static final String MODEL_ID = "opsguide-hashed-ngram-v1";
+
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float BIGRAM_WEIGHT = 0.5f;
+    private static final float CHAR_NGRAM_WEIGHT = 0.25f;
+    private static final float STOP_WORD_WEIGHT = 0.1f;
+    private static final int MIN_NGRAM = 3;
+    private static final int MAX_NGRAM = 5;
+    private static final int PARALLEL_BATCH_THRESHOLD = 8;
+
+    private static final long WORD_SEED = 0x2545F4914F6CDD1DL;
+    private static final long NGRAM_SEED = 0x9E3779B97F4A7C15L;
+    private static final char BOUNDARY = '\u0001';
+
+    private static final long[] STOP_WORDS = stopWordHashes(
+        "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "for", "from", "how", "i", "in",
+        "is", "it", "me", "my", "of", "on", "or", "please", "the", "this", "to", "we", "what", "with", "you");
+
+    private final int dimension;
+
+    public HashedNgramEmbeddingProvider(@Value("${opensearch.vector-dimension:1536}") int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimension must be positive");
+        }
+        this.dimension = dimension;
+    }
+
+    @Override
+    public String modelId() {
+        return MODEL_ID;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public Embedding embed(String text) {
+        TokenizedQuery query = QueryTokenizer.tokenize(text);
+        float[] values = new float[dimension];
+        long previousWord = 0L;
+        for (int token = 0; token < query.getTokenCount(); token++) {
+            int start = query.getTokenStart(token);
+            int end = query.getTokenEnd(token);
+            long word = hash(query, start, end, WORD_SEED);
+            boolean stopWord = Arrays.binarySearch(STOP_WORDS, word) >= 0;
+            add(values, word, stopWord ? STOP_WORD_WEIGHT : WORD_WEIGHT);
+            if (stopWord) {
+                continue;
+            }
+            if (previousWord != 0L) {
+                add(values, mix(previousWord * 31 + word), BIGRAM_WEIGHT);
+            }
+            previousWord = word;
+            addCharNgrams(values, query, start, end);
+        }
+        return Embedding.wrap(normalize(values));
+    }
+
+    @Override
+    public List<Embedding> embedBatch(List<String> texts) {
+        if (texts.size() < PARALLEL_BATCH_THRESHOLD) {
+            return EmbeddingProvider.super.embedBatch(texts);
+        }
+        return texts.parallelStream().map(this::embed).toList();
+    }
+
+    @Override
+    public boolean supportsNativeBatch() {
+        return true;
+    }
+
+    // N-grams over the word padded with boundary markers, so prefixes and suffixes are distinct features
+    private void addCharNgrams(float[] values, TokenizedQuery query, int start, int end) {
+        int padded = end - start + 2;
+        for (int n = MIN_NGRAM; n <= MAX_NGRAM && n <= padded; n++) {
+            for (int from = 0; from + n <= padded; from++) {
+                long h = NGRAM_SEED ^ n;
+                for (int i = from; i < from + n; i++) {
+                    h = (h ^ paddedChar(query, start, end, i)) * 0x100000001B3L;
+                }
+                add(values, mix(h), CHAR_NGRAM_WEIGHT);
+            }
+        }
+    }
+
+    private static char paddedChar(TokenizedQuery query, int start, int end, int i) {
+        if (i == 0 || i == end - start + 1) {
+            return BOUNDARY;
+        }
+        return foldDigit(query.charAt(start + i - 1));
+    }
+
+    private void add(float[] values, long feature, float weight) {
+        int index = (int) ((feature >>> 1) % dimension);
+        values[index] += (feature & 1L) == 0L ? weight : -weight;
+    }
+
+    private static float[] normalize(float[] values) {
+        double sum = 0;
+        for (float value : values) {
+            sum += value * value;
+        }
+        if (sum > 0) {
+            float scale = (float) (1.0 / Math.sqrt(sum));
+            for (int i = 0; i < values.length; i++) {
+                values[i] *= scale;
+            }
+        }
+        return values;
+    }
+
+    private static long hash(TokenizedQuery query, int start, int end, long seed) {
+        long h = seed;
+        for (int i = start; i < end; i++) {
+            h = (h ^ foldDigit(query.charAt(i))) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static char foldDigit(char c) {
+        return c >= '0' && c <= '9' ? '0' : c;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h == 0L ? 1L : h;
+    }
+
+    private static long[] stopWordHashes(String... words) {
+        long[] hashes = new long[words.length];
+        for (int i = 0; i < words.length; i++) {
+            TokenizedQuery query = QueryTokenizer.tokenize(words[i]);
+            hashes[i] = hash(query, 0, query.length(), WORD_SEED);
+        }
+        Arrays.sort(hashes);
+        return hashes;
+    }
+}
@@ -0,0 +1,313 @@
+package com.opsguide.service.embedding;
+
+import com.opsguide.model.Embedding;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent embedding cache in a memory-mapped file, keyed by a 128-bit hash of model id and text.
+ * <p>
+ * The file is a set-associative table: a key hashes to one set of {@value #WAYS} slots, and a full
+ * set evicts its least recently used slot, so the file never grows past the configured capacity.
+ * Each slot holds the key, a last-access tick and the vector. Lookups hash the text in place and
+ * copy the vector straight out of the mapping; {@link #get(String, CharSequence, float[])}
+ * allocates nothing. Writes clear the key first and publish it last, so a crash mid-write leaves
+ * an empty slot rather than a wrong vector.
+ */
+public final class MappedEmbeddingCache implements Closeable {
+
+    private static final int MAGIC = 0x4F47454D; // "OGEM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final int HEADER_BYTES = 4096;
+    private static final int WAYS = 8;
+    // key hi, key lo, last access tick
+    private static final int SLOT_HEADER_BYTES = 24;
+    private static final int LOCK_STRIPES = 64;
+
+    private static final long SEED_HI = 0x9E3779B97F4A7C15L;
+    private static final long SEED_LO = 0xC2B2AE3D27D4EB4FL;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final FloatBuffer floats;
+    private final int dimension;
+    private final int sets;
+    private final int slotBytes;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger entries = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private MappedEmbeddingCache(Path path, FileChannel channel, MappedByteBuffer buffer, int dimension, int sets) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.floats = buffer.asFloatBuffer();
+        this.dimension = dimension;
+        this.sets = sets;
+        this.slotBytes = SLOT_HEADER_BYTES + dimension * Float.BYTES;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens (or creates) a cache file for vectors of {@code dimension} floats holding at most
+     * {@code maxEntries} vectors. A file written with a different layout is discarded and recreated.
+     */
+    public static MappedEmbeddingCache open(Path path, int dimension, int maxEntries) throws IOException {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimension must be positive");
+        }
+        int sets = Integer.highestOneBit(Math.max(1, maxEntries / WAYS));
+        long slotBytes = SLOT_HEADER_BYTES + (long) dimension * Float.BYTES;
+        long size = HEADER_BYTES + sets * WAYS * slotBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Embedding cache of " + maxEntries + " x " + dimension
+                + " floats exceeds the 2 GB mapping limit");
+        }
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = map(channel, size);
+            if (!headerMatches(buffer, dimension, sets)) {
+                // Different layout (or a new file): start empty
+                channel.truncate(0);
+                buffer = map(channel, size);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, dimension);
+                buffer.putInt(12, sets);
+                buffer.putInt(16, WAYS);
+                buffer.putInt(20, BYTE_ORDER_MARK);
+            }
+            MappedEmbeddingCache cache = new MappedEmbeddingCache(path, channel, buffer, dimension, sets);
+            cache.recover();
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Embedding get(String modelId, CharSequence text) {
+        float[] vector = new float[dimension];
+        return get(modelId, text, vector) ? Embedding.wrap(vector) : null;
+    }
+
+    /**
+     * Copies the cached vector into {@code into} and returns true on a hit.
+     */
+    public boolean get(String modelId, CharSequence text, float[] into) {
+        long hi = hash(modelId, text, SEED_HI);
+        long lo = nonZero(hi, hash(modelId, text, SEED_LO));
+        int set = (int) (lo & (sets - 1));
+        synchronized (lockFor(set)) {
+            for (int way = 0; way < WAYS; way++) {
+                int offset = slotOffset(set, way);
+                if (buffer.getLong(offset) == hi && buffer.getLong(offset + 8) == lo) {
+                    floats.get((offset + SLOT_HEADER_BYTES) / Float.BYTES, into, 0, dimension);
+                    buffer.putLong(offset + 16, clock.incrementAndGet());
+                    hits.increment();
+                    return true;
+                }
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Stores a vector, evicting the least recently used entry of its set when the set is full.
+     * Vectors of another dimension are not cached and return false.
+     */
+    public boolean put(String modelId, CharSequence text, Embedding embedding) {
+        if (embedding.dimension() != dimension) {
+            return false;
+        }
+        long hi = hash(modelId, text, SEED_HI);
+        long lo = nonZero(hi, hash(modelId, text, SEED_LO));
+        int set = (int) (lo & (sets - 1));
+        synchronized (lockFor(set)) {
+            int target = -1;
+            long oldestTick = Long.MAX_VALUE;
+            for (int way = 0; way < WAYS; way++) {
+                int offset = slotOffset(set, way);
+                long slotHi = buffer.getLong(offset);
+                long slotLo = buffer.getLong(offset + 8);
+                if (slotHi == hi && slotLo == lo) {
+                    target = offset;
+                    break;
+                }
+                long tick = isEmpty(slotHi, slotLo) ? Long.MIN_VALUE : buffer.getLong(offset + 16);
+                if (tick < oldestTick) {
+                    oldestTick = tick;
+                    target = offset;
+                }
+            }
+
+            long previousHi = buffer.getLong(target);
+            long previousLo = buffer.getLong(target + 8);
+            if (isEmpty(previousHi, previousLo)) {
+                entries.incrementAndGet();
+            } else if (previousHi != hi || previousLo != lo) {
+                evictions.increment();
+            }
+
+            buffer.putLong(target, 0L);
+            buffer.putLong(target + 8, 0L);
+            int floatIndex = (target + SLOT_HEADER_BYTES) / Float.BYTES;
+            for (int i = 0; i < dimension; i++) {
+                floats.put(floatIndex + i, embedding.get(i));
+            }
+            buffer.putLong(target + 16, clock.incrementAndGet());
+            buffer.putLong(target + 8, lo);
+            buffer.putLong(target, hi);
+        }
+        return true;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getCapacity() {
+        return sets * WAYS;
+    }
+
+    public int size() {
+        return entries.get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // Restores the entry count and access clock from the slots left by a previous run
+    private void recover() {
+        long maxTick = 0;
+        int live = 0;
+        for (int set = 0; set < sets; set++) {
+            for (int way = 0; way < WAYS; way++) {
+                int offset = slotOffset(set, way);
+                if (!isEmpty(buffer.getLong(offset), buffer.getLong(offset + 8))) {
+                    live++;
+                    maxTick = Math.max(maxTick, buffer.getLong(offset + 16));
+                }
+            }
+        }
+        entries.set(live);
+        clock.set(maxTick);
+    }
+
+    private int slotOffset(int set, int way) {
+        return HEADER_BYTES + (set * WAYS + way) * slotBytes;
+    }
+
+    private Object lockFor(int set) {
+        return locks[set & (LOCK_STRIPES - 1)];
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private static boolean headerMatches(MappedByteBuffer buffer, int dimension, int sets) {
+        return buffer.getInt(0) == MAGIC
+            && buffer.getInt(4) == FORMAT_VERSION
+            && buffer.getInt(8) == dimension
+            && buffer.getInt(12) == sets
+            && buffer.getInt(16) == WAYS
+            && buffer.getInt(20) == BYTE_ORDER_MARK;
+    }
+
+    private static boolean isEmpty(long hi, long lo) {
+        return hi == 0L && lo == 0L;
+    }
+
+    // An all-zero key marks an empty slot
+    private static long nonZero(long hi, long lo) {
+        return hi == 0L && lo == 0L ? 1L : lo;
+    }
+
+    /**
+     * 64-bit murmur-style hash of {@code modelId + '\0' + text}, four UTF-16 chars per block,
+     * computed without building the concatenated string.
+     */
+    static long hash(String modelId, CharSequence text, long seed) {
+        int modelLength = modelId.length();
+        int length = modelLength + 1 + text.length();
+        long h = seed ^ (length * 0xC6A4A7935BD1E995L);
+        long block = 0L;
+        int filled = 0;
+        for (int i = 0; i < length; i++) {
+            char c = i < modelLength ? modelId.charAt(i) : i == modelLength ? '\0' : text.charAt(i - modelLength - 1);
+            block |= (long) c << (filled * 16);
+            if (++filled == 4) {
+                h = mixBlock(h, block);
+                block = 0L;
+                filled = 0;
+            }
+        }
+        if (filled > 0) {
+            h = mixBlock(h, block);
+        }
+        return finalizeHash(h);
+    }
+
+    private static long mixBlock(long h, long block) {
+        block *= 0x87C37B91114253D5L;
+        block = Long.rotateLeft(block, 31);
+        block *= 0x4CF5AD432745937FL;
+        h ^= block;
+        return Long.rotateLeft(h, 27) * 5 + 0x52DCE729;
+    }
+
+    private static long finalizeHash(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
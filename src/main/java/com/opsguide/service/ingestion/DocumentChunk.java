@@ -0,0 +1,22 @@
+package com.opsguide.service.ingestion;
+
+import lombok.Value;
+
+/**
+ * One embeddable section of a knowledge document.
+ * <p>
+ * {@code text} is what gets embedded and returned as context: the heading path followed by the
+ * section body. {@code contentHash} is the SHA-256 of {@code text}, so an unchanged section keeps
+ * its hash (and its stored vector) wherever it moves in the document. {@code position} is the
+ * chunk's place in its document, counting from 0.
+ */
+@Value
+public class DocumentChunk {
+    String id;
+    String source;
+    int position;
+    String type;
+    String heading;
+    String text;
+    String contentHash;
+}
@@ -0,0 +1,183 @@
+package com.opsguide.service.ingestion;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Splits markdown into one chunk per heading section, prefixed with its heading path
+ * ("Cancel Case Runbook > Pre-checks") so a chunk still says what it is about on its own.
+ * <p>
+ * Lines inside code fences are never treated as headings, which matters for runbooks full of
+ * {@code # comment} shell lines. Sections longer than {@code maxChars} are split at blank lines
+ * outside fences, and a single oversized paragraph at line breaks.
+ */
+public final class MarkdownChunker {
+
+    private static final int MAX_HEADING_LEVEL = 6;
+
+    private final int maxChars;
+
+    public MarkdownChunker(int maxChars) {
+        if (maxChars < 100) {
+            throw new IllegalArgumentException("Chunks must allow at least 100 characters");
+        }
+        this.maxChars = maxChars;
+    }
+
+    public List<DocumentChunk> chunk(String source, String type, String markdown) {
+        List<DocumentChunk> chunks = new ArrayList<>();
+        String[] headings = new String[MAX_HEADING_LEVEL + 1];
+        String path = "";
+        StringBuilder body = new StringBuilder();
+        boolean inFence = false;
+
+        for (String line : markdown.split("\r?\n", -1)) {
+            String trimmed = line.stripLeading();
+            if (trimmed.startsWith("```") || trimmed.startsWith("~~~")) {
+                inFence = !inFence;
+            }
+            int level = inFence ? 0 : headingLevel(line);
+            if (level == 0) {
+                body.append(line).append('\n');
+                continue;
+            }
+            addSection(chunks, source, type, path, body);
+            body.setLength(0);
+            headings[level] = line.substring(level).trim();
+            for (int deeper = level + 1; deeper <= MAX_HEADING_LEVEL; deeper++) {
+                headings[deeper] = null;
+            }
+            path = headingPath(headings);
+        }
+        addSection(chunks, source, type, path, body);
+        return chunks;
+    }
+
+    private void addSection(List<DocumentChunk> chunks, String source, String type, String path, CharSequence body) {
+        String text = body.toString().strip();
+        if (text.isEmpty()) {
+            return;
+        }
+        int budget = Math.max(maxChars - path.length() - 2, maxChars / 2);
+        for (String piece : split(text, budget)) {
+            String chunkText = path.isEmpty() ? piece : path + "\n\n" + piece;
+            chunks.add(new DocumentChunk(source + "#" + chunks.size(), source, chunks.size(), type, path, chunkText,
+                sha256(chunkText)));
+        }
+    }
+
+    // Packs paragraphs (blank-line separated, fences kept whole) into pieces of at most budget chars
+    private static List<String> split(String text, int budget) {
+        List<String> pieces = new ArrayList<>();
+        if (text.length() <= budget) {
+            pieces.add(text);
+            return pieces;
+        }
+        StringBuilder piece = new StringBuilder();
+        for (String paragraph : paragraphs(text)) {
+            if (piece.length() > 0 && piece.length() + 2 + paragraph.length() > budget) {
+                pieces.add(piece.toString());
+                piece.setLength(0);
+            }
+            if (paragraph.length() > budget) {
+                splitLines(paragraph, budget, pieces);
+                continue;
+            }
+            if (piece.length() > 0) {
+                piece.append("\n\n");
+            }
+            piece.append(paragraph);
+        }
+        if (piece.length() > 0) {
+            pieces.add(piece.toString());
+        }
+        return pieces;
+    }
+
+    private static List<String> paragraphs(String text) {
+        List<String> paragraphs = new ArrayList<>();
+        StringBuilder paragraph = new StringBuilder();
+        boolean inFence = false;
+        for (String line : text.split("\n", -1)) {
+            String trimmed = line.strip();
+            if (trimmed.startsWith("```") || trimmed.startsWith("~~~")) {
+                inFence = !inFence;
+            }
+            if (trimmed.isEmpty() && !inFence) {
+                if (paragraph.length() > 0) {
+                    paragraphs.add(paragraph.toString());
+                    paragraph.setLength(0);
+                }
+                continue;
+            }
+            if (paragraph.length() > 0) {
+                paragraph.append('\n');
+            }
+            paragraph.append(line);
+        }
+        if (paragraph.length() > 0) {
+            paragraphs.add(paragraph.toString());
+        }
+        return paragraphs;
+    }
+
+    private static void splitLines(String paragraph, int budget, List<String> pieces) {
+        StringBuilder piece = new StringBuilder();
+        for (String line : paragraph.split("\n")) {
+            if (piece.length() > 0 && piece.length() + 1 + line.length() > budget) {
+                pieces.add(piece.toString());
+                piece.setLength(0);
+            }
+            // A single line longer than the budget is cut where it stands
+            while (line.length() > budget) {
+                pieces.add(line.substring(0, budget));
+                line = line.substring(budget);
+            }
+            if (piece.length() > 0) {
+                piece.append('\n');
+            }
+            piece.append(line);
+        }
+        if (piece.length() > 0) {
+            pieces.add(piece.toString());
+        }
+    }
+
+    // ATX headings only: 1-6 '#' followed by a space
+    private static int headingLevel(String line) {
+        int level = 0;
+        while (level < line.length() && line.charAt(level) == '#') {
+            level++;
+        }
+        if (level == 0 || level > MAX_HEADING_LEVEL || level == line.length() || line.charAt(level) != ' ') {
+            return 0;
+        }
+        return level;
+    }
+
+    private static String headingPath(String[] headings) {
+        StringBuilder path = new StringBuilder();
+        for (String heading : headings) {
+            if (heading != null && !heading.isEmpty()) {
+                if (path.length() > 0) {
+                    path.append(" > ");
+                }
+                path.append(heading);
+            }
+        }
+        return path.toString();
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.opsguide.service.lexical;
+
+import com.opsguide.service.vector.SnapshotInput;
+import com.opsguide.service.vector.SnapshotOutput;
+import com.opsguide.service.vector.TopKHeap;
+import com.opsguide.service.vector.VectorHit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable in-memory inverted index scored with Okapi BM25.
+ * <p>
+ * All postings live in one byte array: for each term, its documents in ascending order as
+ * varint-encoded gaps, each followed by the varint term frequency. A posting usually takes two
+ * bytes. Length normalization is precomputed per document, so scoring a posting is a
+ * multiply-add and a division. Scores are accumulated densely per document and the best are
+ * kept in a {@link TopKHeap}; ids are document ordinals, as given to {@link #build}.
+ */
+public final class Bm25Index {
+
+    public static final float DEFAULT_K1 = 1.2f;
+    public static final float DEFAULT_B = 0.75f;
+
+    private final Map<String, Integer> termIds;
+    private final byte[] postings;
+    private final int[] postingsStart;
+    private final int[] documentFrequency;
+    // k1 * (1 - b + b * length / averageLength)
+    private final float[] lengthNorm;
+    private final float k1;
+
+    private Bm25Index(Map<String, Integer> termIds, byte[] postings, int[] postingsStart,
+                      int[] documentFrequency, float[] lengthNorm, float k1) {
+        this.termIds = termIds;
+        this.postings = postings;
+        this.postingsStart = postingsStart;
+        this.documentFrequency = documentFrequency;
+        this.lengthNorm = lengthNorm;
+        this.k1 = k1;
+    }
+
+    public static Bm25Index build(List<String> documents) {
+        return build(documents, DEFAULT_K1, DEFAULT_B);
+    }
+
+    public static Bm25Index build(List<String> documents, float k1, float b) {
+        int count = documents.size();
+        Map<String, Integer> termIds = new HashMap<>();
+        List<PostingsWriter> writers = new ArrayList<>();
+        int[] lengths = new int[count];
+        long totalLength = 0;
+
+        Map<String, int[]> frequencies = new HashMap<>();
+        for (int doc = 0; doc < count; doc++) {
+            frequencies.clear();
+            int[] length = new int[1];
+            LexicalAnalyzer.analyze(documents.get(doc), term -> {
+                frequencies.computeIfAbsent(term, t -> new int[1])[0]++;
+                length[0]++;
+            });
+            lengths[doc] = length[0];
+            totalLength += length[0];
+            for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+                Integer termId = termIds.get(entry.getKey());
+                if (termId == null) {
+                    termId = writers.size();
+                    termIds.put(entry.getKey(), termId);
+                    writers.add(new PostingsWriter());
+                }
+                writers.get(termId).add(doc, entry.getValue()[0]);
+            }
+        }
+
+        int terms = writers.size();
+        int[] postingsStart = new int[terms + 1];
+        int[] documentFrequency = new int[terms];
+        int bytes = 0;
+        for (int term = 0; term < terms; term++) {
+            postingsStart[term] = bytes;
+            documentFrequency[term] = writers.get(term).documents;
+            bytes += writers.get(term).size;
+        }
+        postingsStart[terms] = bytes;
+        byte[] postings = new byte[bytes];
+        for (int term = 0; term < terms; term++) {
+            PostingsWriter writer = writers.get(term);
+            System.arraycopy(writer.bytes, 0, postings, postingsStart[term], writer.size);
+        }
+
+        float averageLength = count == 0 ? 1f : Math.max(1f, (float) totalLength / count);
+        float[] lengthNorm = new float[count];
+        for (int doc = 0; doc < count; doc++) {
+            lengthNorm[doc] = k1 * (1 - b + b * lengths[doc] / averageLength);
+        }
+        return new Bm25Index(termIds, postings, postingsStart, documentFrequency, lengthNorm, k1);
+    }
+
+    /**
+     * Writes the index as built; {@link #read} restores it without analyzing a document.
+     */
+    public void writeTo(SnapshotOutput out) throws IOException {
+        String[] terms = new String[documentFrequency.length];
+        termIds.forEach((term, id) -> terms[id] = term);
+        out.writeInt(terms.length);
+        for (String term : terms) {
+            out.writeString(term);
+        }
+        out.writeBytes(postings, 0, postings.length);
+        out.writeInts(postingsStart, 0, postingsStart.length);
+        out.writeInts(documentFrequency, 0, documentFrequency.length);
+        out.writeFloats(lengthNorm, 0, lengthNorm.length);
+        out.writeFloat(k1);
+    }
+
+    public static Bm25Index read(SnapshotInput in) throws IOException {
+        int terms = in.readInt();
+        Map<String, Integer> termIds = new HashMap<>(terms * 2);
+        for (int id = 0; id < terms; id++) {
+            termIds.put(in.readString(), id);
+        }
+        return new Bm25Index(termIds, in.readBytes(), in.readInts(), in.readInts(), in.readFloats(), in.readFloat());
+    }
+
+    public int size() {
+        return lengthNorm.length;
+    }
+
+    public int termCount() {
+        return documentFrequency.length;
+    }
+
+    /**
+     * Returns up to {@code topK} documents sharing at least one term with the query, best first.
+     */
+    public List<VectorHit> search(String query, int topK) {
+        int count = lengthNorm.length;
+        if (count == 0 || topK < 1) {
+            return List.of();
+        }
+        Set<String> queryTerms = new LinkedHashSet<>();
+        LexicalAnalyzer.analyze(query, queryTerms::add);
+
+        float[] scores = null;
+        for (String term : queryTerms) {
+            Integer termId = termIds.get(term);
+            if (termId == null) {
+                continue;
+            }
+            if (scores == null) {
+                scores = new float[count];
+            }
+            int df = documentFrequency[termId];
+            float idf = (float) Math.log(1 + (count - df + 0.5) / (df + 0.5));
+            int at = postingsStart[termId];
+            int end = postingsStart[termId + 1];
+            int doc = 0;
+            while (at < end) {
+                int value = 0;
+                int shift = 0;
+                byte next;
+                do {
+                    next = postings[at++];
+                    value |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while (next < 0);
+                doc += value;
+
+                int tf = 0;
+                shift = 0;
+                do {
+                    next = postings[at++];
+                    tf |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while (next < 0);
+                scores[doc] += idf * tf * (k1 + 1) / (tf + lengthNorm[doc]);
+            }
+        }
+        if (scores == null) {
+            return List.of();
+        }
+
+        TopKHeap heap = new TopKHeap(Math.min(topK, count));
+        for (int doc = 0; doc < count; doc++) {
+            if (scores[doc] > 0) {
+                heap.offer(doc, scores[doc]);
+            }
+        }
+        return heap.toSortedHits();
+    }
+
+    /**
+     * Heap bytes held by postings and per-document norms (the term dictionary excluded).
+     */
+    public long memoryBytes() {
+        return postings.length + (long) (postingsStart.length + documentFrequency.length + lengthNorm.length) * 4;
+    }
+
+    private static final class PostingsWriter {
+        private byte[] bytes = new byte[8];
+        private int size;
+        private int documents;
+        private int lastDocument;
+
+        void add(int document, int frequency) {
+            writeVarint(document - lastDocument);
+            writeVarint(frequency);
+            lastDocument = document;
+            documents++;
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
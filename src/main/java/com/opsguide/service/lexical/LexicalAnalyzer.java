@@ -0,0 +1,96 @@
+package com.opsguide.service.lexical;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits text into BM25 terms, tuned for operational text.
+ * <p>
+ * Every maximal run of word characters ({@code on_hold}, {@code v2}) is a term, lowercased, and
+ * so is each underscore-separated part of it ({@code on}, {@code hold}). A whitespace-delimited
+ * word containing {@code / - . :} is additionally kept whole, so {@code /api/v2/cases/{case_id}/cancel}
+ * and {@code CASE-2024-00123} match exactly as well as by their parts.
+ */
+public final class LexicalAnalyzer {
+
+    private LexicalAnalyzer() {
+    }
+
+    public static void analyze(CharSequence text, Consumer<String> terms) {
+        int length = text.length();
+        int wordStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean space = i == length || Character.isWhitespace(text.charAt(i));
+            if (!space && wordStart < 0) {
+                wordStart = i;
+            } else if (space && wordStart >= 0) {
+                analyzeWord(text, wordStart, i, terms);
+                wordStart = -1;
+            }
+        }
+    }
+
+    private static void analyzeWord(CharSequence text, int start, int end, Consumer<String> terms) {
+        boolean compound = false;
+        int runStart = -1;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? text.charAt(i) : ' ';
+            if (isWordChar(c)) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+                continue;
+            }
+            compound |= i < end && (c == '/' || c == '-' || c == '.' || c == ':');
+            if (runStart >= 0) {
+                emitRun(text, runStart, i, terms);
+                runStart = -1;
+            }
+        }
+        if (compound) {
+            // Trim surrounding punctuation such as quotes, backticks, brackets and trailing periods
+            while (start < end && !isCompoundEdge(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && !isCompoundEdge(text.charAt(end - 1))) {
+                end--;
+            }
+            if (end > start) {
+                terms.accept(lower(text, start, end));
+            }
+        }
+    }
+
+    private static void emitRun(CharSequence text, int start, int end, Consumer<String> terms) {
+        String run = lower(text, start, end);
+        terms.accept(run);
+        if (run.indexOf('_') < 0) {
+            return;
+        }
+        int partStart = 0;
+        for (int i = 0; i <= run.length(); i++) {
+            if (i == run.length() || run.charAt(i) == '_') {
+                if (i > partStart) {
+                    terms.accept(run.substring(partStart, i));
+                }
+                partStart = i + 1;
+            }
+        }
+    }
+
+    private static String lower(CharSequence text, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(text.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    private static boolean isCompoundEdge(char c) {
+        return isWordChar(c) || c == '/' || c == '{' || c == '}';
+    }
+
+    // Same definition of a word character as java.util.regex \b
+    private static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+}
@@ -0,0 +1,82 @@
+package com.opsguide.service.matching;
+
+import com.opsguide.model.TaskId;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Classification rules as written in {@code classification-rules.yml}; {@link #compile()} turns
+ * them into an immutable {@link QueryMatcher}. List order is priority order within each section.
+ */
+@Data
+public class ClassificationRuleSet {
+    
+    private List<TaskRule> tasks = new ArrayList<>();
+    private List<FallbackRule> fallbacks = new ArrayList<>();
+    private List<TargetRule> environments = new ArrayList<>();
+    private List<TargetRule> services = new ArrayList<>();
+    
+    public QueryMatcher compile() {
+        QueryMatcher.Builder builder = QueryMatcher.builder();
+        for (TaskRule rule : tasks) {
+            requireTask(rule.getTask());
+            for (String pattern : rule.getPatterns()) {
+                builder.task(rule.getTask(), terms(pattern));
+            }
+        }
+        for (FallbackRule rule : fallbacks) {
+            requireTask(rule.getTask());
+            String[][] clauses = new String[rule.getRequires().size()][];
+            for (int i = 0; i < clauses.length; i++) {
+                clauses[i] = normalize(rule.getRequires().get(i)).split("\\|");
+            }
+            builder.fallback(rule.getTask(), clauses);
+        }
+        for (TargetRule rule : environments) {
+            for (String pattern : rule.getPatterns()) {
+                builder.environment(rule.getName(), terms(pattern));
+            }
+        }
+        for (TargetRule rule : services) {
+            for (String pattern : rule.getPatterns()) {
+                builder.service(rule.getName(), terms(pattern));
+            }
+        }
+        return builder.build();
+    }
+    
+    private static String[] terms(String pattern) {
+        return normalize(pattern).split("\\s+");
+    }
+    
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static void requireTask(TaskId task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Every task and fallback rule needs a task");
+        }
+    }
+    
+    @Data
+    public static class TaskRule {
+        private TaskId task;
+        private List<String> patterns = new ArrayList<>();
+    }
+    
+    @Data
+    public static class FallbackRule {
+        private TaskId task;
+        private List<String> requires = new ArrayList<>();
+    }
+    
+    @Data
+    public static class TargetRule {
+        private String name;
+        private List<String> patterns = new ArrayList<>();
+    }
+}
@@ -0,0 +1,124 @@
+package com.opsguide.service.matching;
+
+import java.util.Arrays;
+
+/**
+ * Offsets of the IDs found by {@link IdScanner}, in the order they appear in the query.
+ * <p>
+ * A typed ID is stored as its 4-digit year start, suffix start and end, so formatting as
+ * {@code year-suffix} is deferred until a caller actually needs the string. Instances can be
+ * reused across scans.
+ */
+public final class IdMatches {
+
+    private static final int SLOTS = 4;
+
+    // type, digits start, suffix start, end per ID
+    private int[] spans = new int[SLOTS * 2];
+    private int size;
+    final int[] resume = new int[IdScanner.TYPES.length];
+
+    private int genericStart = -1;
+    private int genericSplit;
+    private int genericNumberStart;
+    private int genericEnd;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int count(IdScanner.IdType type) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (spans[i * SLOTS] == type.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public IdScanner.IdType type(int index) {
+        return IdScanner.TYPES[spans[index * SLOTS]];
+    }
+
+    public int digitsStart(int index) {
+        return spans[index * SLOTS + 1];
+    }
+
+    public int suffixStart(int index) {
+        return spans[index * SLOTS + 2];
+    }
+
+    public int end(int index) {
+        return spans[index * SLOTS + 3];
+    }
+
+    /**
+     * The ID as {@code year-suffix}, e.g. {@code 2024-001} for {@code CASE-2024-001}.
+     */
+    public String format(CharSequence text, int index) {
+        int base = index * SLOTS;
+        int digits = spans[base + 1];
+        int suffix = spans[base + 2];
+        int end = spans[base + 3];
+        if (suffix == digits + 5 && text.charAt(digits + 4) == '-') {
+            // Already written as year-suffix, e.g. CASE-2024-001
+            return text.subSequence(digits, end).toString();
+        }
+        return new StringBuilder(5 + end - suffix)
+            .append(text, digits, digits + 4)
+            .append('-')
+            .append(text, suffix, end)
+            .toString();
+    }
+
+    public boolean hasGeneric() {
+        return genericStart >= 0;
+    }
+
+    /**
+     * The generic ID as {@code word-number}, or null when none was recorded.
+     */
+    public String formatGeneric(CharSequence text) {
+        if (genericStart < 0) {
+            return null;
+        }
+        if (genericNumberStart == genericSplit + 1 && text.charAt(genericSplit) == '-') {
+            return text.subSequence(genericStart, genericEnd).toString();
+        }
+        return new StringBuilder(genericSplit - genericStart + 1 + genericEnd - genericNumberStart)
+            .append(text, genericStart, genericSplit)
+            .append('-')
+            .append(text, genericNumberStart, genericEnd)
+            .toString();
+    }
+
+    void reset() {
+        size = 0;
+        Arrays.fill(resume, 0);
+        genericStart = -1;
+    }
+
+    void add(int type, int digitsStart, int suffixStart, int end) {
+        if ((size + 1) * SLOTS > spans.length) {
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        }
+        int base = size++ * SLOTS;
+        spans[base] = type;
+        spans[base + 1] = digitsStart;
+        spans[base + 2] = suffixStart;
+        spans[base + 3] = end;
+        resume[type] = end;
+    }
+
+    void setGeneric(int start, int split, int numberStart, int end) {
+        genericStart = start;
+        genericSplit = split;
+        genericNumberStart = numberStart;
+        genericEnd = end;
+    }
+}
@@ -0,0 +1,189 @@
+package com.opsguide.service.matching;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds every order, case, sample and slide ID in a query in a single pass, recording offsets
+ * instead of strings.
+ * <p>
+ * Each type follows the semantics of repeated {@code Matcher.find()} calls on
+ * {@code PREFIX[_-]?(\d{4})[_-]?([\w-]+)} (case-insensitive, ASCII only), including the
+ * regex's backtracking corner cases. Types resume independently, so an ID nested inside another
+ * type's ID is still found, just as a separate pattern would find it. The generic
+ * {@code \b(\w+)[\s_-]?(\d+)\b} fallback is only scanned on request.
+ */
+public final class IdScanner {
+
+    public enum IdType {
+        ORDER("order"),
+        CASE("case"),
+        SAMPLE("sample"),
+        SLIDE("slide");
+
+        private final String prefix;
+
+        IdType(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    static final IdType[] TYPES = IdType.values();
+
+    private static final KeywordAutomaton PREFIXES = new KeywordAutomaton(prefixes());
+
+    private IdScanner() {
+    }
+
+    public static IdMatches scan(CharSequence text) {
+        IdMatches matches = new IdMatches();
+        scan(text, matches);
+        return matches;
+    }
+
+    /**
+     * Scans into a caller-owned {@link IdMatches}, which is reset first.
+     */
+    public static void scan(CharSequence text, IdMatches into) {
+        into.reset();
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = PREFIXES.step(state, asciiLower(text.charAt(i)));
+            for (int type : PREFIXES.outputs(state)) {
+                // Like find(), a type only resumes after the end of its previous match
+                if (i + 1 - PREFIXES.keywordLength(type) >= into.resume[type]) {
+                    matchId(text, type, i + 1, into);
+                }
+            }
+        }
+    }
+
+    /**
+     * First ID of {@code type} only, recorded into {@code into} (reset first); the scan stops there.
+     * Returns whether one was found.
+     */
+    public static boolean scanFirst(CharSequence text, IdType type, IdMatches into) {
+        into.reset();
+        int wanted = type.ordinal();
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = PREFIXES.step(state, asciiLower(text.charAt(i)));
+            for (int found : PREFIXES.outputs(state)) {
+                if (found == wanted) {
+                    matchId(text, found, i + 1, into);
+                    if (!into.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * First match of the generic ID pattern, recorded into {@code into}; returns whether one was found.
+     */
+    public static boolean scanGeneric(CharSequence text, IdMatches into) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!isAsciiWord(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end = i;
+            while (end < length && isAsciiWord(text.charAt(end))) {
+                end++;
+            }
+            if (start == 0 || !QueryTokenizer.isWordChar(text.charAt(start - 1))) {
+                // Greedy \w+ takes the whole word first, so a separated number wins
+                if (end + 1 < length && isGenericSeparator(text.charAt(end)) && isAsciiDigit(text.charAt(end + 1))) {
+                    int numberEnd = end + 1;
+                    while (numberEnd < length && isAsciiDigit(text.charAt(numberEnd))) {
+                        numberEnd++;
+                    }
+                    if (isBoundaryAfter(text, numberEnd)) {
+                        into.setGeneric(start, end, end + 1, numberEnd);
+                        return true;
+                    }
+                }
+                // Otherwise \w+ backs off one character and \d+ takes the word's last digit
+                if (end - start >= 2 && isAsciiDigit(text.charAt(end - 1)) && isBoundaryAfter(text, end)) {
+                    into.setGeneric(start, end - 1, end - 1, end);
+                    return true;
+                }
+            }
+            // No position inside an ASCII word run is a word boundary
+            i = end;
+        }
+        return false;
+    }
+
+    private static void matchId(CharSequence text, int type, int afterPrefix, IdMatches into) {
+        int length = text.length();
+        int digits = afterPrefix < length && isSeparator(text.charAt(afterPrefix)) ? afterPrefix + 1 : afterPrefix;
+        if (digits + 4 > length) {
+            return;
+        }
+        for (int i = digits; i < digits + 4; i++) {
+            if (!isAsciiDigit(text.charAt(i))) {
+                return;
+            }
+        }
+        int suffix = digits + 4;
+        // [_-]? only consumes the separator when [\w-]+ still has a character after it
+        if (suffix + 1 < length && isSeparator(text.charAt(suffix)) && isIdChar(text.charAt(suffix + 1))) {
+            suffix++;
+        }
+        int end = suffix;
+        while (end < length && isIdChar(text.charAt(end))) {
+            end++;
+        }
+        if (end > suffix) {
+            into.add(type, digits, suffix, end);
+        }
+    }
+
+    private static boolean isBoundaryAfter(CharSequence text, int index) {
+        return index == text.length() || !QueryTokenizer.isWordChar(text.charAt(index));
+    }
+
+    private static char asciiLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Regex \w without UNICODE_CHARACTER_CLASS
+    private static boolean isAsciiWord(char c) {
+        return isAsciiDigit(c) || c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isIdChar(char c) {
+        return c == '-' || isAsciiWord(c);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '-' || c == '_';
+    }
+
+    // [\s_-] after a whole \w+ run; '_' cannot follow one
+    private static boolean isGenericSeparator(char c) {
+        return c == '-' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static List<String> prefixes() {
+        List<String> prefixes = new ArrayList<>();
+        for (IdType type : IdType.values()) {
+            prefixes.add(type.getPrefix());
+        }
+        return prefixes;
+    }
+}
@@ -0,0 +1,139 @@
+package com.opsguide.service.matching;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over lowercase ASCII keywords (letters and '_').
+ * <p>
+ * Failure links are folded into a dense transition table at build time, so scanning
+ * costs one array lookup per input character and never backtracks.
+ */
+final class KeywordAutomaton {
+
+    static final int ALPHABET = 27;
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int[] delta;
+    private final int[][] outputs;
+    private final int[] keywordLength;
+
+    KeywordAutomaton(List<String> keywords) {
+        List<int[]> children = new ArrayList<>();
+        List<int[]> ownOutputs = new ArrayList<>();
+        children.add(newNode());
+        ownOutputs.add(NO_OUTPUT);
+
+        keywordLength = new int[keywords.size()];
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            keywordLength[id] = keyword.length();
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int letter = letterIndex(keyword.charAt(i));
+                if (letter < 0) {
+                    throw new IllegalArgumentException("Keyword must be lowercase a-z or '_': " + keyword);
+                }
+                int next = children.get(state)[letter];
+                if (next < 0) {
+                    next = children.size();
+                    children.get(state)[letter] = next;
+                    children.add(newNode());
+                    ownOutputs.add(NO_OUTPUT);
+                }
+                state = next;
+            }
+            ownOutputs.set(state, append(ownOutputs.get(state), id));
+        }
+
+        int states = children.size();
+        delta = new int[states * ALPHABET];
+        outputs = new int[states][];
+        int[] fail = new int[states];
+
+        // Breadth-first so every failure target is complete before its dependants
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        outputs[0] = ownOutputs.get(0);
+        for (int letter = 0; letter < ALPHABET; letter++) {
+            int child = children.get(0)[letter];
+            if (child < 0) {
+                delta[letter] = 0;
+            } else {
+                delta[letter] = child;
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = merge(ownOutputs.get(state), outputs[fail[state]]);
+            for (int letter = 0; letter < ALPHABET; letter++) {
+                int child = children.get(state)[letter];
+                if (child < 0) {
+                    delta[state * ALPHABET + letter] = delta[fail[state] * ALPHABET + letter];
+                } else {
+                    delta[state * ALPHABET + letter] = child;
+                    fail[child] = delta[fail[state] * ALPHABET + letter];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the automaton by one lowercase character; anything outside the alphabet resets to the root.
+     */
+    int step(int state, char lower) {
+        int letter = letterIndex(lower);
+        return letter < 0 ? 0 : delta[state * ALPHABET + letter];
+    }
+
+    /**
+     * Keyword ids that end at the given state, longest first.
+     */
+    int[] outputs(int state) {
+        return outputs[state];
+    }
+
+    int keywordLength(int keywordId) {
+        return keywordLength[keywordId];
+    }
+
+    int stateCount() {
+        return outputs.length;
+    }
+
+    static int letterIndex(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        return c == '_' ? ALPHABET - 1 : -1;
+    }
+
+    private static int[] newNode() {
+        int[] node = new int[ALPHABET];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    private static int[] append(int[] values, int value) {
+        int[] result = Arrays.copyOf(values, values.length + 1);
+        result[values.length] = value;
+        return result;
+    }
+
+    private static int[] merge(int[] own, int[] inherited) {
+        if (inherited.length == 0) {
+            return own;
+        }
+        if (own.length == 0) {
+            return inherited;
+        }
+        int[] result = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, result, own.length, inherited.length);
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package com.opsguide.service.matching;
+
+import java.util.Arrays;
+
+/**
+ * An ordered set of up to 64 lowercase keywords matched as substrings in one pass.
+ * <p>
+ * {@link #scan} returns a bit mask where bit {@code i} is set when keyword {@code i} occurs
+ * anywhere in the query, so "first keyword in declaration order" lookups are a
+ * {@link Long#numberOfTrailingZeros} away.
+ */
+public final class KeywordSet {
+
+    private final KeywordAutomaton automaton;
+    private final String[] keywords;
+
+    public KeywordSet(String... keywords) {
+        if (keywords.length > Long.SIZE) {
+            throw new IllegalArgumentException("At most 64 keywords are supported");
+        }
+        this.keywords = keywords.clone();
+        this.automaton = new KeywordAutomaton(Arrays.asList(this.keywords));
+    }
+
+    public long scan(TokenizedQuery query) {
+        long hits = 0L;
+        int state = 0;
+        for (int i = 0, length = query.length(); i < length; i++) {
+            state = automaton.step(state, query.charAt(i));
+            for (int keyword : automaton.outputs(state)) {
+                hits |= 1L << keyword;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * The first keyword (in declaration order) among {@code hits & group}, or null.
+     */
+    public String first(long hits, long group) {
+        long present = hits & group;
+        return present == 0L ? null : keywords[Long.numberOfTrailingZeros(present)];
+    }
+
+    /**
+     * Bit mask covering keywords {@code [from, to)}.
+     */
+    public static long range(int from, int to) {
+        long upper = to == Long.SIZE ? -1L : (1L << to) - 1;
+        return upper & ~((1L << from) - 1);
+    }
+}
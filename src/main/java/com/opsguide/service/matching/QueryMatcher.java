@@ -0,0 +1,278 @@
+package com.opsguide.service.matching;
+
+import com.opsguide.model.TaskId;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled classification rules that resolve task, environment and service in a single scan.
+ * <p>
+ * Every rule is an ordered list of whole-word terms, equivalent to the regex
+ * {@code \bterm1\b.*\bterm2\b...} on one line. All terms share one {@link KeywordAutomaton};
+ * each keyword hit advances the rules waiting for that term, so the query is read exactly once
+ * no matter how many rules there are.
+ * <p>
+ * Priority is declaration order: when several rules of the same kind match, the one added to
+ * the builder first wins. Fallback rules are plain substring checks and are only consulted when
+ * no ordered task rule matched.
+ */
+public final class QueryMatcher {
+
+    private enum Kind { TASK, ENVIRONMENT, SERVICE }
+
+    private static final int[] NO_RULES = new int[0];
+
+    private final KeywordAutomaton automaton;
+    private final String[] keywords;
+    private final boolean[] wholeWord;
+    private final long[] substringBit;
+    private final int[][] rulesByKeyword;
+
+    private final int[][] ruleTerms;
+    private final Kind[] ruleKind;
+    private final TaskId[] ruleTask;
+    private final String[] ruleTarget;
+
+    private final long[][] fallbackClauses;
+    private final TaskId[] fallbackTask;
+
+    private QueryMatcher(Builder builder) {
+        this.keywords = builder.keywordIds.keySet().toArray(new String[0]);
+        this.automaton = new KeywordAutomaton(Arrays.asList(keywords));
+        this.wholeWord = new boolean[keywords.length];
+        this.substringBit = new long[keywords.length];
+
+        int rules = builder.rules.size();
+        this.ruleTerms = new int[rules][];
+        this.ruleKind = new Kind[rules];
+        this.ruleTask = new TaskId[rules];
+        this.ruleTarget = new String[rules];
+
+        List<List<Integer>> byKeyword = new ArrayList<>();
+        for (int i = 0; i < keywords.length; i++) {
+            byKeyword.add(new ArrayList<>());
+        }
+        for (int rule = 0; rule < rules; rule++) {
+            RuleSpec spec = builder.rules.get(rule);
+            ruleTerms[rule] = spec.terms;
+            ruleKind[rule] = spec.kind;
+            ruleTask[rule] = spec.task;
+            ruleTarget[rule] = spec.target;
+            for (int keyword : spec.terms) {
+                wholeWord[keyword] = true;
+                if (!byKeyword.get(keyword).contains(rule)) {
+                    byKeyword.get(keyword).add(rule);
+                }
+            }
+        }
+        this.rulesByKeyword = new int[keywords.length][];
+        for (int keyword = 0; keyword < keywords.length; keyword++) {
+            List<Integer> ids = byKeyword.get(keyword);
+            rulesByKeyword[keyword] = ids.isEmpty() ? NO_RULES : ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        for (Map.Entry<Integer, Long> entry : builder.substringBits.entrySet()) {
+            substringBit[entry.getKey()] = entry.getValue();
+        }
+        this.fallbackClauses = builder.fallbackClauses.toArray(new long[0][]);
+        this.fallbackTask = builder.fallbackTasks.toArray(new TaskId[0]);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public MatchResult match(String query) {
+        return match(QueryTokenizer.tokenize(query));
+    }
+
+    public MatchResult match(TokenizedQuery query) {
+        // Each keyword hit advances a rule at most once, so a matched-term count per rule is
+        // all the state a scan needs
+        byte[] progress = new byte[ruleTerms.length];
+        int bestTask = Integer.MAX_VALUE;
+        int bestEnvironment = Integer.MAX_VALUE;
+        int bestService = Integer.MAX_VALUE;
+        long seen = 0L;
+
+        int state = 0;
+        for (int i = 0, length = query.length(); i < length; i++) {
+            char c = query.charAt(i);
+            if (isLineTerminator(c)) {
+                // '.' does not cross lines, so partially matched rules start over
+                for (int rule = 0; rule < progress.length; rule++) {
+                    if (progress[rule] < ruleTerms[rule].length) {
+                        progress[rule] = 0;
+                    }
+                }
+                state = 0;
+                continue;
+            }
+            state = automaton.step(state, c);
+            for (int keyword : automaton.outputs(state)) {
+                seen |= substringBit[keyword];
+                if (!wholeWord[keyword] || !query.isWholeWord(i + 1 - automaton.keywordLength(keyword), i + 1)) {
+                    continue;
+                }
+                for (int rule : rulesByKeyword[keyword]) {
+                    int[] terms = ruleTerms[rule];
+                    int matched = progress[rule];
+                    if (matched < terms.length && terms[matched] == keyword) {
+                        progress[rule] = (byte) (matched + 1);
+                        if (matched + 1 == terms.length) {
+                            switch (ruleKind[rule]) {
+                                case TASK -> bestTask = Math.min(bestTask, rule);
+                                case ENVIRONMENT -> bestEnvironment = Math.min(bestEnvironment, rule);
+                                case SERVICE -> bestService = Math.min(bestService, rule);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return new MatchResult(
+            resolveTask(bestTask, seen),
+            bestEnvironment == Integer.MAX_VALUE ? null : ruleTarget[bestEnvironment],
+            bestService == Integer.MAX_VALUE ? null : ruleTarget[bestService]
+        );
+    }
+
+    public int stateCount() {
+        return automaton.stateCount();
+    }
+
+    public int ruleCount() {
+        return ruleTerms.length + fallbackTask.length;
+    }
+
+    public int keywordCount() {
+        return keywords.length;
+    }
+
+    private TaskId resolveTask(int bestRule, long seen) {
+        if (bestRule != Integer.MAX_VALUE) {
+            return ruleTask[bestRule];
+        }
+        for (int i = 0; i < fallbackTask.length; i++) {
+            if (allClausesSeen(fallbackClauses[i], seen)) {
+                return fallbackTask[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean allClausesSeen(long[] clauses, long seen) {
+        for (long anyOf : clauses) {
+            if ((seen & anyOf) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    @Value
+    public static class MatchResult {
+        TaskId task;
+        String environment;
+        String service;
+    }
+
+    private static final class RuleSpec {
+        final Kind kind;
+        final TaskId task;
+        final String target;
+        final int[] terms;
+
+        RuleSpec(Kind kind, TaskId task, String target, int[] terms) {
+            this.kind = kind;
+            this.task = task;
+            this.target = target;
+            this.terms = terms;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Map<String, Integer> keywordIds = new LinkedHashMap<>();
+        private final Map<Integer, Long> substringBits = new LinkedHashMap<>();
+        private final List<RuleSpec> rules = new ArrayList<>();
+        private final List<long[]> fallbackClauses = new ArrayList<>();
+        private final List<TaskId> fallbackTasks = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder task(TaskId task, String... terms) {
+            rules.add(new RuleSpec(Kind.TASK, task, task.getValue(), keywordIds(terms)));
+            return this;
+        }
+
+        public Builder environment(String environment, String... terms) {
+            rules.add(new RuleSpec(Kind.ENVIRONMENT, null, environment, keywordIds(terms)));
+            return this;
+        }
+
+        public Builder service(String service, String... terms) {
+            rules.add(new RuleSpec(Kind.SERVICE, null, service, keywordIds(terms)));
+            return this;
+        }
+
+        /**
+         * Adds a substring fallback: the task matches when the query contains at least one
+         * keyword from every clause.
+         */
+        public Builder fallback(TaskId task, String[]... anyOfClauses) {
+            long[] clauses = new long[anyOfClauses.length];
+            for (int i = 0; i < anyOfClauses.length; i++) {
+                for (String keyword : anyOfClauses[i]) {
+                    clauses[i] |= substringBit(keyword);
+                }
+            }
+            fallbackClauses.add(clauses);
+            fallbackTasks.add(task);
+            return this;
+        }
+
+        public QueryMatcher build() {
+            return new QueryMatcher(this);
+        }
+
+        private int[] keywordIds(String[] terms) {
+            if (terms.length == 0 || terms.length > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Rule needs between 1 and 127 terms");
+            }
+            int[] ids = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                ids[i] = keywordId(terms[i]);
+            }
+            return ids;
+        }
+
+        private int keywordId(String keyword) {
+            return keywordIds.computeIfAbsent(keyword, k -> keywordIds.size());
+        }
+
+        private long substringBit(String keyword) {
+            int id = keywordId(keyword);
+            Long bit = substringBits.get(id);
+            if (bit == null) {
+                if (substringBits.size() == Long.SIZE) {
+                    throw new IllegalStateException("At most 64 fallback keywords are supported");
+                }
+                bit = 1L << substringBits.size();
+                substringBits.put(id, bit);
+            }
+            return bit;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.opsguide.service.matching;
+
+/**
+ * Normalizes a query once into a {@link TokenizedQuery}.
+ * <p>
+ * Lowercasing is done per character rather than with {@link String#toLowerCase()}, so offsets
+ * in the lowercase view always line up with the original text. A token is a maximal run of
+ * word characters, using the same definition as regex {@code \b}.
+ */
+public final class QueryTokenizer {
+
+    private QueryTokenizer() {
+    }
+
+    public static TokenizedQuery tokenize(String query) {
+        int length = query.length();
+        char[] lower = new char[length];
+        // Tokens are separated by at least one non-word character
+        int maxTokens = (length + 1) / 2;
+        int[] starts = new int[maxTokens];
+        int[] ends = new int[maxTokens];
+        int tokens = 0;
+        boolean hasDigit = false;
+
+        int tokenStart = -1;
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(query.charAt(i));
+            lower[i] = c;
+            if (isWordChar(c)) {
+                if (tokenStart < 0) {
+                    tokenStart = i;
+                }
+                hasDigit |= (c >= '0' && c <= '9');
+            } else if (tokenStart >= 0) {
+                starts[tokens] = tokenStart;
+                ends[tokens++] = i;
+                tokenStart = -1;
+            }
+        }
+        if (tokenStart >= 0) {
+            starts[tokens] = tokenStart;
+            ends[tokens++] = length;
+        }
+        return new TokenizedQuery(query, lower, starts, ends, tokens, hasDigit);
+    }
+
+    // Same definition of a word character as java.util.regex \b
+    static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+}
@@ -0,0 +1,72 @@
+package com.opsguide.service.matching;
+
+/**
+ * A query normalized once for every consumer in the core pipeline: the original text (for
+ * case-preserving extraction), a per-character lowercase copy with identical offsets, and the
+ * word tokens as {@code [start, end)} offsets into both.
+ */
+public final class TokenizedQuery {
+
+    private final String original;
+    private final char[] lower;
+    private final int[] tokenStarts;
+    private final int[] tokenEnds;
+    private final int tokenCount;
+    private final boolean hasDigit;
+
+    TokenizedQuery(String original, char[] lower, int[] tokenStarts, int[] tokenEnds,
+                   int tokenCount, boolean hasDigit) {
+        this.original = original;
+        this.lower = lower;
+        this.tokenStarts = tokenStarts;
+        this.tokenEnds = tokenEnds;
+        this.tokenCount = tokenCount;
+        this.hasDigit = hasDigit;
+    }
+
+    public String getOriginal() {
+        return original;
+    }
+
+    public int length() {
+        return lower.length;
+    }
+
+    /**
+     * Lowercase character at the given offset.
+     */
+    public char charAt(int index) {
+        return lower[index];
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    public int getTokenStart(int token) {
+        return tokenStarts[token];
+    }
+
+    public int getTokenEnd(int token) {
+        return tokenEnds[token];
+    }
+
+    public boolean hasDigit() {
+        return hasDigit;
+    }
+
+    /**
+     * True when {@code [start, end)} is bounded by word boundaries, as regex {@code \b...\b}.
+     */
+    public boolean isWholeWord(int start, int end) {
+        return (start == 0 || !QueryTokenizer.isWordChar(lower[start - 1]))
+            && (end == lower.length || !QueryTokenizer.isWordChar(lower[end]));
+    }
+
+    /**
+     * Lowercase text of a token; allocates, so keep it off the hot path.
+     */
+    public String tokenText(int token) {
+        return new String(lower, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+}
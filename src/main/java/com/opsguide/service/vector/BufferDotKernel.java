@@ -0,0 +1,77 @@
+package com.opsguide.service.vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Dot product of an on-heap query against a little-endian float32 row in a (mapped) byte buffer.
+ * <p>
+ * {@link #select()} returns the JDK Vector API kernel when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and is a JDK 17 or 18 (later incubator releases dropped
+ * {@code FloatVector.fromByteBuffer}), otherwise the scalar kernel. Implementations only use
+ * absolute reads, so one buffer can be scanned by any number of threads.
+ */
+interface BufferDotKernel {
+
+    float dot(float[] query, ByteBuffer rows, int byteOffset, int length);
+
+    String name();
+
+    static BufferDotKernel select() {
+        return Selection.KERNEL;
+    }
+
+    @Slf4j
+    final class Selection {
+
+        private static final String VECTOR_MODULE = "jdk.incubator.vector";
+        // Loaded by name so this class never links against the incubator module when it is absent
+        private static final String SIMD_KERNEL = "com.opsguide.service.vector.SimdBufferDotKernel";
+        // FloatVector.fromByteBuffer was replaced by fromMemorySegment in JDK 19
+        private static final int LAST_BYTE_BUFFER_FEATURE = 18;
+
+        static final BufferDotKernel KERNEL = load();
+
+        private Selection() {
+        }
+
+        private static BufferDotKernel load() {
+            ScalarBufferDotKernel scalar = new ScalarBufferDotKernel();
+            if (Runtime.version().feature() > LAST_BYTE_BUFFER_FEATURE) {
+                log.info("Vector API kernel needs JDK {} or earlier; vector segment scans use the scalar kernel",
+                    LAST_BYTE_BUFFER_FEATURE);
+            } else if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+                try {
+                    BufferDotKernel kernel = (BufferDotKernel) Class.forName(SIMD_KERNEL)
+                        .getDeclaredConstructor().newInstance();
+                    // Missing Vector API methods only fail when first called, so call it here
+                    if (probe(kernel, scalar)) {
+                        log.info("Vector segment scans use the {} kernel", kernel.name());
+                        return kernel;
+                    }
+                    log.warn("Vector API kernel disagrees with the scalar kernel, falling back to scalar scans");
+                } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                    log.warn("Vector API kernel unavailable, falling back to scalar scans: {}", e.toString());
+                }
+            } else {
+                log.info("{} not enabled (--add-modules {}); vector segment scans use the scalar kernel",
+                    VECTOR_MODULE, VECTOR_MODULE);
+            }
+            return scalar;
+        }
+
+        // Odd length and offset so the wide loop, the single-vector loop and the scalar tail all run
+        private static boolean probe(BufferDotKernel kernel, BufferDotKernel scalar) {
+            int length = 67;
+            float[] query = new float[length];
+            ByteBuffer rows = ByteBuffer.allocateDirect((length + 1) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < length; i++) {
+                query[i] = (i % 7) - 3;
+                rows.putFloat((i + 1) * Float.BYTES, (i % 5) - 2);
+            }
+            return kernel.dot(query, rows, Float.BYTES, length) == scalar.dot(query, rows, Float.BYTES, length);
+        }
+    }
+}
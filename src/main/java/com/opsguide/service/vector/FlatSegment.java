@@ -0,0 +1,386 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Immutable on-disk segment of unit-normalized float32 vectors, memory-mapped and scanned exactly.
+ * <p>
+ * Layout, little-endian: a {@value #HEADER_BYTES}-byte header (magic, version, dimension, count,
+ * id table offset), then the vectors as contiguous rows, then the id table ({@code count + 1} int
+ * offsets followed by the UTF-8 ids). Opening maps the file read-only and copies nothing, so the
+ * vectors live in the page cache rather than the heap and a reopened segment is searchable at once.
+ * Rows are mapped in windows of up to 1 GB of whole rows, so a segment is not bound by the 2 GB
+ * limit of one mapping; only the id table must fit in one. Searches score every row with
+ * {@link BufferDotKernel#select()} and keep the best in a {@link TopKHeap}, which makes this the
+ * exact baseline for the approximate indexes. {@link #add} is unsupported; segments are written
+ * whole, or row by row in any order through a {@link Writer}. {@link #slice} gives a view of a
+ * contiguous range of rows over the same mappings.
+ */
+public final class FlatSegment implements VectorIndex {
+
+    private static final int MAGIC = 0x5356474F; // "OGVS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final Path path;
+    // windows[w] maps rows w * rowsPerWindow up to the next window's first row
+    private final ByteBuffer[] windows;
+    private final FloatBuffer[] windowFloats;
+    private final int rowsPerWindow;
+    // Id offsets, then from idBytesAt the id bytes, of the whole segment
+    private final ByteBuffer idTable;
+    private final int idBytesAt;
+    private final int dimension;
+    private final int count;
+    // Row of the whole segment that is row 0 of this view
+    private final int firstRow;
+    private final BufferDotKernel kernel;
+
+    private FlatSegment(Path path, ByteBuffer[] windows, FloatBuffer[] windowFloats, int rowsPerWindow,
+                        ByteBuffer idTable, int idBytesAt, int dimension, int count, int firstRow,
+                        BufferDotKernel kernel) {
+        this.path = path;
+        this.windows = windows;
+        this.windowFloats = windowFloats;
+        this.rowsPerWindow = rowsPerWindow;
+        this.idTable = idTable;
+        this.idBytesAt = idBytesAt;
+        this.dimension = dimension;
+        this.count = count;
+        this.firstRow = firstRow;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Writes {@code vectors} (normalized on the way out) under {@code ids} to {@code path}. The file
+     * is written beside the target and moved into place, so readers never map a partial segment.
+     */
+    public static void write(Path path, int dimension, List<String> ids, List<Embedding> vectors) throws IOException {
+        if (ids.size() != vectors.size()) {
+            throw new IllegalArgumentException(ids.size() + " ids for " + vectors.size() + " vectors");
+        }
+        try (Writer writer = writer(path, dimension, ids)) {
+            for (int row = 0; row < vectors.size(); row++) {
+                writer.set(row, vectors.get(row));
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Starts a segment of {@code ids.size()} rows at {@code path}. Rows are set in any order, from
+     * any number of threads, and go straight to the file; {@link Writer#commit} moves it into place
+     * once every row is set.
+     */
+    public static Writer writer(Path path, int dimension, List<String> ids) throws IOException {
+        return new Writer(path, dimension, ids);
+    }
+
+    public static FlatSegment open(Path path) throws IOException {
+        return open(path, WINDOW_BYTES);
+    }
+
+    // Package-private window size, so tests can cover rows spread over several windows
+    static FlatSegment open(Path path, long windowBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Not a vector segment: " + path);
+            }
+            // Mappings stay valid after the channel is closed
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Not a version " + FORMAT_VERSION + " vector segment: " + path);
+            }
+            int dimension = header.getInt(8);
+            int count = header.getInt(12);
+            long idOffsetsAt = header.getLong(16);
+            if (dimension <= 0 || count < 0
+                    || idOffsetsAt != HEADER_BYTES + (long) count * dimension * Float.BYTES
+                    || idOffsetsAt + (long) (count + 1) * Integer.BYTES > size
+                    || size - idOffsetsAt > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt vector segment header: " + path);
+            }
+            long rowBytes = (long) dimension * Float.BYTES;
+            int rowsPerWindow = (int) Math.max(1, Math.min(Integer.MAX_VALUE / rowBytes, windowBytes / rowBytes));
+            int windowCount = count == 0 ? 0 : (count - 1) / rowsPerWindow + 1;
+            ByteBuffer[] windows = new ByteBuffer[windowCount];
+            FloatBuffer[] windowFloats = new FloatBuffer[windowCount];
+            for (int w = 0; w < windowCount; w++) {
+                int rows = Math.min(rowsPerWindow, count - w * rowsPerWindow);
+                windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + w * rowsPerWindow * rowBytes,
+                    rows * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+                windowFloats[w] = windows[w].asFloatBuffer();
+            }
+            ByteBuffer idTable = channel.map(FileChannel.MapMode.READ_ONLY, idOffsetsAt, size - idOffsetsAt)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            return new FlatSegment(path, windows, windowFloats, rowsPerWindow, idTable, (count + 1) * Integer.BYTES,
+                dimension, count, 0, BufferDotKernel.select());
+        }
+    }
+
+    /**
+     * View of rows {@code from} (inclusive) to {@code to} (exclusive), renumbered from 0. Shares
+     * the mappings, so it costs nothing and stays valid as long as this segment does.
+     */
+    public FlatSegment slice(int from, int to) {
+        if (from < 0 || to > count || from > to) {
+            throw new IndexOutOfBoundsException("Rows " + from + " to " + to + " of a " + count + "-row segment");
+        }
+        return new FlatSegment(path, windows, windowFloats, rowsPerWindow, idTable, idBytesAt, dimension, to - from,
+            firstRow + from, kernel);
+    }
+
+    /**
+     * Writes a reference to this view's rows; {@link SnapshotInput#readIndex} resolves it against
+     * the segment being restored, which must hold the same rows.
+     */
+    @Override
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.writeByte(SnapshotInput.SEGMENT);
+        out.writeInt(firstRow());
+        out.writeInt(count);
+    }
+
+    static FlatSegment read(SnapshotInput in, FlatSegment segment) throws IOException {
+        int from = in.readInt();
+        int rows = in.readInt();
+        if (segment == null || from + rows > segment.size()) {
+            throw new IOException("Snapshot " + in.getPath() + " refers to rows " + from + " to " + (from + rows)
+                + " of a vector segment it was not restored with");
+        }
+        return segment.slice(from, from + rows);
+    }
+
+    /**
+     * Row of the whole segment that is row 0 of this view.
+     */
+    int firstRow() {
+        return firstRow;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Id stored for {@code ordinal}.
+     */
+    public String id(int ordinal) {
+        int row = firstRow + ordinal;
+        int start = idTable.getInt(row * Integer.BYTES);
+        int end = idTable.getInt((row + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        idTable.get(idBytesAt + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copy of row {@code ordinal} (unit-normalized).
+     */
+    public Embedding vector(int ordinal) {
+        int row = firstRow + ordinal;
+        float[] values = new float[dimension];
+        windowFloats[row / rowsPerWindow].get((row % rowsPerWindow) * dimension, values);
+        return Embedding.wrap(values);
+    }
+
+    @Override
+    public int add(Embedding vector) {
+        throw new UnsupportedOperationException("Vector segments are immutable; write a new segment instead");
+    }
+
+    @Override
+    public List<VectorHit> search(Embedding query, int topK) {
+        checkDimension(query);
+        if (count == 0 || topK < 1) {
+            return List.of();
+        }
+        float[] normalized = query.normalize().toArray();
+        TopKHeap heap = new TopKHeap(Math.min(topK, count));
+        int rowBytes = dimension * Float.BYTES;
+        int end = firstRow + count;
+        // Rows never straddle windows, so each window is one run of kernel calls
+        for (int row = firstRow; row < end; ) {
+            int window = row / rowsPerWindow;
+            int windowEnd = Math.min(end, (window + 1) * rowsPerWindow);
+            ByteBuffer buffer = windows[window];
+            for (int at = (row % rowsPerWindow) * rowBytes; row < windowEnd; row++, at += rowBytes) {
+                heap.offer(row - firstRow, kernel.dot(normalized, buffer, at, dimension));
+            }
+        }
+        return heap.toSortedHits();
+    }
+
+    /**
+     * Exact cosine similarity of row {@code ordinal} to a unit-normalized query.
+     */
+    public float score(Embedding normalizedQuery, int ordinal) {
+        checkDimension(normalizedQuery);
+        int row = firstRow + ordinal;
+        return kernel.dot(normalizedQuery.toArray(), windows[row / rowsPerWindow],
+            (row % rowsPerWindow) * dimension * Float.BYTES, dimension);
+    }
+
+    /**
+     * Vectors are mapped, not held on the heap.
+     */
+    @Override
+    public long memoryBytes() {
+        return 0;
+    }
+
+    public long mappedBytes() {
+        long bytes = idTable.capacity();
+        for (ByteBuffer window : windows) {
+            bytes += window.capacity();
+        }
+        return bytes;
+    }
+
+    public String kernelName() {
+        return kernel.name();
+    }
+
+    private void checkDimension(Embedding vector) {
+        if (vector.dimension() != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.dimension());
+        }
+    }
+
+    /**
+     * Segment being written: the header and id table are written up front, rows with positional
+     * writes as they are {@link #set}, so no vector waits on the heap for the others. Closing
+     * without {@link #commit} deletes the partial file.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final int dimension;
+        private final int count;
+        private final BitSet written;
+        private boolean committed;
+
+        private Writer(Path path, int dimension, List<String> ids) throws IOException {
+            this.dimension = dimension;
+            this.count = ids.size();
+            this.written = new BitSet(count);
+            byte[][] encodedIds = new byte[count][];
+            long idBytes = 0;
+            for (int i = 0; i < count; i++) {
+                encodedIds[i] = ids.get(i).getBytes(StandardCharsets.UTF_8);
+                idBytes += encodedIds[i].length;
+            }
+            long idTableBytes = (long) (count + 1) * Integer.BYTES + idBytes;
+            if (idTableBytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Id table of " + count + " ids exceeds 2 GB");
+            }
+            long idOffsetsAt = HEADER_BYTES + (long) count * dimension * Float.BYTES;
+
+            this.target = path.toAbsolutePath();
+            Files.createDirectories(target.getParent());
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(0, MAGIC);
+                header.putInt(4, FORMAT_VERSION);
+                header.putInt(8, dimension);
+                header.putInt(12, count);
+                header.putLong(16, idOffsetsAt);
+                writeFully(header, 0);
+
+                ByteBuffer idTable = ByteBuffer.allocate((int) idTableBytes).order(ByteOrder.LITTLE_ENDIAN);
+                int offset = 0;
+                for (int i = 0; i <= count; i++) {
+                    idTable.putInt(offset);
+                    offset += i < count ? encodedIds[i].length : 0;
+                }
+                for (byte[] id : encodedIds) {
+                    idTable.put(id);
+                }
+                writeFully(idTable.flip(), idOffsetsAt);
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Writes row {@code row}, normalized. Safe to call from several threads for different rows.
+         */
+        public void set(int row, Embedding vector) throws IOException {
+            if (row < 0 || row >= count) {
+                throw new IndexOutOfBoundsException("Row " + row + " of a " + count + "-row segment");
+            }
+            if (vector.dimension() != dimension) {
+                throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.dimension());
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asFloatBuffer().put(vector.normalize().toArray());
+            writeFully(bytes, HEADER_BYTES + (long) row * dimension * Float.BYTES);
+            synchronized (written) {
+                written.set(row);
+            }
+        }
+
+        /**
+         * Forces the file to disk and moves it into place; every row must have been set.
+         */
+        public void commit() throws IOException {
+            int missing;
+            synchronized (written) {
+                missing = count - written.cardinality();
+            }
+            if (missing > 0) {
+                throw new IllegalStateException(missing + " of " + count + " segment rows were never written");
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!committed) {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private void writeFully(ByteBuffer bytes, long position) throws IOException {
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+        }
+    }
+}
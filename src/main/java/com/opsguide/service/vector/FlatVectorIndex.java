@@ -0,0 +1,110 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact index: unit-normalized float32 rows in one flat array, scanned in full for every query.
+ */
+public final class FlatVectorIndex implements VectorIndex {
+
+    private final int dimension;
+    private float[] vectors;
+    // Written after the row it covers, so readers that see a size also see its rows
+    private volatile int size;
+
+    public FlatVectorIndex(int dimension) {
+        this(dimension, 64);
+    }
+
+    public FlatVectorIndex(int dimension, int initialCapacity) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimension must be positive");
+        }
+        this.dimension = dimension;
+        this.vectors = new float[Math.max(1, initialCapacity) * dimension];
+    }
+
+    private FlatVectorIndex(int dimension, float[] vectors, int size) {
+        this.dimension = dimension;
+        this.vectors = vectors;
+        this.size = size;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int add(Embedding vector) {
+        checkDimension(vector);
+        int id = size;
+        if ((long) (id + 1) * dimension > vectors.length) {
+            long grown = Math.max((long) (id + 1) * dimension, vectors.length + (vectors.length >> 1));
+            if (grown > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Flat vector index is full at " + id + " vectors");
+            }
+            vectors = Arrays.copyOf(vectors, (int) grown);
+        }
+        vector.normalize().copyInto(vectors, id * dimension);
+        size = id + 1;
+        return id;
+    }
+
+    @Override
+    public List<VectorHit> search(Embedding query, int topK) {
+        checkDimension(query);
+        int count = size;
+        if (count == 0 || topK < 1) {
+            return List.of();
+        }
+        float[] normalized = query.normalize().toArray();
+        float[] rows = vectors;
+        TopKHeap heap = new TopKHeap(Math.min(topK, count));
+        for (int id = 0; id < count; id++) {
+            heap.offer(id, VectorMath.dot(normalized, 0, rows, id * dimension, dimension));
+        }
+        return heap.toSortedHits();
+    }
+
+    /**
+     * Exact cosine similarity of stored vector {@code id} to a unit-normalized query.
+     */
+    public float score(Embedding normalizedQuery, int id) {
+        return normalizedQuery.dot(vectors, id * dimension);
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) vectors.length * Float.BYTES;
+    }
+
+    @Override
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.writeByte(SnapshotInput.FLAT);
+        out.writeInt(dimension);
+        out.writeFloats(vectors, 0, size * dimension);
+    }
+
+    static FlatVectorIndex read(SnapshotInput in) throws IOException {
+        int dimension = in.readInt();
+        float[] vectors = in.readFloats();
+        return new FlatVectorIndex(dimension, vectors.length == 0 ? new float[dimension] : vectors,
+            vectors.length / dimension);
+    }
+
+    private void checkDimension(Embedding vector) {
+        if (vector.dimension() != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.dimension());
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) over unit-normalized float32
+ * vectors, scored by cosine similarity.
+ * <p>
+ * Each vector joins layers 0..L with L drawn from a geometric distribution; layer 0 keeps up to
+ * {@code 2 * m} neighbours per node, upper layers {@code m}. A new node picks its neighbours with
+ * the diversity heuristic so clusters stay connected. Queries descend greedily from the entry point and run a best-first
+ * search of width {@code efSearch} on layer 0; the returned scores are exact similarities.
+ * <p>
+ * Concurrency: one writer, lock-free readers. {@link #add} is synchronized; neighbour lists are
+ * immutable arrays replaced wholesale, and a node becomes visible only when {@code size} is
+ * published after it is fully linked. Readers snapshot {@code entry} then {@code size} and skip
+ * any neighbour id at or beyond that size, so a search during a build sees a consistent graph of
+ * the first {@code size} vectors.
+ */
+public final class HnswVectorIndex implements VectorIndex {
+
+    private static final int MAX_LEVEL = 16;
+    private static final int[] NO_NEIGHBOURS = new int[0];
+
+    private final int dimension;
+    private final int m;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+    private volatile int efSearch;
+
+    private float[] vectors;
+    private int[][][] neighbours;
+    // Published after the node it counts is fully linked
+    private volatile int size;
+    // Published after size, so a reader that sees an entry point also counts it
+    private volatile EntryPoint entry;
+
+    public HnswVectorIndex(int dimension, int m, int efConstruction, int efSearch) {
+        this(dimension, m, efConstruction, efSearch, 42L);
+    }
+
+    public HnswVectorIndex(int dimension, int m, int efConstruction, int efSearch, long seed) {
+        if (dimension <= 0 || m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: dimension=" + dimension
+                + ", m=" + m + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+        this.vectors = new float[64 * dimension];
+        this.neighbours = new int[64][][];
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Changes the layer-0 search width for subsequent queries; higher is slower with better recall.
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch must be at least 1");
+        }
+        this.efSearch = efSearch;
+    }
+
+    @Override
+    public synchronized int add(Embedding vector) {
+        checkDimension(vector);
+        float[] query = vector.normalize().toArray();
+        int id = size;
+        ensureCapacity(id + 1);
+        System.arraycopy(query, 0, vectors, id * dimension, dimension);
+
+        int level = randomLevel();
+        int[][] lists = new int[level + 1][];
+        Arrays.fill(lists, NO_NEIGHBOURS);
+        neighbours[id] = lists;
+
+        EntryPoint current = entry;
+        if (current == null) {
+            size = id + 1;
+            entry = new EntryPoint(id, level);
+            return id;
+        }
+
+        int count = id + 1;
+        int nearest = current.node;
+        for (int l = current.level; l > level; l--) {
+            nearest = greedyClosest(query, nearest, l, count, vectors, neighbours);
+        }
+        int[] entryPoints = {nearest};
+        for (int l = Math.min(level, current.level); l >= 0; l--) {
+            long[] found = searchLayer(query, entryPoints, efConstruction, l, count, vectors, neighbours)
+                .drainAscending();
+            int[] candidates = new int[found.length];
+            float[] scores = new float[found.length];
+            for (int i = 0; i < found.length; i++) {
+                long key = found[found.length - 1 - i];
+                candidates[i] = LongHeap.id(key);
+                scores[i] = LongHeap.score(key);
+            }
+            lists[l] = selectNeighbours(candidates, scores, maxNeighbours(l));
+            for (int neighbour : lists[l]) {
+                link(neighbour, id, l);
+            }
+            entryPoints = candidates;
+        }
+
+        size = id + 1;
+        if (level > current.level) {
+            entry = new EntryPoint(id, level);
+        }
+        return id;
+    }
+
+    @Override
+    public List<VectorHit> search(Embedding query, int topK) {
+        checkDimension(query);
+        EntryPoint current = entry;
+        int count = size;
+        if (current == null || topK < 1) {
+            return List.of();
+        }
+        float[] rows = vectors;
+        int[][][] graph = neighbours;
+        float[] normalized = query.normalize().toArray();
+
+        int nearest = current.node;
+        for (int l = current.level; l > 0; l--) {
+            nearest = greedyClosest(normalized, nearest, l, count, rows, graph);
+        }
+        long[] found = searchLayer(normalized, new int[] {nearest}, Math.max(efSearch, topK), 0, count, rows, graph)
+            .drainAscending();
+
+        int hits = Math.min(topK, found.length);
+        List<VectorHit> results = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            long key = found[found.length - 1 - i];
+            results.add(new VectorHit(LongHeap.id(key), LongHeap.score(key)));
+        }
+        return results;
+    }
+
+    @Override
+    public long memoryBytes() {
+        int count = size;
+        int[][][] graph = neighbours;
+        long links = 0;
+        for (int node = 0; node < count; node++) {
+            for (int[] list : graph[node]) {
+                links += list.length;
+            }
+        }
+        return (long) vectors.length * Float.BYTES + links * Integer.BYTES;
+    }
+
+    /**
+     * Writes the vectors and the graph as linked, so a restored index searches (and grows) exactly
+     * like this one without relinking a node.
+     */
+    @Override
+    public synchronized void writeTo(SnapshotOutput out) throws IOException {
+        out.writeByte(SnapshotInput.HNSW);
+        out.writeInt(dimension);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(efSearch);
+        int count = size;
+        EntryPoint current = entry;
+        out.writeInt(current == null ? -1 : current.node);
+        out.writeInt(current == null ? -1 : current.level);
+        out.writeFloats(vectors, 0, count * dimension);
+        for (int node = 0; node < count; node++) {
+            int[][] lists = neighbours[node];
+            out.writeByte(lists.length);
+            for (int[] list : lists) {
+                out.writeInts(list, 0, list.length);
+            }
+        }
+    }
+
+    static HnswVectorIndex read(SnapshotInput in) throws IOException {
+        HnswVectorIndex index = new HnswVectorIndex(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        int entryNode = in.readInt();
+        int entryLevel = in.readInt();
+        float[] vectors = in.readFloats();
+        int count = vectors.length / index.dimension;
+        if (count == 0) {
+            return index;
+        }
+        int[][][] neighbours = new int[count][][];
+        for (int node = 0; node < count; node++) {
+            int[][] lists = new int[in.readByte()][];
+            for (int level = 0; level < lists.length; level++) {
+                lists[level] = in.readInts();
+            }
+            neighbours[node] = lists;
+        }
+        index.vectors = vectors;
+        index.neighbours = neighbours;
+        index.size = count;
+        index.entry = new EntryPoint(entryNode, entryLevel);
+        return index;
+    }
+
+    private int greedyClosest(float[] query, int start, int level, int count, float[] rows, int[][][] graph) {
+        int best = start;
+        float bestScore = VectorMath.dot(query, 0, rows, start * dimension, dimension);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : neighboursOf(graph, best, level)) {
+                if (neighbour >= count) {
+                    continue;
+                }
+                float score = VectorMath.dot(query, 0, rows, neighbour * dimension, dimension);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Best-first search of one layer; returns up to {@code ef} nearest nodes as a min-heap of
+     * packed (score, id) keys, i.e. the weakest result on top.
+     */
+    private LongHeap searchLayer(float[] query, int[] entryPoints, int ef, int level, int count,
+                                 float[] rows, int[][][] graph) {
+        long[] visited = new long[(count + 63) >>> 6];
+        LongHeap frontier = new LongHeap(ef * 2);
+        LongHeap results = new LongHeap(ef + 1);
+        for (int node : entryPoints) {
+            if (node >= count || isVisited(visited, node)) {
+                continue;
+            }
+            markVisited(visited, node);
+            long key = LongHeap.key(VectorMath.dot(query, 0, rows, node * dimension, dimension), node);
+            frontier.push(~key);
+            results.push(key);
+            if (results.size() > ef) {
+                results.pop();
+            }
+        }
+
+        while (!frontier.isEmpty()) {
+            long closest = ~frontier.pop();
+            if (results.size() >= ef && LongHeap.score(closest) < LongHeap.score(results.peek())) {
+                break;
+            }
+            for (int neighbour : neighboursOf(graph, LongHeap.id(closest), level)) {
+                if (neighbour >= count || isVisited(visited, neighbour)) {
+                    continue;
+                }
+                markVisited(visited, neighbour);
+                float score = VectorMath.dot(query, 0, rows, neighbour * dimension, dimension);
+                if (results.size() < ef || score > LongHeap.score(results.peek())) {
+                    long key = LongHeap.key(score, neighbour);
+                    frontier.push(~key);
+                    results.push(key);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Diversity heuristic: walking candidates best first, keep one only if it is closer to the base
+     * than to every neighbour already kept; fill any remaining slots with the pruned candidates.
+     */
+    private int[] selectNeighbours(int[] candidates, float[] scores, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int kept = 0;
+        int[] pruned = new int[candidates.length];
+        int prunedCount = 0;
+        for (int i = 0; i < candidates.length && kept < selected.length; i++) {
+            boolean diverse = true;
+            for (int j = 0; j < kept; j++) {
+                if (rowDot(candidates[i], selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[kept++] = candidates[i];
+            } else {
+                pruned[prunedCount++] = candidates[i];
+            }
+        }
+        for (int i = 0; i < prunedCount && kept < selected.length; i++) {
+            selected[kept++] = pruned[i];
+        }
+        return kept == selected.length ? selected : Arrays.copyOf(selected, kept);
+    }
+
+    // Adds a back link; a full list keeps its most similar neighbours. Running the diversity
+    // heuristic here as well costs O(max^2) dot products per link and dominated build time for
+    // no measurable recall gain on our data, so it is reserved for the new node's own list.
+    private void link(int node, int newNeighbour, int level) {
+        int[] current = neighbours[node][level];
+        int max = maxNeighbours(level);
+        if (current.length < max) {
+            int[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = newNeighbour;
+            neighbours[node][level] = extended;
+            return;
+        }
+        float newScore = rowDot(node, newNeighbour);
+        int weakest = -1;
+        float weakestScore = newScore;
+        for (int i = 0; i < current.length; i++) {
+            float score = rowDot(node, current[i]);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = i;
+            }
+        }
+        if (weakest >= 0) {
+            int[] replaced = current.clone();
+            replaced[weakest] = newNeighbour;
+            neighbours[node][level] = replaced;
+        }
+    }
+
+    private float rowDot(int a, int b) {
+        return VectorMath.dot(vectors, a * dimension, vectors, b * dimension, dimension);
+    }
+
+    private static int[] neighboursOf(int[][][] graph, int node, int level) {
+        int[][] lists = graph[node];
+        return level < lists.length ? lists[level] : NO_NEIGHBOURS;
+    }
+
+    private int maxNeighbours(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private int randomLevel() {
+        double level = -Math.log(1.0 - random.nextDouble()) * levelMultiplier;
+        return (int) Math.min(MAX_LEVEL, level);
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes > neighbours.length) {
+            int capacity = Math.max(nodes, neighbours.length + (neighbours.length >> 1));
+            if ((long) capacity * dimension > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("HNSW index is full at " + size + " vectors");
+            }
+            // Copies are complete before the fields are swapped, so readers holding either see every published row
+            vectors = Arrays.copyOf(vectors, capacity * dimension);
+            neighbours = Arrays.copyOf(neighbours, capacity);
+        }
+    }
+
+    private void checkDimension(Embedding vector) {
+        if (vector.dimension() != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.dimension());
+        }
+    }
+
+    private static boolean isVisited(long[] visited, int node) {
+        return (visited[node >>> 6] & (1L << node)) != 0L;
+    }
+
+    private static void markVisited(long[] visited, int node) {
+        visited[node >>> 6] |= 1L << node;
+    }
+
+    private static final class EntryPoint {
+        final int node;
+        final int level;
+
+        EntryPoint(int node, int level) {
+            this.node = node;
+            this.level = level;
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Inverted-file index over product-quantized residuals (IVF-PQ), for corpora too large to hold as
+ * float vectors.
+ * <p>
+ * A coarse quantizer of {@code nlist} centroids (spherical k-means) splits the unit vectors into
+ * inverted lists. Each vector is stored in the list of its nearest centroid as {@code m} one-byte
+ * codes: its residual (vector minus centroid) is cut into {@code m} slices and each slice is
+ * replaced by the nearest of 256 codewords trained for that slice. Lists live in direct buffers,
+ * {@code m + 4} bytes per vector (codes and ordinal) off the heap.
+ * <p>
+ * A search ranks the centroids, scans the {@code nprobe} best lists and scores each entry by
+ * asymmetric distance: the query's dot product with the list centroid plus, per slice, a table
+ * lookup of the query slice against the entry's codeword. The table is built once per query, as
+ * dot products do not depend on the centroid. Scores approximate the cosine similarity, unless
+ * the index is built {@link #over} a {@link FlatSegment}, whose row {@code i} is ordinal {@code i}:
+ * then the best {@code topK * refine} entries are rescored exactly against the mapped rows, which
+ * only pages in those rows. PQ scores alone are coarse (recall@5 about 0.6 at m 192), so refining
+ * is what makes the index usable for retrieval. An index over a segment holds exactly its rows
+ * and rejects {@link #add}, like the segment itself.
+ * <p>
+ * Until it is trained the index keeps its vectors as floats and searches them exactly. It trains
+ * itself once it holds {@code trainSize} vectors, or when {@link #train} is called, then encodes
+ * what it holds and drops the floats. Single writer, like every {@link VectorIndex}.
+ */
+public final class IvfPqIndex implements VectorIndex {
+
+    /**
+     * Fewer vectors than codewords per slice cannot train a codebook.
+     */
+    public static final int MIN_TRAINING_SIZE = 256;
+
+    private static final int CODEWORDS = 256;
+    private static final int TRAINING_ITERATIONS = 10;
+    // Points per coarse centroid below which k-means clusters are mostly noise
+    private static final int MIN_POINTS_PER_LIST = 39;
+    private static final long SEED = 42L;
+
+    private final int dimension;
+    private final int nlist;
+    private volatile int nprobe;
+    private final int m;
+    private final int subDimension;
+    private final int trainSize;
+    private final int entryBytes;
+    // Full-precision rows for exact rescoring, or null
+    private final FlatSegment refineRows;
+    private final int refine;
+
+    // Unit vectors added before training, row after row; null once trained
+    private volatile float[] staged;
+    // Set once by train(), after every staged vector is encoded
+    private volatile Quantizer quantizer;
+    // Written after the data it covers, so readers that see a size also see its vectors
+    private volatile int size;
+
+    public IvfPqIndex(int dimension, int nlist, int nprobe, int m, int trainSize) {
+        this(dimension, nlist, nprobe, m, trainSize, null, 1);
+    }
+
+    private IvfPqIndex(int dimension, int nlist, int nprobe, int m, int trainSize, FlatSegment refineRows, int refine) {
+        if (m < 1 || dimension % m != 0) {
+            throw new IllegalArgumentException("Dimension " + dimension + " is not divisible into " + m + " slices");
+        }
+        if (nlist < 1 || nprobe < 1) {
+            throw new IllegalArgumentException("nlist and nprobe must be at least 1");
+        }
+        this.dimension = dimension;
+        this.nlist = nlist;
+        this.nprobe = nprobe;
+        this.m = m;
+        this.subDimension = dimension / m;
+        this.trainSize = Math.max(MIN_TRAINING_SIZE, trainSize);
+        this.entryBytes = Integer.BYTES + m;
+        this.refineRows = refineRows;
+        this.refine = Math.max(1, refine);
+        this.staged = new float[64 * dimension];
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Index of every row of {@code rows}, rescoring the best {@code topK * refine} candidates of a
+     * search against them. Trains once it holds {@code trainSize} rows; call {@link #train} for
+     * fewer.
+     */
+    public static IvfPqIndex over(FlatSegment rows, int nlist, int nprobe, int m, int trainSize, int refine) {
+        IvfPqIndex index = new IvfPqIndex(rows.dimension(), nlist, nprobe, m, trainSize, rows, refine);
+        for (int i = 0; i < rows.size(); i++) {
+            index.append(rows.vector(i));
+        }
+        return index;
+    }
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    /**
+     * Changes how many lists subsequent queries scan; more is slower with better recall.
+     */
+    public void setNprobe(int nprobe) {
+        if (nprobe < 1) {
+            throw new IllegalArgumentException("nprobe must be at least 1");
+        }
+        this.nprobe = nprobe;
+    }
+
+    public boolean isTrained() {
+        return quantizer != null;
+    }
+
+    @Override
+    public int add(Embedding vector) {
+        if (refineRows != null) {
+            throw new UnsupportedOperationException("An index over a vector segment holds exactly its rows; "
+                + "write a new segment instead");
+        }
+        return append(vector);
+    }
+
+    private int append(Embedding vector) {
+        checkDimension(vector);
+        float[] normalized = vector.normalize().toArray();
+        int id = size;
+        Quantizer trained = quantizer;
+        if (trained != null) {
+            trained.append(id, normalized);
+            size = id + 1;
+            return id;
+        }
+        float[] rows = staged;
+        if ((long) (id + 1) * dimension > rows.length) {
+            int capacity = Math.max(id + 1, Math.min(trainSize, rows.length / dimension * 2));
+            rows = Arrays.copyOf(rows, capacity * dimension);
+            staged = rows;
+        }
+        System.arraycopy(normalized, 0, rows, id * dimension, dimension);
+        size = id + 1;
+        if (size == trainSize) {
+            train();
+        }
+        return id;
+    }
+
+    /**
+     * Trains the quantizers on the vectors added so far and encodes them. Searches in flight keep
+     * reading the floats until the trained lists are published.
+     */
+    public void train() {
+        if (quantizer != null) {
+            throw new IllegalStateException("Index is already trained");
+        }
+        int count = size;
+        if (count < MIN_TRAINING_SIZE) {
+            throw new IllegalStateException("Training needs at least " + MIN_TRAINING_SIZE + " vectors, got " + count);
+        }
+        float[] rows = staged;
+        int lists = Math.max(1, Math.min(nlist, count / MIN_POINTS_PER_LIST));
+        Random random = new Random(SEED);
+
+        float[] centroids = sphericalKMeans(rows, count, lists, random);
+        int[] assignment = new int[count];
+        IntStream.range(0, count).parallel()
+            .forEach(i -> assignment[i] = nearestCentroid(centroids, lists, rows, i * dimension));
+        float[] residuals = new float[count * dimension];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            for (int d = 0; d < dimension; d++) {
+                residuals[i * dimension + d] = rows[i * dimension + d] - centroids[assignment[i] * dimension + d];
+            }
+        });
+        float[] codebooks = new float[m * CODEWORDS * subDimension];
+        IntStream.range(0, m).parallel()
+            .forEach(slice -> trainCodebook(residuals, count, slice, codebooks, new Random(SEED + slice)));
+
+        Quantizer trained = new Quantizer(centroids, lists, codebooks);
+        int[] listOf = new int[count];
+        byte[] codes = new byte[count * m];
+        IntStream.range(0, count).parallel()
+            .forEach(id -> listOf[id] = trained.encode(rows, id * dimension, codes, id * m));
+        for (int id = 0; id < count; id++) {
+            trained.invertedLists[listOf[id]].append(id, codes, id * m);
+        }
+        quantizer = trained;
+        staged = null;
+    }
+
+    @Override
+    public List<VectorHit> search(Embedding query, int topK) {
+        return search(query, topK, nprobe);
+    }
+
+    /**
+     * Search scanning the {@code probes} nearest lists instead of the configured {@code nprobe}.
+     */
+    public List<VectorHit> search(Embedding query, int topK, int probes) {
+        checkDimension(query);
+        // Read in publication order: size, then the floats it covers, then quantizer, which is set
+        // before the floats are cleared
+        int count = size;
+        float[] rows = staged;
+        Quantizer trained = quantizer;
+        if (count == 0 || topK < 1) {
+            return List.of();
+        }
+        float[] normalized = query.normalize().toArray();
+        if (trained != null && refineRows != null) {
+            TopKHeap candidates = new TopKHeap((int) Math.min(count, (long) topK * refine));
+            trained.scan(normalized, Math.max(1, probes), candidates);
+            Embedding exact = Embedding.wrap(normalized);
+            TopKHeap top = new TopKHeap(Math.min(topK, candidates.size()));
+            for (int id : candidates.sortedIds()) {
+                top.offer(id, refineRows.score(exact, id));
+            }
+            return top.toSortedHits();
+        }
+        TopKHeap heap = new TopKHeap(Math.min(topK, count));
+        if (trained != null) {
+            trained.scan(normalized, Math.max(1, probes), heap);
+        } else {
+            for (int id = 0; id < count; id++) {
+                heap.offer(id, VectorMath.dot(normalized, 0, rows, id * dimension, dimension));
+            }
+        }
+        return heap.toSortedHits();
+    }
+
+    /**
+     * Heap bytes: the float vectors before training, the centroids and codebooks after.
+     */
+    @Override
+    public long memoryBytes() {
+        Quantizer trained = quantizer;
+        if (trained == null) {
+            float[] rows = staged;
+            return rows == null ? 0 : (long) rows.length * Float.BYTES;
+        }
+        return (long) (trained.centroids.length + trained.codebooks.length) * Float.BYTES;
+    }
+
+    /**
+     * Direct-buffer bytes reserved by the inverted lists.
+     */
+    public long offHeapBytes() {
+        Quantizer trained = quantizer;
+        if (trained == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (InvertedList list : trained.invertedLists) {
+            bytes += list.entries.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Off-heap bytes per encoded vector: {@code m} codes and an int ordinal.
+     */
+    public int bytesPerVector() {
+        return entryBytes;
+    }
+
+    /**
+     * Writes the trained quantizers and the codes (or, untrained, the staged floats). The refine
+     * rows are written as a reference into their segment, like {@link FlatSegment#writeTo}.
+     */
+    @Override
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.writeByte(SnapshotInput.IVF_PQ);
+        out.writeInt(dimension);
+        out.writeInt(nlist);
+        out.writeInt(nprobe);
+        out.writeInt(m);
+        out.writeInt(trainSize);
+        out.writeInt(refine);
+        out.writeInt(refineRows == null ? -1 : refineRows.firstRow());
+        out.writeInt(refineRows == null ? 0 : refineRows.size());
+        int count = size;
+        Quantizer trained = quantizer;
+        out.writeInt(count);
+        out.writeBoolean(trained != null);
+        if (trained == null) {
+            out.writeFloats(staged, 0, count * dimension);
+            return;
+        }
+        out.writeFloats(trained.centroids, 0, trained.lists * dimension);
+        out.writeFloats(trained.codebooks, 0, trained.codebooks.length);
+        for (InvertedList list : trained.invertedLists) {
+            int entries = list.count;
+            byte[] bytes = new byte[entries * entryBytes];
+            list.entries.get(0, bytes);
+            // Entries are in native order; ordinals are rewritten big-endian so snapshots are portable
+            int[] ordinals = new int[entries];
+            for (int e = 0; e < entries; e++) {
+                ordinals[e] = list.entries.getInt(e * entryBytes);
+            }
+            out.writeInts(ordinals, 0, entries);
+            out.writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    static IvfPqIndex read(SnapshotInput in, FlatSegment segment) throws IOException {
+        int dimension = in.readInt();
+        int nlist = in.readInt();
+        int nprobe = in.readInt();
+        int m = in.readInt();
+        int trainSize = in.readInt();
+        int refine = in.readInt();
+        int refineFrom = in.readInt();
+        int refineCount = in.readInt();
+        FlatSegment refineRows = null;
+        if (refineFrom >= 0) {
+            if (segment == null || refineFrom + refineCount > segment.size()) {
+                throw new IOException("Snapshot " + in.getPath() + " refines against rows of a vector segment it was not restored with");
+            }
+            refineRows = segment.slice(refineFrom, refineFrom + refineCount);
+        }
+        IvfPqIndex index = new IvfPqIndex(dimension, nlist, nprobe, m, trainSize, refineRows, refine);
+        int count = in.readInt();
+        if (!in.readBoolean()) {
+            float[] staged = in.readFloats();
+            index.staged = staged.length == 0 ? index.staged : staged;
+            index.size = count;
+            return index;
+        }
+        float[] centroids = in.readFloats();
+        Quantizer trained = index.new Quantizer(centroids, centroids.length / dimension, in.readFloats());
+        for (InvertedList list : trained.invertedLists) {
+            int[] ordinals = in.readInts();
+            byte[] bytes = in.readBytes();
+            list.restore(ordinals, bytes);
+        }
+        index.quantizer = trained;
+        index.staged = null;
+        index.size = count;
+        return index;
+    }
+
+    private float[] sphericalKMeans(float[] rows, int count, int k, Random random) {
+        float[] centroids = new float[k * dimension];
+        int[] seeds = sample(count, k, random);
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(rows, seeds[c] * dimension, centroids, c * dimension, dimension);
+        }
+        int[] assignment = new int[count];
+        for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+            float[] current = centroids;
+            IntStream.range(0, count).parallel()
+                .forEach(i -> assignment[i] = nearestCentroid(current, k, rows, i * dimension));
+            float[] sums = new float[k * dimension];
+            int[] members = new int[k];
+            for (int i = 0; i < count; i++) {
+                int c = assignment[i];
+                members[c]++;
+                for (int d = 0; d < dimension; d++) {
+                    sums[c * dimension + d] += rows[i * dimension + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (members[c] == 0) {
+                    // Empty cluster: restart it from a random vector
+                    System.arraycopy(rows, random.nextInt(count) * dimension, sums, c * dimension, dimension);
+                }
+                normalize(sums, c * dimension, dimension);
+            }
+            centroids = sums;
+        }
+        return centroids;
+    }
+
+    private int nearestCentroid(float[] centroids, int k, float[] vector, int offset) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float score = VectorMath.dot(vector, offset, centroids, c * dimension, dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // Euclidean k-means over one slice of the residuals, written into that slice's codebook
+    private void trainCodebook(float[] residuals, int count, int slice, float[] codebooks, Random random) {
+        int from = slice * subDimension;
+        int book = slice * CODEWORDS * subDimension;
+        int[] seeds = sample(count, CODEWORDS, random);
+        for (int w = 0; w < CODEWORDS; w++) {
+            System.arraycopy(residuals, seeds[w] * dimension + from, codebooks, book + w * subDimension, subDimension);
+        }
+        int[] assignment = new int[count];
+        float[] norms = new float[CODEWORDS];
+        for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+            codewordNorms(codebooks, book, norms);
+            for (int i = 0; i < count; i++) {
+                assignment[i] = nearestCodeword(codebooks, book, norms, residuals, i * dimension + from);
+            }
+            float[] sums = new float[CODEWORDS * subDimension];
+            int[] members = new int[CODEWORDS];
+            for (int i = 0; i < count; i++) {
+                int w = assignment[i];
+                members[w]++;
+                for (int d = 0; d < subDimension; d++) {
+                    sums[w * subDimension + d] += residuals[i * dimension + from + d];
+                }
+            }
+            for (int w = 0; w < CODEWORDS; w++) {
+                int target = book + w * subDimension;
+                if (members[w] == 0) {
+                    System.arraycopy(residuals, random.nextInt(count) * dimension + from, codebooks, target, subDimension);
+                    continue;
+                }
+                for (int d = 0; d < subDimension; d++) {
+                    codebooks[target + d] = sums[w * subDimension + d] / members[w];
+                }
+            }
+        }
+    }
+
+    private void codewordNorms(float[] codebooks, int book, float[] norms) {
+        for (int w = 0; w < CODEWORDS; w++) {
+            int at = book + w * subDimension;
+            norms[w] = VectorMath.dot(codebooks, at, codebooks, at, subDimension);
+        }
+    }
+
+    // Minimizes |x - c|^2 = |x|^2 - 2 x.c + |c|^2, dropping the constant |x|^2
+    private int nearestCodeword(float[] codebooks, int book, float[] norms, float[] vector, int offset) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int w = 0; w < CODEWORDS; w++) {
+            float distance = norms[w] - 2 * VectorMath.dot(vector, offset, codebooks, book + w * subDimension, subDimension);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = w;
+            }
+        }
+        return best;
+    }
+
+    // k distinct indexes below count when possible, repeating only if count < k
+    private static int[] sample(int count, int k, Random random) {
+        int[] order = IntStream.range(0, count).toArray();
+        int[] picked = new int[k];
+        for (int i = 0; i < k; i++) {
+            if (i < count) {
+                int j = i + random.nextInt(count - i);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+                picked[i] = order[i];
+            } else {
+                picked[i] = order[random.nextInt(count)];
+            }
+        }
+        return picked;
+    }
+
+    private static void normalize(float[] values, int offset, int length) {
+        float norm = (float) Math.sqrt(VectorMath.dot(values, offset, values, offset, length));
+        if (norm > 0f) {
+            for (int i = 0; i < length; i++) {
+                values[offset + i] /= norm;
+            }
+        }
+    }
+
+    private void checkDimension(Embedding vector) {
+        if (vector.dimension() != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.dimension());
+        }
+    }
+
+    // Trained coarse centroids, codebooks and the inverted lists they fill
+    private final class Quantizer {
+        private final float[] centroids;
+        private final int lists;
+        private final float[] codebooks;
+        private final float[] codewordNorms;
+        private final InvertedList[] invertedLists;
+
+        private Quantizer(float[] centroids, int lists, float[] codebooks) {
+            this.centroids = centroids;
+            this.lists = lists;
+            this.codebooks = codebooks;
+            this.codewordNorms = new float[m * CODEWORDS];
+            for (int slice = 0; slice < m; slice++) {
+                float[] norms = new float[CODEWORDS];
+                codewordNorms(codebooks, slice * CODEWORDS * subDimension, norms);
+                System.arraycopy(norms, 0, codewordNorms, slice * CODEWORDS, CODEWORDS);
+            }
+            this.invertedLists = new InvertedList[lists];
+            for (int c = 0; c < lists; c++) {
+                invertedLists[c] = new InvertedList(entryBytes);
+            }
+        }
+
+        private void append(int id, float[] normalized) {
+            byte[] codes = new byte[m];
+            int list = encode(normalized, 0, codes, 0);
+            invertedLists[list].append(id, codes, 0);
+        }
+
+        // Writes the m codes of the unit vector at vectors[offset] to codes[at] and returns its list
+        private int encode(float[] vectors, int offset, byte[] codes, int at) {
+            int list = nearestCentroid(centroids, lists, vectors, offset);
+            float[] residual = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                residual[d] = vectors[offset + d] - centroids[list * dimension + d];
+            }
+            float[] norms = new float[CODEWORDS];
+            for (int slice = 0; slice < m; slice++) {
+                System.arraycopy(codewordNorms, slice * CODEWORDS, norms, 0, CODEWORDS);
+                codes[at + slice] = (byte) nearestCodeword(codebooks, slice * CODEWORDS * subDimension, norms,
+                    residual, slice * subDimension);
+            }
+            return list;
+        }
+
+        private void scan(float[] query, int nprobe, TopKHeap heap) {
+            TopKHeap probes = new TopKHeap(Math.min(nprobe, lists));
+            for (int c = 0; c < lists; c++) {
+                probes.offer(c, VectorMath.dot(query, 0, centroids, c * dimension, dimension));
+            }
+            // table[slice * 256 + w]: query slice . codeword w of that slice
+            float[] table = new float[m * CODEWORDS];
+            for (int slice = 0; slice < m; slice++) {
+                for (int w = 0; w < CODEWORDS; w++) {
+                    table[slice * CODEWORDS + w] = VectorMath.dot(query, slice * subDimension,
+                        codebooks, (slice * CODEWORDS + w) * subDimension, subDimension);
+                }
+            }
+            for (VectorHit probe : probes.toSortedHits()) {
+                InvertedList list = invertedLists[probe.getId()];
+                // count before entries: a buffer read after the count holds at least that many entries
+                int count = list.count;
+                ByteBuffer entries = list.entries;
+                float base = probe.getScore();
+                for (int e = 0, at = 0; e < count; e++, at += entryBytes) {
+                    float score = base;
+                    for (int slice = 0, code = at + Integer.BYTES; slice < m; slice++, code++) {
+                        score += table[slice * CODEWORDS + (entries.get(code) & 0xFF)];
+                    }
+                    heap.offer(entries.getInt(at), score);
+                }
+            }
+        }
+    }
+
+    // Entries of (int ordinal, m codes) in a direct buffer, grown by half and copied as it fills
+    private static final class InvertedList {
+        private final int entryBytes;
+        private volatile ByteBuffer entries;
+        private volatile int count;
+
+        private InvertedList(int entryBytes) {
+            this.entryBytes = entryBytes;
+            this.entries = ByteBuffer.allocateDirect(16 * entryBytes).order(ByteOrder.nativeOrder());
+        }
+
+        // Replaces an empty list with the given entries, laid out as append writes them
+        private void restore(int[] ordinals, byte[] bytes) {
+            ByteBuffer restored = ByteBuffer.allocateDirect(Math.max(16 * entryBytes, bytes.length))
+                .order(ByteOrder.nativeOrder());
+            restored.put(0, bytes);
+            for (int e = 0; e < ordinals.length; e++) {
+                restored.putInt(e * entryBytes, ordinals[e]);
+            }
+            entries = restored;
+            count = ordinals.length;
+        }
+
+        private void append(int id, byte[] codes, int from) {
+            int at = count * entryBytes;
+            ByteBuffer target = entries;
+            if (at + entryBytes > target.capacity()) {
+                int capacity = (count + (count >> 1)) * entryBytes;
+                ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+                grown.put(target.duplicate().position(0).limit(at));
+                entries = grown;
+                target = grown;
+            }
+            target.putInt(at, id);
+            target.put(at + Integer.BYTES, codes, from, entryBytes - Integer.BYTES);
+            count++;
+        }
+    }
+}
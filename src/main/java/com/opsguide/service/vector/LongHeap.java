@@ -0,0 +1,97 @@
+package com.opsguide.service.vector;
+
+import java.util.Arrays;
+
+/**
+ * Growable binary min-heap of {@code long}s; graph searches pack (score, id) into one long so the
+ * frontier needs no per-entry objects. Store {@code ~key} to get max-heap order.
+ */
+final class LongHeap {
+
+    private long[] heap;
+    private int size;
+
+    LongHeap(int initialCapacity) {
+        this.heap = new long[Math.max(4, initialCapacity)];
+    }
+
+    void push(long value) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    long peek() {
+        return heap[0];
+    }
+
+    long pop() {
+        long top = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (size > 0) {
+            heap[i] = last;
+        }
+        return top;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Empties the heap, returning its values in ascending order.
+     */
+    long[] drainAscending() {
+        long[] values = new long[size];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = pop();
+        }
+        return values;
+    }
+
+    /**
+     * Packs a score and id into a long whose natural order is score order (then id).
+     */
+    static long key(float score, int id) {
+        int bits = Float.floatToIntBits(score);
+        bits ^= (bits >> 31) & 0x7FFFFFFF;
+        return ((long) bits << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    static float score(long key) {
+        int bits = (int) (key >> 32);
+        bits ^= (bits >> 31) & 0x7FFFFFFF;
+        return Float.intBitsToFloat(bits);
+    }
+
+    static int id(long key) {
+        return (int) key;
+    }
+}
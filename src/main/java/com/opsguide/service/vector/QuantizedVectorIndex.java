@@ -0,0 +1,316 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Two-stage index: a compact quantized scan finds candidates, full-precision vectors rank them.
+ * <p>
+ * {@link Quantization#INT8} stores each unit vector as one signed byte per dimension plus a scale
+ * (4x smaller than float32) and scans with an integer dot product. {@link Quantization#BINARY}
+ * keeps only the sign of each dimension (32x smaller) and scans by Hamming distance. Either scan
+ * keeps {@code topK * oversample} candidates, which are then rescored exactly, so the final
+ * scores are true cosine similarities and only the candidate set is approximate.
+ * <p>
+ * Only the codes are on the heap. An index built {@link #over} a {@link FlatSegment} rescores
+ * against its mapped rows, which pages in just the candidates; like the segment, it holds exactly
+ * its rows and rejects {@link #add}. An index filled with {@link #add} keeps its float rows in a
+ * direct buffer instead.
+ */
+public final class QuantizedVectorIndex implements VectorIndex {
+
+    public enum Quantization { INT8, BINARY }
+
+    private static final BufferDotKernel KERNEL = BufferDotKernel.select();
+
+    private final Quantization quantization;
+    private final int dimension;
+    private final int words;
+    private final int oversample;
+    // Full-precision rows for rescoring; null when the rows are added to this index
+    private final FlatSegment segmentRows;
+
+    private byte[] codes;
+    private float[] steps;
+    private long[] bits;
+    // Unit rows added to this index, little-endian float32 off the heap; null over a segment
+    private ByteBuffer addedRows;
+    // Written after the codes it covers, so readers that see a size also see its codes
+    private volatile int size;
+
+    public QuantizedVectorIndex(int dimension, Quantization quantization, int oversample) {
+        this(dimension, quantization, oversample, null, 64);
+    }
+
+    private QuantizedVectorIndex(int dimension, Quantization quantization, int oversample, FlatSegment segmentRows,
+                                 int capacity) {
+        if (oversample < 1) {
+            throw new IllegalArgumentException("Oversample must be at least 1");
+        }
+        this.quantization = quantization;
+        this.dimension = dimension;
+        this.words = (dimension + Long.SIZE - 1) / Long.SIZE;
+        this.oversample = oversample;
+        this.segmentRows = segmentRows;
+        capacity = Math.max(1, capacity);
+        if (quantization == Quantization.INT8) {
+            this.codes = new byte[capacity * dimension];
+            this.steps = new float[capacity];
+        } else {
+            this.bits = new long[capacity * words];
+        }
+        if (segmentRows == null) {
+            this.addedRows = allocateRows(capacity);
+        }
+    }
+
+    /**
+     * Index of every row of {@code rows}, rescoring the candidates of a search against them.
+     */
+    public static QuantizedVectorIndex over(FlatSegment rows, Quantization quantization, int oversample) {
+        QuantizedVectorIndex index = new QuantizedVectorIndex(rows.dimension(), quantization, oversample, rows,
+            rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            index.encode(i, rows.vector(i));
+        }
+        index.size = rows.size();
+        return index;
+    }
+
+    public Quantization getQuantization() {
+        return quantization;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int add(Embedding vector) {
+        if (segmentRows != null) {
+            throw new UnsupportedOperationException("An index over a vector segment holds exactly its rows; "
+                + "write a new segment instead");
+        }
+        if (vector.dimension() != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.dimension());
+        }
+        Embedding normalized = vector.normalize();
+        int id = size;
+        int rowBytes = dimension * Float.BYTES;
+        if ((long) (id + 1) * rowBytes > addedRows.capacity()) {
+            int capacity = grow(id, addedRows.capacity() / rowBytes);
+            ByteBuffer grown = allocateRows(capacity);
+            grown.put(0, addedRows, 0, id * rowBytes);
+            addedRows = grown;
+            if (quantization == Quantization.INT8) {
+                codes = Arrays.copyOf(codes, capacity * dimension);
+                steps = Arrays.copyOf(steps, capacity);
+            } else {
+                bits = Arrays.copyOf(bits, capacity * words);
+            }
+        }
+        encode(id, normalized);
+        for (int i = 0; i < dimension; i++) {
+            addedRows.putFloat(id * rowBytes + i * Float.BYTES, normalized.get(i));
+        }
+        size = id + 1;
+        return id;
+    }
+
+    @Override
+    public List<VectorHit> search(Embedding query, int topK) {
+        if (query.dimension() != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + query.dimension());
+        }
+        int count = size;
+        if (count == 0 || topK < 1) {
+            return List.of();
+        }
+        Embedding normalized = query.normalize();
+        TopKHeap candidates = new TopKHeap((int) Math.min(count, (long) topK * oversample));
+        if (quantization == Quantization.INT8) {
+            scanInt8(normalized, count, candidates);
+        } else {
+            scanBinary(normalized, count, candidates);
+        }
+
+        TopKHeap top = new TopKHeap(Math.min(topK, candidates.size()));
+        float[] exact = normalized.toArray();
+        ByteBuffer rows = addedRows;
+        for (int id : candidates.sortedIds()) {
+            top.offer(id, segmentRows != null
+                ? segmentRows.score(normalized, id)
+                : KERNEL.dot(exact, rows, id * dimension * Float.BYTES, dimension));
+        }
+        return top.toSortedHits();
+    }
+
+    /**
+     * Bytes held by the quantized codes alone, i.e. what the candidate scan reads.
+     */
+    public long codeBytes() {
+        return quantization == Quantization.INT8
+            ? (long) codes.length + (long) steps.length * Float.BYTES
+            : (long) bits.length * Long.BYTES;
+    }
+
+    /**
+     * The codes; the float rows are mapped or in a direct buffer.
+     */
+    @Override
+    public long memoryBytes() {
+        return codeBytes();
+    }
+
+    /**
+     * Writes the codes, then the rows as a reference into their segment like
+     * {@link FlatSegment#writeTo}, or as floats for rows added to this index.
+     */
+    @Override
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.writeByte(SnapshotInput.QUANTIZED);
+        out.writeInt(dimension);
+        out.writeByte(quantization.ordinal());
+        out.writeInt(oversample);
+        int count = size;
+        if (quantization == Quantization.INT8) {
+            out.writeBytes(codes, 0, count * dimension);
+            out.writeFloats(steps, 0, count);
+        } else {
+            out.writeLongs(bits, 0, count * words);
+        }
+        out.writeInt(segmentRows == null ? -1 : segmentRows.firstRow());
+        if (segmentRows == null) {
+            float[] rows = new float[count * dimension];
+            addedRows.asFloatBuffer().get(0, rows);
+            out.writeFloats(rows, 0, rows.length);
+        }
+    }
+
+    static QuantizedVectorIndex read(SnapshotInput in, FlatSegment segment) throws IOException {
+        int dimension = in.readInt();
+        Quantization quantization = Quantization.values()[in.readByte()];
+        int oversample = in.readInt();
+        byte[] codes = null;
+        float[] steps = null;
+        long[] bits = null;
+        int count;
+        if (quantization == Quantization.INT8) {
+            codes = in.readBytes();
+            steps = in.readFloats();
+            count = steps.length;
+        } else {
+            bits = in.readLongs();
+            count = bits.length / ((dimension + Long.SIZE - 1) / Long.SIZE);
+        }
+        int from = in.readInt();
+        QuantizedVectorIndex index;
+        if (from >= 0) {
+            if (segment == null || from + count > segment.size()) {
+                throw new IOException("Snapshot " + in.getPath() + " rescores against rows of a vector segment it was "
+                    + "not restored with");
+            }
+            index = new QuantizedVectorIndex(dimension, quantization, oversample, segment.slice(from, from + count), 1);
+        } else {
+            float[] rows = in.readFloats();
+            // Empty arrays would never grow; the constructor's capacity covers them
+            index = new QuantizedVectorIndex(dimension, quantization, oversample, null, Math.max(64, count));
+            index.addedRows.asFloatBuffer().put(rows);
+        }
+        if (count > 0) {
+            if (quantization == Quantization.INT8) {
+                index.codes = codes;
+                index.steps = steps;
+            } else {
+                index.bits = bits;
+            }
+        }
+        index.size = count;
+        return index;
+    }
+
+    private void encode(int id, Embedding normalized) {
+        if (quantization == Quantization.INT8) {
+            steps[id] = quantizeInt8(normalized, codes, id * dimension);
+        } else {
+            quantizeBinary(normalized, bits, id * words);
+        }
+    }
+
+    private ByteBuffer allocateRows(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void scanInt8(Embedding query, int count, TopKHeap candidates) {
+        byte[] queryCodes = new byte[dimension];
+        float queryStep = quantizeInt8(query, queryCodes, 0);
+        byte[] rows = codes;
+        float[] rowSteps = steps;
+        for (int id = 0; id < count; id++) {
+            int offset = id * dimension;
+            int dot = 0;
+            for (int i = 0; i < dimension; i++) {
+                dot += queryCodes[i] * rows[offset + i];
+            }
+            candidates.offer(id, dot * queryStep * rowSteps[id]);
+        }
+    }
+
+    private void scanBinary(Embedding query, int count, TopKHeap candidates) {
+        long[] queryBits = new long[words];
+        quantizeBinary(query, queryBits, 0);
+        long[] rows = bits;
+        for (int id = 0; id < count; id++) {
+            int offset = id * words;
+            int distance = 0;
+            for (int w = 0; w < words; w++) {
+                distance += Long.bitCount(queryBits[w] ^ rows[offset + w]);
+            }
+            candidates.offer(id, -distance);
+        }
+    }
+
+    /**
+     * Symmetric per-vector scalar quantization: value ~= code * step with codes in [-127, 127].
+     * Returns the step.
+     */
+    private static float quantizeInt8(Embedding vector, byte[] target, int offset) {
+        float maxAbs = 0f;
+        for (int i = 0; i < vector.dimension(); i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(vector.get(i)));
+        }
+        if (maxAbs == 0f) {
+            Arrays.fill(target, offset, offset + vector.dimension(), (byte) 0);
+            return 0f;
+        }
+        float scale = 127f / maxAbs;
+        for (int i = 0; i < vector.dimension(); i++) {
+            target[offset + i] = (byte) Math.round(vector.get(i) * scale);
+        }
+        return maxAbs / 127f;
+    }
+
+    private void quantizeBinary(Embedding vector, long[] target, int offset) {
+        Arrays.fill(target, offset, offset + words, 0L);
+        for (int i = 0; i < dimension; i++) {
+            if (vector.get(i) > 0f) {
+                target[offset + (i >>> 6)] |= 1L << (i & 63);
+            }
+        }
+    }
+
+    private static int grow(int needed, int capacity) {
+        return Math.max(needed + 1, capacity + (capacity >> 1));
+    }
+}
@@ -0,0 +1,41 @@
+package com.opsguide.service.vector;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges ranked hit lists by reciprocal rank fusion: a hit at 1-based rank {@code r} in a list
+ * contributes {@code 1 / (k + r)}. Only ranks are used, so lists scored on unrelated scales (BM25
+ * and cosine) fuse without calibration. Fused scores are divided by the best possible score (rank 1
+ * in every list) to fall in (0, 1].
+ */
+public final class ReciprocalRankFusion {
+
+    public static final int DEFAULT_K = 60;
+
+    private ReciprocalRankFusion() {
+    }
+
+    @SafeVarargs
+    public static List<VectorHit> fuse(int k, int topK, List<VectorHit>... rankings) {
+        if (topK < 1) {
+            return List.of();
+        }
+        Map<Integer, float[]> fused = new LinkedHashMap<>();
+        for (List<VectorHit> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                fused.computeIfAbsent(ranking.get(rank).getId(), id -> new float[1])[0] += 1f / (k + rank + 1);
+            }
+        }
+        if (fused.isEmpty()) {
+            return List.of();
+        }
+        float best = rankings.length / (float) (k + 1);
+        TopKHeap heap = new TopKHeap(Math.min(topK, fused.size()));
+        for (Map.Entry<Integer, float[]> entry : fused.entrySet()) {
+            heap.offer(entry.getKey(), entry.getValue()[0] / best);
+        }
+        return heap.toSortedHits();
+    }
+}
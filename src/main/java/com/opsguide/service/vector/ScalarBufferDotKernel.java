@@ -0,0 +1,42 @@
+package com.opsguide.service.vector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Portable kernel: eight independent accumulators, as in {@link VectorMath#dot}.
+ */
+final class ScalarBufferDotKernel implements BufferDotKernel {
+
+    @Override
+    public float dot(float[] query, ByteBuffer rows, int byteOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        float s4 = 0f;
+        float s5 = 0f;
+        float s6 = 0f;
+        float s7 = 0f;
+        int i = 0;
+        int at = byteOffset;
+        for (int bound = length & ~7; i < bound; i += 8, at += 8 * Float.BYTES) {
+            s0 += query[i] * rows.getFloat(at);
+            s1 += query[i + 1] * rows.getFloat(at + 4);
+            s2 += query[i + 2] * rows.getFloat(at + 8);
+            s3 += query[i + 3] * rows.getFloat(at + 12);
+            s4 += query[i + 4] * rows.getFloat(at + 16);
+            s5 += query[i + 5] * rows.getFloat(at + 20);
+            s6 += query[i + 6] * rows.getFloat(at + 24);
+            s7 += query[i + 7] * rows.getFloat(at + 28);
+        }
+        for (; i < length; i++, at += Float.BYTES) {
+            s0 += query[i] * rows.getFloat(at);
+        }
+        return ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
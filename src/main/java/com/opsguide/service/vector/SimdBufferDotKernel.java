@@ -0,0 +1,45 @@
+package com.opsguide.service.vector;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * JDK Vector API kernel: fused multiply-adds over the widest float lanes the CPU supports, with two
+ * accumulators to hide FMA latency. Only instantiated through {@link BufferDotKernel#select()}.
+ */
+final class SimdBufferDotKernel implements BufferDotKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] query, ByteBuffer rows, int byteOffset, int length) {
+        int lanes = SPECIES.length();
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = length - 2 * lanes; i <= bound; i += 2 * lanes) {
+            FloatVector r0 = FloatVector.fromByteBuffer(SPECIES, rows, byteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            FloatVector r1 = FloatVector.fromByteBuffer(SPECIES, rows, byteOffset + (i + lanes) * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            acc0 = FloatVector.fromArray(SPECIES, query, i).fma(r0, acc0);
+            acc1 = FloatVector.fromArray(SPECIES, query, i + lanes).fma(r1, acc1);
+        }
+        for (int bound = SPECIES.loopBound(length); i < bound; i += lanes) {
+            FloatVector r = FloatVector.fromByteBuffer(SPECIES, rows, byteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            acc0 = FloatVector.fromArray(SPECIES, query, i).fma(r, acc0);
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * rows.getFloat(byteOffset + i * Float.BYTES);
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "vector-api-" + SPECIES.vectorBitSize();
+    }
+}
@@ -0,0 +1,181 @@
+package com.opsguide.service.vector;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential reader for snapshots written with {@link SnapshotOutput}.
+ * <p>
+ * The file is memory-mapped read-only in windows of up to 1 GB, so a snapshot may exceed the
+ * 2 GB limit of a single mapping, and arrays are bulk-copied out of the page cache rather than
+ * parsed through a stream. {@link #readIndex} restores any {@link VectorIndex} written with
+ * {@link VectorIndex#writeTo}.
+ */
+public final class SnapshotInput implements Closeable {
+
+    // Index kinds, written first by each VectorIndex#writeTo
+    static final byte FLAT = 1;
+    static final byte QUANTIZED = 2;
+    static final byte HNSW = 3;
+    static final byte IVF_PQ = 4;
+    static final byte SEGMENT = 5;
+
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    // File offset of the mapped window
+    private long windowAt;
+    private ByteBuffer window;
+
+    private SnapshotInput(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+        this.window = ByteBuffer.allocate(0);
+    }
+
+    public static SnapshotInput open(Path path) throws IOException {
+        return new SnapshotInput(path, FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return window.get();
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readInt() throws IOException {
+        require(Integer.BYTES);
+        return window.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(Long.BYTES);
+        return window.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        require(Float.BYTES);
+        return window.getFloat();
+    }
+
+    public String readString() throws IOException {
+        int length = readInt();
+        return length < 0 ? null : new String(readBytes(length), StandardCharsets.UTF_8);
+    }
+
+    public byte[] readBytes() throws IOException {
+        return readBytes(readLength());
+    }
+
+    public int[] readInts() throws IOException {
+        int[] values = new int[readLength()];
+        for (int at = 0; at < values.length; ) {
+            require(Integer.BYTES);
+            int n = Math.min(values.length - at, window.remaining() / Integer.BYTES);
+            window.asIntBuffer().get(values, at, n);
+            window.position(window.position() + n * Integer.BYTES);
+            at += n;
+        }
+        return values;
+    }
+
+    public float[] readFloats() throws IOException {
+        float[] values = new float[readLength()];
+        for (int at = 0; at < values.length; ) {
+            require(Float.BYTES);
+            int n = Math.min(values.length - at, window.remaining() / Float.BYTES);
+            window.asFloatBuffer().get(values, at, n);
+            window.position(window.position() + n * Float.BYTES);
+            at += n;
+        }
+        return values;
+    }
+
+    public long[] readLongs() throws IOException {
+        long[] values = new long[readLength()];
+        for (int at = 0; at < values.length; ) {
+            require(Long.BYTES);
+            int n = Math.min(values.length - at, window.remaining() / Long.BYTES);
+            window.asLongBuffer().get(values, at, n);
+            window.position(window.position() + n * Long.BYTES);
+            at += n;
+        }
+        return values;
+    }
+
+    /**
+     * Reads an index written with {@link VectorIndex#writeTo}. Segment-backed indexes are views of
+     * {@code segment}, the segment the index was snapshotted with, or fail if it is null.
+     */
+    public VectorIndex readIndex(FlatSegment segment) throws IOException {
+        byte kind = readByte();
+        switch (kind) {
+            case FLAT:
+                return FlatVectorIndex.read(this);
+            case QUANTIZED:
+                return QuantizedVectorIndex.read(this, segment);
+            case HNSW:
+                return HnswVectorIndex.read(this);
+            case IVF_PQ:
+                return IvfPqIndex.read(this, segment);
+            case SEGMENT:
+                return FlatSegment.read(this, segment);
+            default:
+                throw new IOException("Unknown index kind " + kind + " in snapshot " + path);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapped windows stay valid after the channel is closed
+        channel.close();
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        byte[] values = new byte[length];
+        for (int at = 0; at < length; ) {
+            require(1);
+            int n = Math.min(length - at, window.remaining());
+            window.get(values, at, n);
+            at += n;
+        }
+        return values;
+    }
+
+    private int readLength() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt array length " + length + " in snapshot " + path);
+        }
+        return length;
+    }
+
+    // Maps the next window once fewer than bytes remain in the current one
+    private void require(int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        long at = windowAt + window.position();
+        if (at + bytes > size) {
+            throw new EOFException("Truncated snapshot " + path);
+        }
+        windowAt = at;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(WINDOW_BYTES, size - at));
+    }
+}
@@ -0,0 +1,116 @@
+package com.opsguide.service.vector;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Sequential big-endian writer for index snapshots, read back with {@link SnapshotInput}.
+ * <p>
+ * Arrays are written as their length followed by the elements, and go through one staging buffer
+ * rather than an element-at-a-time stream. {@link #close} flushes and forces the file to disk.
+ */
+public final class SnapshotOutput implements Closeable {
+
+    private static final int STAGING_BYTES = 1 << 16;
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final ByteBuffer staging = ByteBuffer.allocate(STAGING_BYTES);
+
+    private SnapshotOutput(FileOutputStream file) {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(file, STAGING_BYTES));
+    }
+
+    public static SnapshotOutput create(Path path) throws IOException {
+        return new SnapshotOutput(new FileOutputStream(path.toFile()));
+    }
+
+    public void writeByte(int value) throws IOException {
+        out.writeByte(value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        out.writeBoolean(value);
+    }
+
+    public void writeInt(int value) throws IOException {
+        out.writeInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        out.writeLong(value);
+    }
+
+    public void writeFloat(float value) throws IOException {
+        out.writeFloat(value);
+    }
+
+    /**
+     * UTF-8 with an int length; null is written as length -1.
+     */
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public void writeBytes(byte[] values, int from, int length) throws IOException {
+        out.writeInt(length);
+        out.write(values, from, length);
+    }
+
+    public void writeInts(int[] values, int from, int length) throws IOException {
+        out.writeInt(length);
+        int end = from + length;
+        while (from < end) {
+            staging.clear();
+            int n = Math.min(end - from, STAGING_BYTES / Integer.BYTES);
+            staging.asIntBuffer().put(values, from, n);
+            out.write(staging.array(), 0, n * Integer.BYTES);
+            from += n;
+        }
+    }
+
+    public void writeFloats(float[] values, int from, int length) throws IOException {
+        out.writeInt(length);
+        int end = from + length;
+        while (from < end) {
+            staging.clear();
+            int n = Math.min(end - from, STAGING_BYTES / Float.BYTES);
+            staging.asFloatBuffer().put(values, from, n);
+            out.write(staging.array(), 0, n * Float.BYTES);
+            from += n;
+        }
+    }
+
+    public void writeLongs(long[] values, int from, int length) throws IOException {
+        out.writeInt(length);
+        int end = from + length;
+        while (from < end) {
+            staging.clear();
+            int n = Math.min(end - from, STAGING_BYTES / Long.BYTES);
+            staging.asLongBuffer().put(values, from, n);
+            out.write(staging.array(), 0, n * Long.BYTES);
+            from += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (file) {
+            out.flush();
+            file.getChannel().force(true);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.opsguide.service.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded min-heap of (id, score) pairs on primitive arrays that keeps the {@code k} best scores.
+ * <p>
+ * The weakest kept score sits at the root, so rejecting a candidate is one comparison. Equal
+ * scores keep the lower id, which makes results independent of scan order.
+ */
+public final class TopKHeap {
+
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopKHeap(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.ids = new int[k];
+        this.scores = new float[k];
+    }
+
+    /**
+     * Offers a candidate and returns true if it was kept.
+     */
+    public boolean offer(int id, float score) {
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (!better(id, score, ids[0], scores[0])) {
+            return false;
+        }
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == ids.length;
+    }
+
+    /**
+     * Weakest kept score; any candidate scoring below it is rejected once the heap is full.
+     */
+    public float minScore() {
+        return size == 0 ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Kept ids, best first.
+     */
+    public int[] sortedIds() {
+        int[] order = order();
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = ids[order[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Kept hits, best first.
+     */
+    public List<VectorHit> toSortedHits() {
+        int[] order = order();
+        List<VectorHit> hits = new ArrayList<>(order.length);
+        for (int slot : order) {
+            hits.add(new VectorHit(ids[slot], scores[slot]));
+        }
+        return hits;
+    }
+
+    // Heap slots sorted best first; k is small, so insertion sort is enough
+    private int[] order() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = i;
+            while (j > 0 && better(ids[i], scores[i], ids[order[j - 1]], scores[order[j - 1]])) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(ids[parent], scores[parent], ids[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int weakest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && better(ids[weakest], scores[weakest], ids[left], scores[left])) {
+                weakest = left;
+            }
+            if (right < size && better(ids[weakest], scores[weakest], ids[right], scores[right])) {
+                weakest = right;
+            }
+            if (weakest == i) {
+                return;
+            }
+            swap(i, weakest);
+            i = weakest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    private static boolean better(int id, float score, int otherId, float otherScore) {
+        return score > otherScore || (score == otherScore && id < otherId);
+    }
+}
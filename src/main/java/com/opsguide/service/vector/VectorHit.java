@@ -0,0 +1,12 @@
+package com.opsguide.service.vector;
+
+import lombok.Value;
+
+/**
+ * One search result: the ordinal the vector was added under and its cosine similarity to the query.
+ */
+@Value
+public class VectorHit {
+    int id;
+    float score;
+}
@@ -0,0 +1,41 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * In-process nearest-neighbour index over embeddings, scored by cosine similarity.
+ * <p>
+ * Implementations take a single writer and any number of concurrent readers: {@link #add} must
+ * not be called concurrently with itself, while {@link #search} never blocks and sees every
+ * vector whose {@code add} returned before the search started.
+ */
+public interface VectorIndex {
+
+    int dimension();
+
+    int size();
+
+    /**
+     * Adds a vector and returns its ordinal; ordinals are assigned densely from 0.
+     */
+    int add(Embedding vector);
+
+    /**
+     * Returns up to {@code topK} hits, best first.
+     */
+    List<VectorHit> search(Embedding query, int topK);
+
+    /**
+     * Heap bytes held by vector data, for sizing and metrics.
+     */
+    long memoryBytes();
+
+    /**
+     * Writes the index as built, kind first, so {@link SnapshotInput#readIndex} restores it without
+     * re-adding a vector. Must not run concurrently with {@link #add}.
+     */
+    void writeTo(SnapshotOutput out) throws IOException;
+}
@@ -0,0 +1,152 @@
+package com.opsguide.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Embedding} against the {@code List<Float>} it replaced, per query on the embedding path:
+ * generating a 1536-dimension vector, scoring it by dot product against stored unit vectors of
+ * the same kind (as the vector indexes do), and handing it to the OpenSearch k-NN query as an
+ * array. Vector values come from the mock embedder of that time in both variants, so only the
+ * representation differs. Run with {@code -prof gc} for allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddingBenchmark {
+
+    private static final int DIMENSION = 1536;
+    private static final int STORED = 256;
+    private static final String[] QUERIES = {
+        "cancel case CASE-2024-001 in production",
+        "Please update the status of order ORD-12345 to shipped in staging",
+        "what is the runbook for on_hold cases?",
+        "stain update needed on slide SL-4411"
+    };
+
+    private final List<List<Float>> storedLists = new ArrayList<>(STORED);
+    private final List<Embedding> storedEmbeddings = new ArrayList<>(STORED);
+    private List<Float> queryList;
+    private Embedding queryEmbedding;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < STORED; i++) {
+            Embedding stored = generate("stored chunk " + i).normalize();
+            storedEmbeddings.add(stored);
+            storedLists.add(FloatList.of(stored));
+        }
+        queryEmbedding = generate(QUERIES[0]).normalize();
+        queryList = FloatList.of(queryEmbedding);
+    }
+
+    @Benchmark
+    public Embedding generateEmbedding() {
+        return generate(nextQuery());
+    }
+
+    @Benchmark
+    public List<Float> generateList() {
+        return FloatList.generate(nextQuery());
+    }
+
+    @Benchmark
+    public int searchEmbedding() {
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < STORED; i++) {
+            float score = queryEmbedding.dot(storedEmbeddings.get(i));
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public int searchList() {
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < STORED; i++) {
+            float score = FloatList.dot(queryList, storedLists.get(i));
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public float[] handOffEmbedding() {
+        return queryEmbedding.toArray();
+    }
+
+    @Benchmark
+    public double[] handOffList() {
+        return queryList.stream().mapToDouble(Float::doubleValue).toArray();
+    }
+
+    // EmbeddingsService's mock embedder, filling a float[]
+    private static Embedding generate(String text) {
+        float[] embedding = new float[DIMENSION];
+        int hash = text.hashCode();
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = (float) Math.sin(hash * (i + 1) * 0.001) * 0.5f;
+        }
+        return Embedding.wrap(embedding);
+    }
+
+    private String nextQuery() {
+        String query = QUERIES[next];
+        next = next + 1 == QUERIES.length ? 0 : next + 1;
+        return query;
+    }
+
+    // The embedding path before Embedding: boxed floats in an ArrayList
+    private static final class FloatList {
+
+        private static List<Float> generate(String text) {
+            List<Float> embedding = new ArrayList<>();
+            int hash = text.hashCode();
+            for (int i = 0; i < DIMENSION; i++) {
+                float value = (float) Math.sin(hash * (i + 1) * 0.001) * 0.5f;
+                embedding.add(value);
+            }
+            return embedding;
+        }
+
+        private static List<Float> of(Embedding embedding) {
+            List<Float> values = new ArrayList<>(embedding.dimension());
+            for (int i = 0; i < embedding.dimension(); i++) {
+                values.add(embedding.get(i));
+            }
+            return values;
+        }
+
+        private static float dot(List<Float> a, List<Float> b) {
+            float sum = 0f;
+            for (int i = 0; i < a.size(); i++) {
+                sum += a.get(i) * b.get(i);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.opsguide.service;
+
+import com.opsguide.service.matching.IdMatches;
+import com.opsguide.service.matching.IdScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link EntityExtractor#extractAllEntities(String)} against the one-regex-per-ID-type extractor
+ * it replaced, and the bare {@link IdScanner} pass into a reused {@link IdMatches}. Run with
+ * {@code -prof gc} for allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityExtractorBenchmark {
+
+    private static final String[] QUERIES = {
+        "cancel CASE-2024-001, CASE-2024-002 and CASE-2024-003",
+        "Please update the status of order ORDER-2023-00871 to shipped",
+        "change case status to grossing for case_2023_0042 in prod",
+        "update samples SAMPLE-2024-A17 and SAMPLE-2024-A18 on slide SLIDE-2024-9",
+        "stain update needed on slide SL-4411",
+        "what is the runbook for on_hold cases?",
+        "ticket 88123 is waiting on approval",
+        "move ORDER2024XYZ to completed"
+    };
+
+    private final EntityExtractor extractor = new EntityExtractor();
+    private final IdMatches matches = new IdMatches();
+    private int next;
+
+    @Benchmark
+    public Map<String, Object> idScanner() {
+        return extractor.extractAllEntities(nextQuery());
+    }
+
+    @Benchmark
+    public Map<String, Object> regexExtractor() {
+        return RegexExtractor.extractAllEntities(nextQuery());
+    }
+
+    @Benchmark
+    public int scanOnly() {
+        IdScanner.scan(nextQuery(), matches);
+        return matches.size();
+    }
+
+    private String nextQuery() {
+        String query = QUERIES[next];
+        next = next + 1 == QUERIES.length ? 0 : next + 1;
+        return query;
+    }
+
+    // EntityExtractor before IdScanner: one regex pass per ID type, each stopping at its first match
+    private static final class RegexExtractor {
+
+        private static final Pattern ORDER_ID_PATTERN = Pattern.compile("ORDER[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE);
+        private static final Pattern CASE_ID_PATTERN = Pattern.compile("CASE[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE);
+        private static final Pattern SAMPLE_ID_PATTERN = Pattern.compile("SAMPLE[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE);
+        private static final Pattern SLIDE_ID_PATTERN = Pattern.compile("SLIDE[_-]?(\\d{4})[_-]?([\\w-]+)", Pattern.CASE_INSENSITIVE);
+        private static final Pattern GENERIC_ID_PATTERN = Pattern.compile("\\b(\\w+)[\\s_-]?(\\d+)\\b", Pattern.CASE_INSENSITIVE);
+
+        private static final String[] STATUS_KEYWORDS = {
+            "pending", "in_progress", "completed", "cancelled", "on_hold",
+            "failed", "archived", "closed", "active", "inactive", "processing",
+            "ready", "waiting", "approved", "rejected", "draft", "published"
+        };
+
+        private static String first(Pattern pattern, String query) {
+            Matcher matcher = pattern.matcher(query);
+            return matcher.find() ? matcher.group(1) + "-" + matcher.group(2) : null;
+        }
+
+        private static Map<String, Object> extractAllEntities(String query) {
+            Map<String, Object> entities = new HashMap<>();
+            String orderId = first(ORDER_ID_PATTERN, query);
+            if (orderId != null) {
+                entities.put("order_id", orderId);
+            }
+            String caseId = first(CASE_ID_PATTERN, query);
+            if (caseId != null) {
+                entities.put("case_id", caseId);
+            }
+            String sampleId = first(SAMPLE_ID_PATTERN, query);
+            if (sampleId != null) {
+                entities.put("sample_id", sampleId);
+            }
+            String slideId = first(SLIDE_ID_PATTERN, query);
+            if (slideId != null) {
+                entities.put("slide_id", slideId);
+            }
+            if (entities.isEmpty()) {
+                String genericId = first(GENERIC_ID_PATTERN, query);
+                if (genericId != null) {
+                    entities.put("entity_id", genericId);
+                }
+            }
+            String queryLower = query.toLowerCase();
+            for (String status : STATUS_KEYWORDS) {
+                if (queryLower.contains(status)) {
+                    entities.put("target_status", status);
+                    break;
+                }
+            }
+            String entityType = "unknown";
+            if (queryLower.contains("order")) entityType = "order";
+            else if (queryLower.contains("case")) entityType = "case";
+            else if (queryLower.contains("sample")) entityType = "sample";
+            else if (queryLower.contains("slide")) entityType = "slide";
+            else if (queryLower.contains("stain")) entityType = "stain";
+            entities.put("entity_type", entityType);
+            return entities;
+        }
+    }
+}
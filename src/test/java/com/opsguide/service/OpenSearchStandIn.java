@@ -0,0 +1,255 @@
+package com.opsguide.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory stand-in for the OpenSearch REST endpoints {@link OpenSearchVectorStore} calls: index
+ * create and delete, {@code _bulk}, {@code _refresh}, {@code _count}, {@code _search} (exact cosine
+ * over the stored embeddings), {@code _mapping} reads and {@code _meta} updates, and alias reads
+ * and updates. Bulk items whose content contains
+ * {@link #rejectContaining} are rejected with a mapping error, the way OpenSearch reports a bad
+ * document. While {@link #failAliasReads} is set, alias reads fail with a 503.
+ */
+final class OpenSearchStandIn implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Index name to its documents by id, sorted so searches break score ties the same way every run
+    final Map<String, Map<String, ObjectNode>> indices = new ConcurrentHashMap<>();
+    // Index name to the settings and mappings it was created with
+    final Map<String, JsonNode> created = new ConcurrentHashMap<>();
+    final Map<String, String> aliases = new ConcurrentHashMap<>();
+    volatile String rejectContaining;
+    volatile boolean failAliasReads;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    OpenSearchStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        String[] parts = path.substring(1).split("/");
+        int status = 200;
+        Object response;
+        try {
+            if (path.equals("/_bulk")) {
+                response = bulk(body);
+            } else if (path.equals("/_aliases")) {
+                response = updateAliases(MAPPER.readTree(body));
+            } else if (parts[0].equals("_alias") && failAliasReads) {
+                status = 503;
+                response = error("no master", 503);
+            } else if (parts[0].equals("_alias")) {
+                response = getAlias(parts[1]);
+                if (response == null) {
+                    status = 404;
+                    response = error("alias [" + parts[1] + "] missing", 404);
+                }
+            } else if (parts.length == 2 && parts[1].equals("_refresh")) {
+                response = Map.of("_shards", Map.of("total", 1, "successful", 1, "failed", 0));
+            } else if (parts.length == 2 && parts[1].equals("_count")) {
+                Map<String, ObjectNode> documents = indices.get(aliases.getOrDefault(parts[0], parts[0]));
+                if (documents == null) {
+                    status = 404;
+                    response = error("no such index [" + parts[0] + "]", 404);
+                } else {
+                    response = Map.of("count", documents.size(),
+                        "_shards", Map.of("total", 1, "successful", 1, "skipped", 0, "failed", 0));
+                }
+            } else if (parts.length == 2 && parts[1].equals("_mapping") && created.containsKey(parts[0])) {
+                ObjectNode mappings = (ObjectNode) created.get(parts[0]).get("mappings");
+                if (method.equals("PUT")) {
+                    // Like OpenSearch, a _meta update replaces the whole object
+                    mappings.set("_meta", MAPPER.readTree(body).get("_meta"));
+                    response = Map.of("acknowledged", true);
+                } else {
+                    response = Map.of(parts[0], Map.of("mappings", mappings));
+                }
+            } else if (parts.length == 2 && parts[1].equals("_search")) {
+                response = search(aliases.getOrDefault(parts[0], parts[0]), MAPPER.readTree(body));
+            } else if (parts.length == 1 && method.equals("PUT")) {
+                indices.put(parts[0], new ConcurrentSkipListMap<>());
+                created.put(parts[0], MAPPER.readTree(body));
+                response = Map.of("acknowledged", true, "shards_acknowledged", true, "index", parts[0]);
+            } else if (parts.length == 1 && method.equals("DELETE")) {
+                for (String index : parts[0].split(",")) {
+                    indices.remove(index);
+                    aliases.values().remove(index);
+                }
+                response = Map.of("acknowledged", true);
+            } else {
+                status = 400;
+                response = error("unsupported " + method + " " + path, 400);
+            }
+        } catch (RuntimeException e) {
+            status = 500;
+            response = error(e.toString(), 500);
+        }
+        byte[] bytes = MAPPER.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Object bulk(String ndjson) throws IOException {
+        List<Object> items = new ArrayList<>();
+        boolean errors = false;
+        String[] lines = ndjson.split("\n");
+        for (int i = 0; i + 1 < lines.length; i += 2) {
+            JsonNode action = MAPPER.readTree(lines[i]).get("index");
+            String index = action.get("_index").asText();
+            String id = action.get("_id").asText();
+            ObjectNode document = (ObjectNode) MAPPER.readTree(lines[i + 1]);
+            String reject = rejectContaining;
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("_index", index);
+            item.put("_id", id);
+            if (reject != null && document.path("content").asText().contains(reject)) {
+                errors = true;
+                item.put("status", 400);
+                item.put("error", Map.of("type", "mapper_parsing_exception", "reason", "failed to parse field [content]"));
+            } else {
+                // Like OpenSearch, indexing into a missing index creates it
+                indices.computeIfAbsent(index, name -> new ConcurrentSkipListMap<>()).put(id, document);
+                item.put("status", 201);
+                item.put("result", "created");
+                item.put("_version", 1);
+                item.put("_seq_no", 0);
+                item.put("_primary_term", 1);
+                item.put("_shards", Map.of("total", 1, "successful", 1, "failed", 0));
+            }
+            items.add(Map.of("index", item));
+        }
+        return Map.of("took", 1, "errors", errors, "items", items);
+    }
+
+    private Object getAlias(String alias) {
+        String index = aliases.get(alias);
+        return index == null ? null : Map.of(index, Map.of("aliases", Map.of(alias, Map.of())));
+    }
+
+    // Applies all actions or none, like the real endpoint; removes first, then adds
+    private synchronized Object updateAliases(JsonNode request) {
+        Map<String, String> updated = new LinkedHashMap<>(aliases);
+        for (JsonNode action : request.get("actions")) {
+            JsonNode remove = action.get("remove");
+            if (remove != null && remove.get("index").asText().equals(updated.get(remove.get("alias").asText()))) {
+                updated.remove(remove.get("alias").asText());
+            }
+        }
+        for (JsonNode action : request.get("actions")) {
+            JsonNode add = action.get("add");
+            if (add != null) {
+                if (!indices.containsKey(add.get("index").asText())) {
+                    throw new IllegalStateException("no such index [" + add.get("index").asText() + "]");
+                }
+                updated.put(add.get("alias").asText(), add.get("index").asText());
+            }
+        }
+        aliases.clear();
+        aliases.putAll(updated);
+        return Map.of("acknowledged", true);
+    }
+
+    private Object search(String index, JsonNode request) {
+        JsonNode knn = request.get("query").get("knn").get("embedding");
+        float[] query = floats(knn.get("vector"));
+        Set<String> services = null;
+        if (knn.has("filter")) {
+            services = new HashSet<>();
+            for (JsonNode value : knn.get("filter").get("terms").get("service")) {
+                services.add(value.asText());
+            }
+        }
+        List<String> includes = new ArrayList<>();
+        request.get("_source").get("includes").forEach(field -> includes.add(field.asText()));
+
+        List<Map.Entry<Double, Map<String, Object>>> scored = new ArrayList<>();
+        for (Map.Entry<String, ObjectNode> document : indices.getOrDefault(index, Map.of()).entrySet()) {
+            ObjectNode source = document.getValue();
+            if (services != null && !services.contains(source.path("service").asText())) {
+                continue;
+            }
+            ObjectNode filtered = MAPPER.createObjectNode();
+            for (String field : includes) {
+                if (source.has(field)) {
+                    filtered.set(field, source.get(field));
+                }
+            }
+            double score = (1 + cosine(query, floats(source.get("embedding")))) / 2;
+            scored.add(Map.entry(score, Map.of("_index", index, "_id", document.getKey(), "_score", score,
+                "_source", filtered)));
+        }
+        scored.sort(Map.Entry.<Double, Map<String, Object>>comparingByKey().reversed());
+        List<Object> hits = new ArrayList<>();
+        for (Map.Entry<Double, Map<String, Object>> hit : scored.subList(0, Math.min(request.get("size").asInt(), scored.size()))) {
+            hits.add(hit.getValue());
+        }
+        return Map.of("took", 1, "timed_out", false,
+            "_shards", Map.of("total", 1, "successful", 1, "skipped", 0, "failed", 0),
+            "hits", Map.of("total", Map.of("value", scored.size(), "relation", "eq"), "hits", hits));
+    }
+
+    private static float[] floats(JsonNode array) {
+        float[] values = new float[array.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) array.get(i).asDouble();
+        }
+        return values;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+    }
+
+    private static Map<String, Object> error(String reason, int status) {
+        return Map.of("error", Map.of("type", "stand_in_exception", "reason", reason), "status", status);
+    }
+}
@@ -0,0 +1,248 @@
+package com.opsguide.service;
+
+import com.opsguide.config.OpenSearchConfig;
+import com.opsguide.model.Embedding;
+import com.opsguide.service.embedding.HashedNgramEmbeddingProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.transport.OpenSearchTransport;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * {@link OpenSearchVectorStore} against {@link OpenSearchStandIn} over real HTTP, through the
+ * transport {@link OpenSearchConfig} builds.
+ */
+class OpenSearchVectorStoreTest {
+
+    private static final String ALIAS = "knowledge-base";
+    private static final int DIMENSION = 256;
+    private static final String[] TOPICS = {
+        "accessioning", "grossing", "microtomy", "staining", "coverslipping", "scanning",
+        "sign-out", "billing", "courier pickup", "archiving", "recuts", "consults"
+    };
+    // Small batches so a publish takes several bulk requests
+    private static final int BULK_SIZE = 4;
+
+    private final HashedNgramEmbeddingProvider embeddings = new HashedNgramEmbeddingProvider(DIMENSION);
+    private OpenSearchStandIn standIn;
+    private OpenSearchTransport transport;
+
+    @BeforeEach
+    void startStandIn() throws Exception {
+        standIn = new OpenSearchStandIn();
+        transport = new OpenSearchConfig().openSearchTransport(standIn.endpoint(), 8, 2000, 10000);
+    }
+
+    @AfterEach
+    void stopStandIn() throws Exception {
+        transport.close();
+        standIn.close();
+    }
+
+    @Test
+    void publishCreatesKnnIndexAndPointsAliasAtIt() {
+        OpenSearchVectorStore store = newStore();
+        List<VectorSearchService.KnowledgeChunk> chunks = chunks("runbook", 10);
+
+        store.publish(chunks, embed(chunks));
+
+        assertThat(standIn.aliases).containsOnlyKeys(ALIAS);
+        String index = standIn.aliases.get(ALIAS);
+        assertThat(standIn.indices).containsOnlyKeys(index);
+        assertThat(standIn.indices.get(index)).hasSize(10);
+        assertThat(standIn.created.get(index).at("/settings/knn").asBoolean()).isTrue();
+        assertThat(standIn.created.get(index).at("/mappings/properties/embedding/dimension").asInt()).isEqualTo(DIMENSION);
+        assertThat(store.getDocumentCount()).isEqualTo(10);
+
+        List<VectorSearchService.KnowledgeChunk> hits = store.search(embeddings.embed(chunks.get(3).getContent()), 3, null).join();
+        assertThat(hits).isNotEmpty();
+        assertThat(hits.get(0).getContent()).isEqualTo(chunks.get(3).getContent());
+        assertThat(hits.get(0).getScore()).isCloseTo(1.0, within(1e-4));
+    }
+
+    @Test
+    void republishSwapsAliasAndDeletesPreviousIndex() {
+        OpenSearchVectorStore store = newStore();
+        List<VectorSearchService.KnowledgeChunk> first = chunks("runbook", 6);
+        store.publish(first, embed(first));
+        String previous = standIn.aliases.get(ALIAS);
+
+        List<VectorSearchService.KnowledgeChunk> second = chunks("api spec", 9);
+        store.publish(second, embed(second));
+
+        String current = standIn.aliases.get(ALIAS);
+        assertThat(current).isNotEqualTo(previous);
+        assertThat(standIn.indices).containsOnlyKeys(current);
+        assertThat(store.getDocumentCount()).isEqualTo(9);
+        assertThat(store.search(embeddings.embed("api spec for staining"), 1, null).join())
+            .extracting(VectorSearchService.KnowledgeChunk::getContent)
+            .allMatch(content -> content.startsWith("api spec"));
+    }
+
+    @Test
+    void rejectedBulkItemFailsPublishAndKeepsPreviousIndex() {
+        OpenSearchVectorStore store = newStore();
+        List<VectorSearchService.KnowledgeChunk> published = chunks("runbook", 6);
+        store.publish(published, embed(published));
+        String previous = standIn.aliases.get(ALIAS);
+
+        List<VectorSearchService.KnowledgeChunk> next = chunks("api spec", 12);
+        standIn.rejectContaining = "api spec 9";
+        assertThatThrownBy(() -> store.publish(next, embed(next)))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("rejected bulk item 9");
+
+        // The alias still serves the old corpus and the half-filled index is gone
+        assertThat(standIn.aliases).containsEntry(ALIAS, previous);
+        assertThat(standIn.indices).containsOnlyKeys(previous);
+        assertThat(store.getDocumentCount()).isEqualTo(6);
+    }
+
+    @Test
+    void backToBackPublishesUseFreshIndices() {
+        OpenSearchVectorStore store = newStore();
+        List<VectorSearchService.KnowledgeChunk> chunks = chunks("runbook", 3);
+        List<Embedding> vectors = embed(chunks);
+        Set<String> published = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            store.publish(chunks, vectors);
+            assertThat(published.add(standIn.aliases.get(ALIAS))).isTrue();
+            assertThat(standIn.indices).containsOnlyKeys(standIn.aliases.get(ALIAS));
+        }
+
+        // A failed publish right after a good one deletes only its own index
+        String live = standIn.aliases.get(ALIAS);
+        standIn.rejectContaining = "runbook 1";
+        assertThatThrownBy(() -> store.publish(chunks, vectors)).isInstanceOf(IllegalStateException.class);
+        assertThat(standIn.indices).containsOnlyKeys(live);
+        assertThat(standIn.indices.get(live)).hasSize(3);
+    }
+
+    @Test
+    void failedAliasReadFailsPublishAndKeepsPreviousIndex() {
+        OpenSearchVectorStore store = newStore();
+        List<VectorSearchService.KnowledgeChunk> published = chunks("runbook", 6);
+        store.publish(published, embed(published));
+        String previous = standIn.aliases.get(ALIAS);
+
+        List<VectorSearchService.KnowledgeChunk> next = chunks("api spec", 8);
+        standIn.failAliasReads = true;
+        assertThatThrownBy(() -> store.publish(next, embed(next))).hasMessageContaining("503");
+
+        // Not taken for a missing alias: the alias was not added to the new index beside the old one
+        assertThat(standIn.aliases).containsEntry(ALIAS, previous);
+        assertThat(standIn.indices).containsOnlyKeys(previous);
+        assertThat(store.getDocumentCount()).isEqualTo(6);
+    }
+
+    @Test
+    void restartedStoreCountsPublishedChunksAndAppendsAfterThem() {
+        List<VectorSearchService.KnowledgeChunk> chunks = chunks("runbook", 7);
+        newStore().publish(chunks, embed(chunks));
+        String index = standIn.aliases.get(ALIAS);
+
+        OpenSearchVectorStore restarted = newStore();
+        restarted.loadPublished();
+        assertThat(restarted.getDocumentCount()).isEqualTo(7);
+
+        VectorSearchService.KnowledgeChunk added = new VectorSearchService.KnowledgeChunk(
+            "added after restart", "knowledge/runbooks/new.md", "runbook", 0);
+        restarted.add(added, embeddings.embed(added.getContent()));
+        assertThat(standIn.aliases).containsEntry(ALIAS, index);
+        assertThat(standIn.indices.get(index)).hasSize(8).containsKey("7");
+        assertThat(restarted.getDocumentCount()).isEqualTo(8);
+    }
+
+    @Test
+    void restartedStoreReadsWhatThePublishedIndexWasBuiltFrom() {
+        List<VectorSearchService.KnowledgeChunk> chunks = chunks("runbook", 4);
+        newStore().publish(chunks, embed(chunks), HashedNgramEmbeddingProvider.MODEL_ID, "digest-1");
+
+        OpenSearchVectorStore restarted = newStore();
+        restarted.loadPublished();
+        OpenSearchVectorStore.PublishedIndex published = restarted.getPublished();
+        assertThat(published.getIndex()).isEqualTo(standIn.aliases.get(ALIAS));
+        assertThat(published.getEmbeddingModel()).isEqualTo(HashedNgramEmbeddingProvider.MODEL_ID);
+        assertThat(published.getCorpusDigest()).isEqualTo("digest-1");
+        assertThat(published.getPublishedAt()).isPositive();
+
+        // Adding a chunk means the index no longer holds that corpus, here and after the next restart
+        VectorSearchService.KnowledgeChunk added = new VectorSearchService.KnowledgeChunk(
+            "added after restart", "knowledge/runbooks/new.md", "runbook", 0);
+        restarted.add(added, embeddings.embed(added.getContent()));
+        assertThat(restarted.getPublished().getCorpusDigest()).isNull();
+        OpenSearchVectorStore again = newStore();
+        again.loadPublished();
+        assertThat(again.getPublished().getCorpusDigest()).isNull();
+        assertThat(again.getPublished().getEmbeddingModel()).isEqualTo(HashedNgramEmbeddingProvider.MODEL_ID);
+    }
+
+    @Test
+    void restoreSnapshotHandsBackThePublishedCorpus() {
+        List<VectorSearchService.KnowledgeChunk> chunks = chunks("runbook", 5);
+        newStore().publish(chunks, embed(chunks), HashedNgramEmbeddingProvider.MODEL_ID, "digest-1");
+
+        VectorSearchService.IndexSnapshot restored = newService(newStore()).restoreSnapshot(HashedNgramEmbeddingProvider.MODEL_ID);
+        assertThat(restored).isNotNull();
+        assertThat(restored.getCorpusDigest()).isEqualTo("digest-1");
+        assertThat(restored.getChunks()).isEqualTo(5);
+        assertThat(restored.isRestored()).isTrue();
+
+        // Vectors from another model are not served as current
+        assertThat(newService(newStore()).restoreSnapshot("other-model")).isNull();
+    }
+
+    @Test
+    void storeWithoutAliasStartsEmpty() {
+        OpenSearchVectorStore store = newStore();
+        store.loadPublished();
+        assertThat(store.getDocumentCount()).isZero();
+    }
+
+    @Test
+    void failedAliasReadFailsLoadInsteadOfStartingEmpty() {
+        List<VectorSearchService.KnowledgeChunk> chunks = chunks("runbook", 5);
+        newStore().publish(chunks, embed(chunks));
+
+        standIn.failAliasReads = true;
+        OpenSearchVectorStore restarted = newStore();
+        assertThatThrownBy(restarted::loadPublished).hasMessageContaining("503");
+    }
+
+    private OpenSearchVectorStore newStore() {
+        OpenSearchAsyncClient client = new OpenSearchConfig().openSearchAsyncClient(transport);
+        return new OpenSearchVectorStore(client, new SimpleMeterRegistry(), ALIAS, DIMENSION, 16, 100, 64, BULK_SIZE, 2);
+    }
+
+    private VectorSearchService newService(OpenSearchVectorStore store) {
+        return new VectorSearchService(DIMENSION, "opensearch", "none", 1, 16, 100, 64, 16, 4, 8, 256, 10,
+            false, 60, 20, true, 3, false, "unused", 1,
+            new StaticListableBeanFactory(Map.of("store", store)).getBeanProvider(OpenSearchVectorStore.class));
+    }
+
+    private static List<VectorSearchService.KnowledgeChunk> chunks(String prefix, int count) {
+        List<VectorSearchService.KnowledgeChunk> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            chunks.add(new VectorSearchService.KnowledgeChunk(prefix + " " + i + " covers " + TOPICS[i],
+                "knowledge/" + prefix.replace(' ', '-') + "/doc.md", prefix, 0));
+        }
+        return chunks;
+    }
+
+    private List<Embedding> embed(List<VectorSearchService.KnowledgeChunk> chunks) {
+        return chunks.stream().map(chunk -> embeddings.embed(chunk.getContent())).toList();
+    }
+}
@@ -0,0 +1,156 @@
+package com.opsguide.service.matching;
+
+import com.opsguide.model.TaskId;
+import com.opsguide.service.ClassificationRulesService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Single-threaded throughput of resolving task, environment and service: the compiled
+ * {@link QueryMatcher} built from {@code classification-rules.yml} against the per-pattern regex
+ * loops it replaced in {@code PatternClassifier} (same patterns, in rule file order).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class QueryMatcherBenchmark {
+
+    private static final String[] QUERIES = {
+        "cancel case CASE-2024-001 in production",
+        "Please update the status of order ORD-12345 to shipped in staging",
+        "change case status to grossing for CASE-2023-0042",
+        "we need to stop order 9912 before it ships, prod is affected",
+        "update samples for case CASE-2024-077 in dev",
+        "stain update needed on slide SL-4411",
+        "what is the runbook for on_hold cases?",
+        "the order management dashboard shows errors in stg after the deploy",
+        "terminate the case, the patient withdrew consent",
+        "how long does an order stay in pending before it is auto-closed"
+    };
+
+    private QueryMatcher matcher;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        matcher = new ClassificationRulesService(new DefaultResourceLoader(), new ConcurrentMapCacheManager(),
+            new SimpleMeterRegistry(), "classpath:classification-rules.yml").getMatcher();
+    }
+
+    @Benchmark
+    public void compiledMatcher(Blackhole blackhole) {
+        QueryMatcher.MatchResult match = matcher.match(QueryTokenizer.tokenize(nextQuery()));
+        blackhole.consume(match.getTask());
+        blackhole.consume(match.getEnvironment());
+        blackhole.consume(match.getService());
+    }
+
+    @Benchmark
+    public void regexLoop(Blackhole blackhole) {
+        String query = nextQuery().toLowerCase();
+        blackhole.consume(RegexLoop.identifyTask(query));
+        blackhole.consume(RegexLoop.first(RegexLoop.ENVIRONMENTS, query));
+        blackhole.consume(RegexLoop.first(RegexLoop.SERVICES, query));
+    }
+
+    private String nextQuery() {
+        String query = QUERIES[next];
+        next = next + 1 == QUERIES.length ? 0 : next + 1;
+        return query;
+    }
+
+    // The classifier before the compiled matcher: every pattern is its own regex, tried in turn
+    private static final class RegexLoop {
+
+        private static final Map<TaskId, Pattern[]> TASKS = new LinkedHashMap<>();
+        private static final Map<String, Pattern[]> ENVIRONMENTS = new LinkedHashMap<>();
+        private static final Map<String, Pattern[]> SERVICES = new LinkedHashMap<>();
+
+        static {
+            TASKS.put(TaskId.CANCEL_ORDER, patterns("\\bcancel\\b.*\\border\\b", "\\border\\b.*\\bcancel\\b",
+                "\\bterminate\\b.*\\border\\b", "\\babort\\b.*\\border\\b", "\\bstop\\b.*\\border\\b"));
+            TASKS.put(TaskId.UPDATE_ORDER_STATUS, patterns("\\bchange\\b.*\\border\\b.*\\bstatus\\b",
+                "\\border\\b.*\\bstatus\\b.*\\bchange\\b", "\\bupdate\\b.*\\border\\b.*\\bstatus\\b",
+                "\\btransition\\b.*\\border\\b", "\\bmove\\b.*\\border\\b.*\\bto\\b"));
+            TASKS.put(TaskId.CANCEL_CASE, patterns("\\bcancel\\b.*\\bcase\\b", "\\bcase\\b.*\\bcancel\\b",
+                "\\bterminate\\b.*\\bcase\\b", "\\babort\\b.*\\bcase\\b", "\\bstop\\b.*\\bcase\\b",
+                "\\bclose\\b.*\\bcase\\b", "\\bcase\\b.*\\bclose\\b"));
+            TASKS.put(TaskId.UPDATE_CASE_STATUS, patterns("\\bchange\\b.*\\bcase\\b.*\\bstatus\\b",
+                "\\bcase\\b.*\\bstatus\\b.*\\bchange\\b", "\\bupdate\\b.*\\bcase\\b.*\\bstatus\\b",
+                "\\btransition\\b.*\\bcase\\b", "\\bmove\\b.*\\bcase\\b.*\\bto\\b", "\\bset\\b.*\\bcase\\b.*\\bstatus\\b"));
+            TASKS.put(TaskId.UPDATE_SAMPLES, patterns("\\bupdate\\b.*\\bsamples?\\b", "\\bchange\\b.*\\bsamples?\\b",
+                "\\bmodify\\b.*\\bsamples?\\b", "\\bsamples?\\b.*\\bupdate\\b"));
+            TASKS.put(TaskId.UPDATE_STAIN, patterns("\\bupdate\\b.*\\bstain\\b", "\\bchange\\b.*\\bstain\\b",
+                "\\bmodify\\b.*\\bstain\\b", "\\bstain\\b.*\\bupdate\\b", "\\bstain\\b.*\\bslide\\b"));
+
+            ENVIRONMENTS.put("prod", patterns("\\bprod\\b", "\\bproduction\\b", "\\bprd\\b"));
+            ENVIRONMENTS.put("staging", patterns("\\bstaging\\b", "\\bstage\\b", "\\bstg\\b"));
+            ENVIRONMENTS.put("dev", patterns("\\bdev\\b", "\\bdevelopment\\b", "\\bdev-\\w+\\b"));
+
+            SERVICES.put("Order", patterns("\\border\\b", "\\borders\\b", "\\border management\\b"));
+            SERVICES.put("Case", patterns("\\bcase\\b", "\\bcases\\b", "\\bcase management\\b"));
+            SERVICES.put("Sample", patterns("\\bsample\\b", "\\bsamples\\b", "\\bsample management\\b"));
+            SERVICES.put("Slide", patterns("\\bslide\\b", "\\bslides\\b", "\\bslide management\\b"));
+            SERVICES.put("Stain", patterns("\\bstain\\b", "\\bstains\\b", "\\bstaining\\b"));
+        }
+
+        private static Pattern[] patterns(String... regexes) {
+            Pattern[] patterns = new Pattern[regexes.length];
+            for (int i = 0; i < regexes.length; i++) {
+                patterns[i] = Pattern.compile(regexes[i], Pattern.CASE_INSENSITIVE);
+            }
+            return patterns;
+        }
+
+        private static TaskId identifyTask(String query) {
+            TaskId task = first(TASKS, query);
+            if (task != null) {
+                return task;
+            }
+            if (query.contains("cancel") || query.contains("terminate") || query.contains("abort") || query.contains("stop")) {
+                if (query.contains("order")) return TaskId.CANCEL_ORDER;
+                if (query.contains("case")) return TaskId.CANCEL_CASE;
+            }
+            if (query.contains("status") || query.contains("change") || query.contains("update") || query.contains("transition")) {
+                if (query.contains("order")) return TaskId.UPDATE_ORDER_STATUS;
+                if (query.contains("case")) return TaskId.UPDATE_CASE_STATUS;
+            }
+            if (query.contains("sample")) return TaskId.UPDATE_SAMPLES;
+            if (query.contains("stain")) return TaskId.UPDATE_STAIN;
+            return null;
+        }
+
+        private static <K> K first(Map<K, Pattern[]> rules, String query) {
+            for (Map.Entry<K, Pattern[]> entry : rules.entrySet()) {
+                for (Pattern pattern : entry.getValue()) {
+                    if (pattern.matcher(query).find()) {
+                        return entry.getKey();
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
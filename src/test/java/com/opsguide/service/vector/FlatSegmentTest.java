@@ -0,0 +1,105 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * {@link FlatSegment} mapped in windows of three rows, so searches, slices and row reads cross
+ * window boundaries, checked against a {@link FlatVectorIndex} of the same vectors.
+ */
+class FlatSegmentTest {
+
+    private static final int DIMENSION = 16;
+    private static final int ROWS = 50;
+    // Three rows and a few spare bytes, which must not become a partial fourth row
+    private static final long WINDOW_BYTES = 3L * DIMENSION * Float.BYTES + 5;
+
+    @TempDir
+    Path dir;
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<Embedding> vectors = new ArrayList<>();
+    private final FlatVectorIndex expected = new FlatVectorIndex(DIMENSION);
+    private FlatSegment segment;
+
+    @BeforeEach
+    void writeSegment() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < ROWS; i++) {
+            float[] values = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                values[d] = (float) random.nextGaussian();
+            }
+            ids.add("chunk-" + i);
+            vectors.add(Embedding.wrap(values));
+            expected.add(vectors.get(i));
+        }
+        Path path = dir.resolve("vectors.seg");
+        FlatSegment.write(path, DIMENSION, ids, vectors);
+        segment = FlatSegment.open(path, WINDOW_BYTES);
+    }
+
+    @Test
+    void rowsReadBackAcrossWindows() throws Exception {
+        assertThat(segment.size()).isEqualTo(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            assertThat(segment.id(i)).isEqualTo(ids.get(i));
+            assertThat(segment.vector(i).toArray()).containsExactly(vectors.get(i).normalize().toArray(), within(1e-6f));
+        }
+        // Every window holds whole rows; the spare bytes are never mapped
+        assertThat(segment.mappedBytes()).isEqualTo(FlatSegment.open(segment.getPath()).mappedBytes());
+    }
+
+    @Test
+    void searchAndScoreMatchFlatIndex() {
+        for (int q = 0; q < 10; q++) {
+            Embedding query = vectors.get(q * 5).normalize();
+            assertSameHits(segment.search(query, 7), expected.search(query, 7));
+            for (int i = 0; i < ROWS; i++) {
+                assertThat(segment.score(query, i)).isCloseTo(expected.score(query, i), within(1e-5f));
+            }
+        }
+    }
+
+    @Test
+    void slicesSpanningWindowsMatchFlatIndexOfTheirRows() {
+        // Starts mid-window and ends mid-window, so the first and last windows are partly read
+        int from = 11;
+        int to = 40;
+        FlatSegment slice = segment.slice(from, to);
+        FlatVectorIndex expectedSlice = new FlatVectorIndex(DIMENSION);
+        for (int i = from; i < to; i++) {
+            expectedSlice.add(vectors.get(i));
+        }
+
+        assertThat(slice.size()).isEqualTo(to - from);
+        assertThat(slice.id(0)).isEqualTo(ids.get(from));
+        assertThat(slice.vector(to - from - 1).toArray())
+            .containsExactly(vectors.get(to - 1).normalize().toArray(), within(1e-6f));
+        for (int q = 0; q < 10; q++) {
+            Embedding query = vectors.get(q * 5).normalize();
+            assertSameHits(slice.search(query, 5), expectedSlice.search(query, 5));
+            assertThat(slice.score(query, 3)).isCloseTo(expectedSlice.score(query, 3), within(1e-5f));
+        }
+        // A slice of a slice stays on the rows of the whole segment
+        assertThat(slice.slice(4, 10).id(0)).isEqualTo(ids.get(from + 4));
+    }
+
+    private static void assertSameHits(List<VectorHit> actual, List<VectorHit> expected) {
+        assertThat(actual).extracting(VectorHit::getId).containsExactlyElementsOf(
+            expected.stream().map(VectorHit::getId).toList());
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).getScore()).isCloseTo(expected.get(i).getScore(), within(1e-5f));
+        }
+    }
+}
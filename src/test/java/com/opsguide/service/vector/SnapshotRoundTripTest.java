@@ -0,0 +1,150 @@
+package com.opsguide.service.vector;
+
+import com.opsguide.model.Embedding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Every index kind written with {@link VectorIndex#writeTo} and read back with
+ * {@link SnapshotInput#readIndex} answers queries exactly as it did before: same ids, same scores.
+ * Segment-backed indexes are built over a slice that does not start at row 0 and restored against
+ * a fresh mapping of the same segment file, as a restart does.
+ */
+class SnapshotRoundTripTest {
+
+    private static final int DIMENSION = 32;
+    private static final int ROWS = 600;
+    // The indexes below cover rows FROM to ROWS of the segment
+    private static final int FROM = 40;
+
+    @TempDir
+    Path dir;
+
+    private final List<Embedding> vectors = new ArrayList<>();
+    private final List<Embedding> queries = new ArrayList<>();
+    private Path segmentPath;
+    private FlatSegment segment;
+
+    @BeforeEach
+    void writeSegment() throws Exception {
+        Random random = new Random(7);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            ids.add("chunk-" + i);
+            vectors.add(randomVector(random));
+        }
+        for (int q = 0; q < 20; q++) {
+            // Half near a stored row, half anywhere
+            queries.add(q % 2 == 0 ? near(vectors.get(FROM + q * 23), random) : randomVector(random));
+        }
+        segmentPath = dir.resolve("vectors.seg");
+        FlatSegment.write(segmentPath, DIMENSION, ids, vectors);
+        segment = FlatSegment.open(segmentPath);
+    }
+
+    @Test
+    void flatIndex() throws Exception {
+        assertRoundTrip(filled(new FlatVectorIndex(DIMENSION)));
+    }
+
+    @Test
+    void quantizedIndexesWithAddedRows() throws Exception {
+        for (QuantizedVectorIndex.Quantization quantization : QuantizedVectorIndex.Quantization.values()) {
+            assertRoundTrip(filled(new QuantizedVectorIndex(DIMENSION, quantization, 4)));
+        }
+    }
+
+    @Test
+    void quantizedIndexesOverSegment() throws Exception {
+        for (QuantizedVectorIndex.Quantization quantization : QuantizedVectorIndex.Quantization.values()) {
+            assertRoundTrip(QuantizedVectorIndex.over(segment.slice(FROM, ROWS), quantization, 4));
+        }
+    }
+
+    @Test
+    void hnswIndex() throws Exception {
+        assertRoundTrip(filled(new HnswVectorIndex(DIMENSION, 8, 64, 32, 11L)));
+    }
+
+    @Test
+    void trainedIvfPqIndexOverSegment() throws Exception {
+        IvfPqIndex index = IvfPqIndex.over(segment.slice(FROM, ROWS), 8, 3, 8, 10_000, 4);
+        index.train();
+        assertRoundTrip(index);
+    }
+
+    @Test
+    void ivfPqIndexesWithAddedRows() throws Exception {
+        // Trained on reaching the training size, and one still holding its staged floats
+        assertRoundTrip(filled(new IvfPqIndex(DIMENSION, 8, 3, 8, IvfPqIndex.MIN_TRAINING_SIZE)));
+        assertRoundTrip(filled(new IvfPqIndex(DIMENSION, 8, 3, 8, 10_000)));
+    }
+
+    @Test
+    void segmentSlice() throws Exception {
+        assertRoundTrip(segment.slice(FROM, ROWS));
+    }
+
+    @Test
+    void segmentBackedIndexNeedsItsSegment() throws Exception {
+        Path snapshot = dir.resolve("index.snap");
+        try (SnapshotOutput out = SnapshotOutput.create(snapshot)) {
+            QuantizedVectorIndex.over(segment.slice(FROM, ROWS), QuantizedVectorIndex.Quantization.INT8, 4).writeTo(out);
+        }
+        try (SnapshotInput in = SnapshotInput.open(snapshot)) {
+            assertThatThrownBy(() -> in.readIndex(null)).hasMessageContaining("not restored with");
+        }
+    }
+
+    private VectorIndex filled(VectorIndex index) {
+        for (int i = FROM; i < ROWS; i++) {
+            index.add(vectors.get(i));
+        }
+        return index;
+    }
+
+    private void assertRoundTrip(VectorIndex index) throws Exception {
+        Path snapshot = dir.resolve("index.snap");
+        try (SnapshotOutput out = SnapshotOutput.create(snapshot)) {
+            index.writeTo(out);
+        }
+        VectorIndex restored;
+        try (SnapshotInput in = SnapshotInput.open(snapshot)) {
+            restored = in.readIndex(FlatSegment.open(segmentPath));
+        }
+
+        assertThat(restored).isExactlyInstanceOf(index.getClass());
+        assertThat(restored.size()).isEqualTo(index.size()).isEqualTo(ROWS - FROM);
+        assertThat(restored.dimension()).isEqualTo(DIMENSION);
+        for (Embedding query : queries) {
+            assertThat(restored.search(query, 10)).as("%s", index.getClass().getSimpleName())
+                .isEqualTo(index.search(query, 10))
+                .hasSize(10);
+        }
+    }
+
+    private static Embedding near(Embedding vector, Random random) {
+        float[] values = vector.normalize().toArray();
+        for (int d = 0; d < DIMENSION; d++) {
+            values[d] += 0.05f * (float) random.nextGaussian();
+        }
+        return Embedding.wrap(values);
+    }
+
+    private static Embedding randomVector(Random random) {
+        float[] values = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            values[d] = (float) random.nextGaussian();
+        }
+        return Embedding.wrap(values);
+    }
+}